@@ -0,0 +1,127 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.SystemBankCardsApplication;
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.CustomerEntity;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.Currency;
+import com.example.bankcards.repository.CardEntityRepository;
+import com.example.bankcards.repository.CustomerEntityRepository;
+import com.example.bankcards.repository.RoleRepository;
+import com.example.bankcards.security.JwtPrincipal;
+import com.example.bankcards.service.ledger.LedgerService;
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поднимает приложение для бенчмарков: встроенная H2 вместо Postgres
+ * и кэши в памяти процесса (cache.defaults.mode: LOCAL) вместо Redis.
+ */
+public final class BenchmarkApplication {
+
+    public static final String CUSTOMER_EMAIL = "benchmark@syscard.com";
+
+    private static final AtomicLong CARD_SEQUENCE = new AtomicLong();
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * @param args аргументы командной строки Spring Boot, например --spring.jpa.properties...=value
+     */
+    public static ConfigurableApplicationContext start(String... args) {
+        return new SpringApplicationBuilder(SystemBankCardsApplication.class)
+                .profiles("benchmark")
+                .run(args);
+    }
+
+    /**
+     * Создаёт клиента и карты с заданным балансом, возвращает номера карт.
+     */
+    public static List<String> seedCards(ConfigurableApplicationContext context, int count, BigDecimal balance) {
+        CustomerEntityRepository customerRepository = context.getBean(CustomerEntityRepository.class);
+        CardEntityRepository cardRepository = context.getBean(CardEntityRepository.class);
+        RoleRepository roleRepository = context.getBean(RoleRepository.class);
+        LedgerService ledgerService = context.getBean(LedgerService.class);
+        CardNumberBlindIndexUtil cardNumberBlindIndexUtil = context.getBean(CardNumberBlindIndexUtil.class);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+
+        return transactionTemplate.execute(status -> {
+            CustomerEntity customer = customerRepository.findByEmail(CUSTOMER_EMAIL).orElseGet(() ->
+                    customerRepository.save(CustomerEntity.builder()
+                            .name("benchmark")
+                            .email(CUSTOMER_EMAIL)
+                            .password("benchmark")
+                            .roles(Collections.singleton(roleRepository.findByName("USER").get()))
+                            .isAccountNonExpired(true)
+                            .isAccountNonLocked(true)
+                            .isCredentialsNonExpired(true)
+                            .isEnabled(true)
+                            .build()));
+
+            List<String> cardNumbers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String cardNumber = nextCardNumber();
+                while (cardRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(cardNumber)).isPresent()) {
+                    cardNumber = nextCardNumber();
+                }
+                CardEntity card = cardRepository.save(CardEntity.builder()
+                        .cardNumber(cardNumber)
+                        .customerEntity(customer)
+                        .expiryDate(LocalDate.now().plusYears(3))
+                        .status(CardStatus.ACTIVE)
+                        .currency(Currency.RUB)
+                        .build());
+                ledgerService.openAccount(card, balance);
+                cardNumbers.add(cardNumber);
+            }
+            return cardNumbers;
+        });
+    }
+
+    /**
+     * Номер карты из 16 цифр: префикс 4, 14 цифр счётчика процесса и контрольная цифра Луна.
+     */
+    static String nextCardNumber() {
+        String body = String.format("4%014d", CARD_SEQUENCE.incrementAndGet());
+        return body + luhnCheckDigit(body);
+    }
+
+    private static int luhnCheckDigit(String body) {
+        int sum = 0;
+        for (int i = body.length() - 1, position = 0; i >= 0; i--, position++) {
+            int digit = body.charAt(i) - '0';
+            if (position % 2 == 0) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    public static void authenticateCurrentThread(ConfigurableApplicationContext context) {
+        Long customerId = context.getBean(CustomerEntityRepository.class).findIdByEmail(CUSTOMER_EMAIL).orElseThrow();
+        JwtPrincipal principal = new JwtPrincipal(CUSTOMER_EMAIL, customerId, List.of("ROLE_USER"),
+                Instant.now().plus(1, ChronoUnit.DAYS));
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                principal, null, List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+    }
+}
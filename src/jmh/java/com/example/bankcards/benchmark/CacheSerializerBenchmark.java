@@ -0,0 +1,91 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.cache.codec.BinaryRedisSerializer;
+import com.example.bankcards.cache.codec.DtoCodecs;
+import com.example.bankcards.cache.codec.Lz4CompressingRedisSerializer;
+import com.example.bankcards.config.RedisConfig;
+import com.example.bankcards.dto.card.BatchTransferResponseDTO;
+import com.example.bankcards.dto.card.CardResponseDTO;
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import com.example.bankcards.service.idempotency.IdempotencyRecord;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализаторы значений кэша: JSON с именами классов (прежний формат RedisConfig)
+ * против бинарных схем DtoCodecs, с LZ4 и без. Размер записи в байтах печатается при подготовке
+ * строкой "bytes per entry", время - результат бенчмарков serialize/deserialize.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheSerializerBenchmark {
+
+    @Param({"JSON", "JSON_LZ4", "BINARY", "BINARY_LZ4"})
+    private String serializer;
+
+    @Param({"TRANSACTION", "CARD", "BATCH_100"})
+    private String payload;
+
+    private RedisSerializer<Object> redisSerializer;
+    private Object value;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        RedisSerializer<Object> json = new GenericJackson2JsonRedisSerializer(
+                new RedisConfig().idempotencyObjectMapper(new JavaTimeModule()));
+        RedisSerializer<Object> binary = new BinaryRedisSerializer(DtoCodecs.registry());
+        redisSerializer = switch (serializer) {
+            case "JSON" -> json;
+            case "JSON_LZ4" -> new Lz4CompressingRedisSerializer(json, 256);
+            case "BINARY" -> binary;
+            case "BINARY_LZ4" -> new Lz4CompressingRedisSerializer(binary, 256);
+            default -> throw new IllegalArgumentException(serializer);
+        };
+        value = IdempotencyRecord.completed(switch (payload) {
+            case "TRANSACTION" -> transaction();
+            case "CARD" -> new CardResponseDTO("4000123412341234", "benchmark", LocalDate.now().plusYears(3),
+                    "ACTIVE", new BigDecimal("125000.50"), "RUB");
+            case "BATCH_100" -> batch(100);
+            default -> throw new IllegalArgumentException(payload);
+        });
+        serialized = redisSerializer.serialize(value);
+        System.out.printf("%n%s %s: %d bytes per entry%n", serializer, payload, serialized.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return redisSerializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return redisSerializer.deserialize(serialized);
+    }
+
+    private static TransactionResponseDTO transaction() {
+        return new TransactionResponseDTO(new BigDecimal("1500.00"), LocalDateTime.now(), TransactionStatus.SUCCESS);
+    }
+
+    private static BatchTransferResponseDTO batch(int size) {
+        List<TransactionResponseDTO> transfers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            transfers.add(transaction());
+        }
+        return new BatchTransferResponseDTO(transfers);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.dto.card.CardResponseDTO;
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.CustomerEntity;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.Currency;
+import com.example.bankcards.entity.mapper.CardEntityMapper;
+import com.example.bankcards.entity.mapper.CardEntityMapperImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CardEntityMapperBenchmark {
+
+    private CardEntityMapper cardEntityMapper;
+    private CardEntity cardEntity;
+
+    @Setup
+    public void setUp() {
+        cardEntityMapper = new CardEntityMapperImpl();
+
+        CustomerEntity customer = new CustomerEntity();
+        customer.setId(1L);
+        customer.setName("benchmark");
+
+        cardEntity = CardEntity.builder()
+                .id(1L)
+                .cardNumber("4000123412341234")
+                .customerEntity(customer)
+                .expiryDate(LocalDate.now().plusYears(3))
+                .status(CardStatus.ACTIVE)
+                .balance(new BigDecimal("1000.00"))
+                .currency(Currency.RUB)
+                .build();
+    }
+
+    @Benchmark
+    public CardResponseDTO toCardResponse() {
+        return cardEntityMapper.toCardResponse(cardEntity);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.util.CardNumberEncryptorUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение шифрования номеров карт: прежняя реализация (Cipher.getInstance + init на каждый вызов)
+ * против CardNumberCipherEngine. Аллокации смотреть профайлером: -prof gc.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CardNumberCryptoBenchmark {
+
+    @Param({"1000"})
+    private int batchSize;
+
+    private CardNumberEncryptorUtil encryptorUtil;
+    private LegacyEncryptor legacyEncryptor;
+
+    private String cardNumber;
+    private String encryptedCardNumber;
+    private List<String> encryptedBatch;
+
+    @Setup
+    public void setUp() {
+        encryptorUtil = new CardNumberEncryptorUtil("ENCRYPTION_SECRET", "1961000000abcdef");
+        legacyEncryptor = new LegacyEncryptor(encryptorUtil.getSecretKey());
+
+        cardNumber = randomCardNumber();
+        encryptedCardNumber = encryptorUtil.encryptCardNumber(cardNumber);
+
+        List<String> cardNumbers = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            cardNumbers.add(randomCardNumber());
+        }
+        encryptedBatch = encryptorUtil.encryptCardNumbers(cardNumbers);
+    }
+
+    @Benchmark
+    public String encryptLegacy() throws Exception {
+        return legacyEncryptor.encrypt(cardNumber);
+    }
+
+    @Benchmark
+    public String encryptEngine() {
+        return encryptorUtil.encryptCardNumber(cardNumber);
+    }
+
+    @Benchmark
+    public String decryptLegacy() throws Exception {
+        return legacyEncryptor.decrypt(encryptedCardNumber);
+    }
+
+    @Benchmark
+    public String decryptEngine() {
+        return encryptorUtil.decryptCardNumber(encryptedCardNumber);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void decryptBatchLegacy(Blackhole blackhole) throws Exception {
+        for (String encrypted : encryptedBatch) {
+            blackhole.consume(legacyEncryptor.decrypt(encrypted));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public List<String> decryptBatchEngine() {
+        return encryptorUtil.decryptCardNumbers(encryptedBatch);
+    }
+
+    private static String randomCardNumber() {
+        StringBuilder builder = new StringBuilder(16);
+        for (int i = 0; i < 16; i++) {
+            builder.append(ThreadLocalRandom.current().nextInt(10));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Копия реализации CardNumberEncryptorUtil до перехода на CardNumberCipherEngine.
+     */
+    private record LegacyEncryptor(SecretKeySpec secretKey) {
+
+        String encrypt(String cardNumber) throws Exception {
+            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+            byte[] encrypted = cipher.doFinal(cardNumber.getBytes());
+            return Base64.getEncoder().encodeToString(encrypted);
+        }
+
+        String decrypt(String dbCardNumber) throws Exception {
+            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, secretKey);
+            byte[] decoded = Base64.getDecoder().decode(dbCardNumber);
+            return new String(cipher.doFinal(decoded));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.dto.card.ReplenishmentCardRequestDTO;
+import com.example.bankcards.dto.card.TransferFundsBetweenUserCardsRequestDTO;
+import com.example.bankcards.dto.card.WithdrawFundsRequestDTO;
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
+import com.example.bankcards.service.CustomerCardService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Операции движения денег CustomerCardService на встроенной H2.
+ * Каждый поток работает со своей парой карт, поэтому измеряется стоимость
+ * операции без конкуренции за строки; ключ идемпотентности уникален на вызов.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CardServiceBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        private ConfigurableApplicationContext context;
+        private CustomerCardService customerCardService;
+
+        @Setup(Level.Trial)
+        public void start() {
+            context = BenchmarkApplication.start();
+            customerCardService = context.getBean(CustomerCardService.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cards {
+
+        private String firstCard;
+        private String secondCard;
+
+        @Setup(Level.Trial)
+        public void seed(Application application) {
+            List<String> cardNumbers = BenchmarkApplication.seedCards(application.context, 2,
+                    new BigDecimal("1000000000000"));
+            firstCard = cardNumbers.get(0);
+            secondCard = cardNumbers.get(1);
+            BenchmarkApplication.authenticateCurrentThread(application.context);
+        }
+    }
+
+    @Benchmark
+    public TransactionResponseDTO transferBetweenCards(Application application, Cards cards) {
+        return application.customerCardService.transferBetweenCards(
+                new TransferFundsBetweenUserCardsRequestDTO(cards.firstCard, cards.secondCard, AMOUNT, "RUB"),
+                UUID.randomUUID().toString());
+    }
+
+    @Benchmark
+    public TransactionResponseDTO withdrawalFromCard(Application application, Cards cards) {
+        return application.customerCardService.withdrawalFromCard(
+                new WithdrawFundsRequestDTO(cards.firstCard, AMOUNT, "RUB"),
+                UUID.randomUUID().toString());
+    }
+
+    @Benchmark
+    public TransactionResponseDTO cardReplenishment(Application application, Cards cards) {
+        return application.customerCardService.cardReplenishment(
+                new ReplenishmentCardRequestDTO(cards.secondCard, AMOUNT, "RUB"),
+                UUID.randomUUID().toString());
+    }
+}
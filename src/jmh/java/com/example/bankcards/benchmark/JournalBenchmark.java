@@ -0,0 +1,89 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.entity.enums.Currency;
+import com.example.bankcards.entity.enums.TransactionType;
+import com.example.bankcards.journal.FsyncPolicy;
+import com.example.bankcards.journal.TransactionIntent;
+import com.example.bankcards.journal.WriteAheadJournal;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Журнал операций на локальном диске: намерение, ожидание записи на диск по политике fsync и закрытие намерения.
+ * appendDurable - операций в секунду из 8 потоков (при GROUP потоки делят один fsync),
+ * appendDurableLatency - распределение времени одной операции из одного потока, при PER_OP это время fsync.
+ * Каталог журнала - временный, на другом диске задаётся через -Djournal.benchmark.dir.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+
+    private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final long FSYNC_INTERVAL_MILLIS = 10;
+
+    @Param({"PER_OP", "GROUP", "INTERVAL"})
+    private FsyncPolicy fsyncPolicy;
+
+    private Path directory;
+    private WriteAheadJournal journal;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        String parent = System.getProperty("journal.benchmark.dir");
+        directory = parent != null
+                ? Files.createTempDirectory(Path.of(parent), "journal-benchmark")
+                : Files.createTempDirectory("journal-benchmark");
+        journal = WriteAheadJournal.open(directory, SEGMENT_BYTES, fsyncPolicy, FSYNC_INTERVAL_MILLIS, nanos -> { });
+        payload = new TransactionIntent(1_000_000L, TransactionType.TRANSFER, 101L, 202L,
+                new BigDecimal("1250.50"), Currency.RUB).encode();
+    }
+
+    @TearDown(Level.Iteration)
+    public void compact() {
+        journal.compact();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void appendDurable(Blackhole blackhole) {
+        blackhole.consume(operation());
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void appendDurableLatency(Blackhole blackhole) {
+        blackhole.consume(operation());
+    }
+
+    private long operation() {
+        long sequence = journal.appendIntent(payload);
+        journal.sync(sequence);
+        journal.commit(sequence);
+        return sequence;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.config.security_filter.JwtAuthenticationFilter;
+import com.example.bankcards.entity.CustomerEntity;
+import com.example.bankcards.entity.Role;
+import com.example.bankcards.entity.app_class.CustomerDetails;
+import com.example.bankcards.security.JwtPrincipal;
+import com.example.bankcards.security.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор и проверка JWT: по отдельности через JwtUtil и целиком через JwtAuthenticationFilter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+
+    private static final String SECRET = "SecretKey2D3B5F2D784E6A1B423D6F242D3B5F2D784E6A1BSecret";
+
+    private JwtUtil jwtUtil;
+    private JwtAuthenticationFilter jwtAuthenticationFilter;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(SECRET, 10_000);
+        jwtAuthenticationFilter = new JwtAuthenticationFilter(jwtUtil, new SimpleMeterRegistry());
+
+        Role role = new Role();
+        role.setName("USER");
+        CustomerEntity customer = new CustomerEntity();
+        customer.setId(3L);
+        customer.setEmail(BenchmarkApplication.CUSTOMER_EMAIL);
+        customer.setRoles(Set.of(role));
+
+        token = jwtUtil.generateToken(new CustomerDetails(customer));
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtUtil.extractUsername(token);
+    }
+
+    @Benchmark
+    public void validateToken(Blackhole blackhole) {
+        String username = jwtUtil.extractUsername(token);
+        blackhole.consume(jwtUtil.isTokenValid(token, username));
+        blackhole.consume(jwtUtil.extractRoles(token));
+    }
+
+    @Benchmark
+    public JwtPrincipal verify() {
+        return jwtUtil.verify(token);
+    }
+
+    @Benchmark
+    public MockHttpServletResponse doFilterInternal() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/cards");
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            jwtAuthenticationFilter.doFilter(request, response, new MockFilterChain());
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+        return response;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.enums.Currency;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import com.example.bankcards.entity.enums.TransactionType;
+import com.example.bankcards.entity.operations.TransactionEntity;
+import com.example.bankcards.repository.CardEntityRepository;
+import com.example.bankcards.repository.TransactionEntityRepository;
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вставки в журнал транзакций, результат - вставки в секунду.
+ * legacyRowByRow повторяет прежнюю схему allocationSize = 1: nextval и отдельный INSERT на каждую строку.
+ * hibernateSaveAll - текущее отображение: pooled-lo по 50 идентификаторов и JDBC-пакеты размера jdbcBatchSize
+ * (1 - пакетирование выключено).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LedgerInsertBenchmark {
+
+    private static final int ROWS = 500;
+
+    private static final String LEGACY_INSERT = "INSERT INTO transaction_entity " +
+            "(id, amount, currency, transaction_status, transaction_type, source_card_id, created_at, updated_at, version) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    @Param({"1", "50"})
+    private int jdbcBatchSize;
+
+    private ConfigurableApplicationContext context;
+    private TransactionEntityRepository transactionEntityRepository;
+    private CardEntityRepository cardEntityRepository;
+    private TransactionTemplate transactionTemplate;
+    private JdbcTemplate jdbcTemplate;
+    private Long sourceCardId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start("--spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize);
+        transactionEntityRepository = context.getBean(TransactionEntityRepository.class);
+        cardEntityRepository = context.getBean(CardEntityRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        String cardNumber = BenchmarkApplication.seedCards(context, 1, BigDecimal.ZERO).get(0);
+        String cardNumberHash = context.getBean(CardNumberBlindIndexUtil.class).hash(cardNumber);
+        sourceCardId = cardEntityRepository.findByCardNumberHash(cardNumberHash).orElseThrow().getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void hibernateSaveAll() {
+        transactionTemplate.executeWithoutResult(status -> {
+            CardEntity sourceCard = cardEntityRepository.getReferenceById(sourceCardId);
+            List<TransactionEntity> transactions = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                transactions.add(TransactionEntity.builder()
+                        .sourceCardEntity(sourceCard)
+                        .amount(BigDecimal.ONE)
+                        .currency(Currency.RUB)
+                        .transactionType(TransactionType.CREDIT)
+                        .transactionStatus(TransactionStatus.SUCCESS)
+                        .build());
+            }
+            transactionEntityRepository.saveAll(transactions);
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void legacyRowByRow() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < ROWS; i++) {
+                Long id = jdbcTemplate.queryForObject("SELECT nextval('transaction_main_sequence')", Long.class);
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                jdbcTemplate.update(LEGACY_INSERT, id, BigDecimal.ONE, Currency.RUB.ordinal(),
+                        TransactionStatus.SUCCESS.name(), TransactionType.CREDIT.name(), sourceCardId, now, now);
+            }
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.operations.TransactionEntity;
+import com.example.bankcards.repository.CardEntityRepository;
+import com.example.bankcards.repository.TransactionEntityRepository;
+import com.example.bankcards.repository.projection.TransactionHistoryView;
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Страница истории транзакций на синтетическом журнале из ledgerRows строк, разложенных по CARDS картам.
+ * offsetPage - прежний PageRequest с OFFSET, keysetPage - поиск по курсору (created_at, id)
+ * на той же глубине pageDepth страниц.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TransactionHistoryBenchmark {
+
+    private static final int CARDS = 4;
+    private static final int PAGE_SIZE = 20;
+    private static final long ID_OFFSET = 1_000_000_000L;
+
+    private static final String SEED_LEDGER = "INSERT INTO transaction_entity " +
+            "(id, amount, currency, transaction_status, transaction_type, source_card_id, created_at, updated_at, version) " +
+            "SELECT X + ?, 1, 0, 'SUCCESS', 'CREDIT', ?, " +
+            "DATEADD('SECOND', X, TIMESTAMP '2024-01-01 00:00:00'), DATEADD('SECOND', X, TIMESTAMP '2024-01-01 00:00:00'), 0 " +
+            "FROM SYSTEM_RANGE(1, ?)";
+
+    @Param({"2000000"})
+    private int ledgerRows;
+
+    @Param({"10", "10000"})
+    private int pageDepth;
+
+    private ConfigurableApplicationContext context;
+    private TransactionEntityRepository transactionEntityRepository;
+    private CardEntity card;
+    private LocalDateTime cursorCreatedAt;
+    private Long cursorId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start();
+        transactionEntityRepository = context.getBean(TransactionEntityRepository.class);
+        CardEntityRepository cardEntityRepository = context.getBean(CardEntityRepository.class);
+        CardNumberBlindIndexUtil cardNumberBlindIndexUtil = context.getBean(CardNumberBlindIndexUtil.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        List<String> cardNumbers = BenchmarkApplication.seedCards(context, CARDS, BigDecimal.ZERO);
+        int rowsPerCard = ledgerRows / CARDS;
+        for (int i = 0; i < CARDS; i++) {
+            Long cardId = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(cardNumbers.get(i)))
+                    .orElseThrow().getId();
+            jdbcTemplate.update(SEED_LEDGER, ID_OFFSET + (long) i * rowsPerCard, cardId, rowsPerCard);
+        }
+
+        card = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(cardNumbers.get(0))).orElseThrow();
+
+        jdbcTemplate.query("SELECT created_at, id FROM transaction_entity WHERE source_card_id = ? " +
+                        "ORDER BY created_at, id LIMIT 1 OFFSET ?",
+                resultSet -> {
+                    cursorCreatedAt = resultSet.getObject("created_at", Timestamp.class).toLocalDateTime();
+                    cursorId = resultSet.getLong("id");
+                },
+                card.getId(), (long) pageDepth * PAGE_SIZE - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<TransactionEntity> offsetPage() {
+        Pageable pageable = PageRequest.of(pageDepth, PAGE_SIZE, Sort.by("createdAt"));
+        return transactionEntityRepository.findBySourceCardEntity(card, pageable);
+    }
+
+    @Benchmark
+    public List<TransactionHistoryView> keysetPage() {
+        return transactionEntityRepository.findHistoryAfter(card.getId(), cursorCreatedAt, cursorId,
+                PageRequest.of(0, PAGE_SIZE + 1));
+    }
+}
@@ -48,7 +48,19 @@ public class CardExceptionHandler {
         return getExceptionResponse(e);
     }
 
-    @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidHistoryCursorException.class)
+    private RuntimeExceptionResponse invalidHistoryCursor(InvalidHistoryCursorException e){
+        return getExceptionResponse(e);
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(CardLockTimeoutException.class)
+    private RuntimeExceptionResponse cardLockTimeout(CardLockTimeoutException e){
+        return getExceptionResponse(e);
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler(LimitExhaustedException.class)
     private RuntimeExceptionResponse limitExhausted(LimitExhaustedException e){
         return getExceptionResponse(e);
@@ -0,0 +1,38 @@
+package com.example.bankcards.advice;
+
+import com.example.bankcards.advice.response.*;
+import com.example.bankcards.exception.*;
+import com.example.bankcards.exception.idempotency.*;
+import org.springframework.core.*;
+import org.springframework.core.annotation.*;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.*;
+
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RestControllerAdvice
+public class IdempotencyExceptionHandler {
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(ErrorValueIdempotencyKeyException.class)
+    private RuntimeExceptionResponse errorValueIdempotencyKey(ErrorValueIdempotencyKeyException e){
+        return getExceptionResponse(e);
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(IdempotencyRequestInProgressException.class)
+    private RuntimeExceptionResponse requestInProgress(IdempotencyRequestInProgressException e){
+        return getExceptionResponse(e);
+    }
+
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    private RuntimeExceptionResponse keyReused(IdempotencyKeyReusedException e){
+        return getExceptionResponse(e);
+    }
+
+    private RuntimeExceptionResponse getExceptionResponse(Exception e) {
+        return new RuntimeExceptionResponse(e.getMessage(), LocalDateTime.now());
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.bankcards.cache;
+
+/**
+ * Где хранится кэш.
+ * LOCAL - только в памяти процесса (Caffeine), Redis не нужен;
+ * REDIS - только в Redis, общий для всех узлов;
+ * NEAR - локальная копия в памяти перед Redis (NearCache).
+ */
+public enum CacheMode {
+    LOCAL, REDIS, NEAR
+}
@@ -0,0 +1,10 @@
+package com.example.bankcards.cache;
+
+/**
+ * Формат значений кэша в Redis.
+ * JSON - Jackson с именами классов, подходит для любых типов;
+ * BINARY - бинарные схемы DtoCodecs, только для типов со схемой.
+ */
+public enum CacheSerializerType {
+    JSON, BINARY
+}
@@ -0,0 +1,96 @@
+package com.example.bankcards.cache;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Настройки кэшей: defaults для всех кэшей и переопределения по имени кэша в names.
+ * Имена с двоеточием в YAML берутся в скобки: "[key:transfer]".
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "cache")
+public class CacheSpecProperties {
+
+    private CacheSpec defaults = CacheSpec.builtIn();
+    private Map<String, CacheSpec> names = new HashMap<>();
+
+    /**
+     * true - приложение запущено одним узлом. Только тогда кэшам идемпотентности разрешён режим LOCAL:
+     * в нём ключ занимается в памяти процесса, и другой узел выполнил бы повтор второй раз.
+     */
+    private boolean singleNode;
+
+    /**
+     * Настройки кэша с учётом defaults: незаданные для имени поля берутся из defaults.
+     */
+    public CacheSpec forCache(String cacheName) {
+        CacheSpec spec = names.get(cacheName);
+        if (spec == null) {
+            return defaults;
+        }
+        CacheSpec merged = new CacheSpec();
+        merged.setMode(orDefault(spec.getMode(), defaults.getMode()));
+        merged.setSerializer(orDefault(spec.getSerializer(), defaults.getSerializer()));
+        merged.setCompressionThresholdBytes(orDefault(spec.getCompressionThresholdBytes(), defaults.getCompressionThresholdBytes()));
+        merged.setTtl(orDefault(spec.getTtl(), defaults.getTtl()));
+        merged.setLocalMaxSize(orDefault(spec.getLocalMaxSize(), defaults.getLocalMaxSize()));
+        merged.setLocalTtl(orDefault(spec.getLocalTtl(), defaults.getLocalTtl()));
+        return merged;
+    }
+
+    /**
+     * true, если хотя бы одному кэшу нужен Redis.
+     */
+    public boolean usesRedis() {
+        return defaults.getMode() != CacheMode.LOCAL
+                || names.keySet().stream().anyMatch(cacheName -> forCache(cacheName).getMode() != CacheMode.LOCAL);
+    }
+
+    private static <T> T orDefault(T value, T defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    @Getter
+    @Setter
+    public static class CacheSpec {
+
+        private CacheMode mode;
+        private CacheSerializerType serializer;
+
+        /**
+         * Значения от этого размера сжимаются LZ4; null - без сжатия.
+         */
+        private Integer compressionThresholdBytes;
+
+        /**
+         * Время жизни записи в Redis, а в режиме LOCAL - в памяти процесса.
+         */
+        private Duration ttl;
+
+        /**
+         * Максимум записей в памяти процесса (LOCAL и локальная копия NEAR).
+         */
+        private Long localMaxSize;
+
+        /**
+         * Время жизни локальной копии в режиме NEAR.
+         */
+        private Duration localTtl;
+
+        static CacheSpec builtIn() {
+            CacheSpec spec = new CacheSpec();
+            spec.setMode(CacheMode.REDIS);
+            spec.setSerializer(CacheSerializerType.JSON);
+            spec.setTtl(Duration.ofMinutes(5));
+            spec.setLocalMaxSize(10_000L);
+            spec.setLocalTtl(Duration.ofSeconds(60));
+            return spec;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.bankcards.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+
+/**
+ * Локальный кэш в памяти процесса (Caffeine) перед удалённым кэшем (Redis).
+ * Чтение сначала идёт в локальную копию и только при промахе - в удалённый кэш.
+ * Записи и удаления идут в оба уровня. Другие узлы локальную копию не инвалидируют,
+ * поэтому локально кэшируются только значения, прошедшие locallyCacheable,
+ * и не дольше localTtl.
+ */
+public class NearCache implements Cache {
+
+    private final Cache remote;
+    private final Predicate<Object> locallyCacheable;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, ValueWrapper> local;
+
+    public NearCache(Cache remote, Predicate<Object> locallyCacheable, long maxLocalEntries, Duration localTtl) {
+        this.remote = remote;
+        this.locallyCacheable = locallyCacheable;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(maxLocalEntries)
+                .expireAfterWrite(localTtl)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper cached = local.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        ValueWrapper value = remote.get(key);
+        if (value != null) {
+            cacheLocally(key, value.get());
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        T value = remote.get(key, valueLoader);
+        cacheLocally(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        cacheLocally(key, value);
+    }
+
+    /**
+     * Запись только в локальную копию - для владельцев, которые пишут в удалённый кэш асинхронно.
+     */
+    public void putLocally(Object key, Object value) {
+        cacheLocally(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remote.putIfAbsent(key, value);
+        cacheLocally(key, existing == null ? value : existing.get());
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+    }
+
+    private void cacheLocally(Object key, Object value) {
+        if (value == null || !locallyCacheable.test(value)) {
+            local.invalidate(key);
+            return;
+        }
+        local.put(key, new SimpleValueWrapper(value));
+    }
+}
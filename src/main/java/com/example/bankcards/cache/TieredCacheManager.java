@@ -0,0 +1,96 @@
+package com.example.bankcards.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Менеджер кэшей, у которого режим хранения (CacheMode) задаётся для каждого имени кэша отдельно.
+ * Кэши создаются при первом обращении. Записи и удаления внутри транзакции
+ * откладываются до её фиксации, как у transactionAware RedisCacheManager.
+ */
+public class TieredCacheManager implements CacheManager {
+
+    private final CacheSpecProperties cacheSpecProperties;
+    private final CacheManager redisCacheManager;
+    private final Predicate<Object> locallyCacheable;
+    private final Function<Object, Duration> ttlOverride;
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param redisCacheManager менеджер кэшей Redis; null, если ни одному кэшу Redis не нужен
+     * @param locallyCacheable какие значения кэшей NEAR можно держать в локальной копии
+     * @param ttlOverride время жизни значения в режиме LOCAL вместо ttl кэша; null - ttl кэша
+     */
+    public TieredCacheManager(CacheSpecProperties cacheSpecProperties, CacheManager redisCacheManager,
+                              Predicate<Object> locallyCacheable, Function<Object, Duration> ttlOverride) {
+        this.cacheSpecProperties = cacheSpecProperties;
+        this.redisCacheManager = redisCacheManager;
+        this.locallyCacheable = locallyCacheable;
+        this.ttlOverride = ttlOverride;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, cacheName -> new TransactionAwareCacheDecorator(createCache(cacheName)));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    private Cache createCache(String name) {
+        CacheSpecProperties.CacheSpec spec = cacheSpecProperties.forCache(name);
+        return switch (spec.getMode()) {
+            case LOCAL -> new CaffeineCache(name, Caffeine.newBuilder()
+                    .maximumSize(spec.getLocalMaxSize())
+                    .expireAfter(expiry(spec.getTtl()))
+                    .build(), false);
+            case REDIS -> redisCache(name);
+            case NEAR -> new NearCache(redisCache(name), locallyCacheable, spec.getLocalMaxSize(), spec.getLocalTtl());
+        };
+    }
+
+    private Expiry<Object, Object> expiry(Duration ttl) {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(Object key, Object value, long currentTime) {
+                return ttlOf(value);
+            }
+
+            @Override
+            public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+                return ttlOf(value);
+            }
+
+            @Override
+            public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+
+            private long ttlOf(Object value) {
+                Duration override = ttlOverride.apply(value);
+                return (override != null ? override : ttl).toNanos();
+            }
+        };
+    }
+
+    private Cache redisCache(String name) {
+        if (redisCacheManager == null) {
+            throw new IllegalStateException("Cache " + name + " requires Redis, but no Redis cache is configured");
+        }
+        return redisCacheManager.getCache(name);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.bankcards.cache.codec;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Сериализатор кэша по бинарным схемам CodecRegistry: байт версии, тег типа и поля без имён.
+ * Поддерживает только типы, для которых зарегистрирована схема.
+ */
+public class BinaryRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final CodecRegistry registry;
+
+    public BinaryRedisSerializer(CodecRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            registry.writeTagged(out, value);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Cannot serialize " + value.getClass().getName(), e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new SerializationException("Unknown binary cache format " + version);
+            }
+            return registry.readTagged(in);
+        } catch (IOException e) {
+            throw new SerializationException("Cannot deserialize cache value", e);
+        }
+    }
+}
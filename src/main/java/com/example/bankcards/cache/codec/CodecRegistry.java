@@ -0,0 +1,61 @@
+package com.example.bankcards.cache.codec;
+
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Набор бинарных схем по типу и по тегу. Значение пишется как байт тега и поля схемы,
+ * null - как тег 0.
+ */
+public class CodecRegistry {
+
+    private static final byte TAG_NULL = 0;
+
+    private final Map<Class<?>, TypeCodec<?>> byType = new HashMap<>();
+    private final TypeCodec<?>[] byTag = new TypeCodec<?>[256];
+
+    public CodecRegistry register(TypeCodec<?> codec) {
+        int tag = Byte.toUnsignedInt(codec.tag());
+        if (tag == TAG_NULL || byTag[tag] != null) {
+            throw new IllegalArgumentException("Codec tag " + tag + " is reserved or already registered");
+        }
+        byTag[tag] = codec;
+        byType.put(codec.type(), codec);
+        return this;
+    }
+
+    public boolean supports(Class<?> type) {
+        return byType.containsKey(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void writeTagged(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+            return;
+        }
+        TypeCodec<Object> codec = (TypeCodec<Object>) byType.get(value.getClass());
+        if (codec == null) {
+            throw new SerializationException("No binary codec for " + value.getClass().getName());
+        }
+        out.writeByte(codec.tag());
+        codec.write(out, value, this);
+    }
+
+    public Object readTagged(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        if (tag == TAG_NULL) {
+            return null;
+        }
+        TypeCodec<?> codec = byTag[tag];
+        if (codec == null) {
+            throw new SerializationException("Unknown binary codec tag " + tag);
+        }
+        return codec.read(in, this);
+    }
+}
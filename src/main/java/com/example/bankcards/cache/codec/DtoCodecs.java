@@ -0,0 +1,160 @@
+package com.example.bankcards.cache.codec;
+
+import com.example.bankcards.dto.CustomerRegistrationResponseDTO;
+import com.example.bankcards.dto.card.BatchTransferResponseDTO;
+import com.example.bankcards.dto.card.CardResponseDTO;
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
+import com.example.bankcards.service.idempotency.IdempotencyRecordCodec;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.bankcards.cache.codec.BinaryIO.*;
+
+/**
+ * Бинарные схемы ответов API, которые попадают в кэш.
+ * Теги 1-4 совпадают с форматом журнала идемпотентности и не меняются.
+ */
+public final class DtoCodecs {
+
+    /**
+     * Наибольшее число переводов в BatchTransferResponseDTO, которое помещается в схему.
+     */
+    public static final int MAX_BATCH_TRANSFERS = 0xFFFF;
+
+    public static final TypeCodec<TransactionResponseDTO> TRANSACTION = new TypeCodec<>() {
+        @Override
+        public byte tag() {
+            return 1;
+        }
+
+        @Override
+        public Class<TransactionResponseDTO> type() {
+            return TransactionResponseDTO.class;
+        }
+
+        @Override
+        public void write(DataOutputStream out, TransactionResponseDTO value, CodecRegistry registry) throws IOException {
+            writeDecimal(out, value.getAmount());
+            writeDateTime(out, value.getCreatedAt());
+            writeString(out, value.getStatusTransaction());
+        }
+
+        @Override
+        public TransactionResponseDTO read(DataInputStream in, CodecRegistry registry) throws IOException {
+            TransactionResponseDTO transaction = new TransactionResponseDTO();
+            transaction.setAmount(readDecimal(in));
+            transaction.setCreatedAt(readDateTime(in));
+            transaction.setStatusTransaction(readString(in));
+            return transaction;
+        }
+    };
+
+    public static final TypeCodec<BatchTransferResponseDTO> BATCH_TRANSFER = new TypeCodec<>() {
+        @Override
+        public byte tag() {
+            return 2;
+        }
+
+        @Override
+        public Class<BatchTransferResponseDTO> type() {
+            return BatchTransferResponseDTO.class;
+        }
+
+        @Override
+        public void write(DataOutputStream out, BatchTransferResponseDTO value, CodecRegistry registry) throws IOException {
+            // число переводов пишется двумя байтами без знака: формат уже хранится в журнале идемпотентности
+            int size = value.getTransfers().size();
+            if (size > MAX_BATCH_TRANSFERS) {
+                throw new SerializationException("Batch of " + size + " transfers exceeds " + MAX_BATCH_TRANSFERS);
+            }
+            out.writeShort(size);
+            for (TransactionResponseDTO transaction : value.getTransfers()) {
+                TRANSACTION.write(out, transaction, registry);
+            }
+        }
+
+        @Override
+        public BatchTransferResponseDTO read(DataInputStream in, CodecRegistry registry) throws IOException {
+            int size = in.readUnsignedShort();
+            List<TransactionResponseDTO> transfers = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                transfers.add(TRANSACTION.read(in, registry));
+            }
+            return new BatchTransferResponseDTO(transfers);
+        }
+    };
+
+    public static final TypeCodec<CardResponseDTO> CARD = new TypeCodec<>() {
+        @Override
+        public byte tag() {
+            return 3;
+        }
+
+        @Override
+        public Class<CardResponseDTO> type() {
+            return CardResponseDTO.class;
+        }
+
+        @Override
+        public void write(DataOutputStream out, CardResponseDTO value, CodecRegistry registry) throws IOException {
+            writeString(out, value.getCardNumber());
+            writeString(out, value.getCardHolder());
+            writeDate(out, value.getExpiryDate());
+            writeString(out, value.getStatus());
+            writeDecimal(out, value.getBalance());
+            writeString(out, value.getCurrency());
+        }
+
+        @Override
+        public CardResponseDTO read(DataInputStream in, CodecRegistry registry) throws IOException {
+            return new CardResponseDTO(readString(in), readString(in), readDate(in),
+                    readString(in), readDecimal(in), readString(in));
+        }
+    };
+
+    public static final TypeCodec<CustomerRegistrationResponseDTO> CUSTOMER_REGISTRATION = new TypeCodec<>() {
+        @Override
+        public byte tag() {
+            return 4;
+        }
+
+        @Override
+        public Class<CustomerRegistrationResponseDTO> type() {
+            return CustomerRegistrationResponseDTO.class;
+        }
+
+        @Override
+        public void write(DataOutputStream out, CustomerRegistrationResponseDTO value, CodecRegistry registry) throws IOException {
+            writeString(out, value.getName());
+            writeString(out, value.getEmail());
+        }
+
+        @Override
+        public CustomerRegistrationResponseDTO read(DataInputStream in, CodecRegistry registry) throws IOException {
+            CustomerRegistrationResponseDTO customer = new CustomerRegistrationResponseDTO();
+            customer.setName(readString(in));
+            customer.setEmail(readString(in));
+            return customer;
+        }
+    };
+
+    private DtoCodecs() {
+    }
+
+    /**
+     * Все известные схемы, включая запись идемпотентности.
+     */
+    public static CodecRegistry registry() {
+        return new CodecRegistry()
+                .register(TRANSACTION)
+                .register(BATCH_TRANSFER)
+                .register(CARD)
+                .register(CUSTOMER_REGISTRATION)
+                .register(new IdempotencyRecordCodec());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.bankcards.cache.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Сжимает LZ4 значения другого сериализатора, если они не короче thresholdBytes.
+ * Первый байт - признак сжатия; у сжатых значений за ним идёт исходная длина.
+ * Короткие значения не сжимаются: на них LZ4 не выигрывает и только тратит время.
+ */
+public class Lz4CompressingRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte RAW = 0;
+    private static final byte LZ4 = 1;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final RedisSerializer<Object> delegate;
+    private final int thresholdBytes;
+
+    public Lz4CompressingRedisSerializer(RedisSerializer<Object> delegate, int thresholdBytes) {
+        this.delegate = delegate;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] raw = delegate.serialize(value);
+        if (raw == null) {
+            return null;
+        }
+        if (raw.length >= thresholdBytes) {
+            byte[] compressed = new byte[1 + Integer.BYTES + COMPRESSOR.maxCompressedLength(raw.length)];
+            int length = COMPRESSOR.compress(raw, 0, raw.length, compressed, 1 + Integer.BYTES);
+            if (length < raw.length) {
+                ByteBuffer.wrap(compressed).put(LZ4).putInt(raw.length);
+                return Arrays.copyOf(compressed, 1 + Integer.BYTES + length);
+            }
+        }
+        byte[] framed = new byte[raw.length + 1];
+        framed[0] = RAW;
+        System.arraycopy(raw, 0, framed, 1, raw.length);
+        return framed;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == RAW) {
+            return delegate.deserialize(Arrays.copyOfRange(bytes, 1, bytes.length));
+        }
+        if (bytes[0] != LZ4) {
+            throw new SerializationException("Unknown cache compression flag " + bytes[0]);
+        }
+        int rawLength = ByteBuffer.wrap(bytes, 1, Integer.BYTES).getInt();
+        byte[] raw = new byte[rawLength];
+        DECOMPRESSOR.decompress(bytes, 1 + Integer.BYTES, raw, 0, rawLength);
+        return delegate.deserialize(raw);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.bankcards.cache.codec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Бинарная схема одного типа: поля пишутся в фиксированном порядке без имён.
+ * tag идентифицирует тип в сериализованных данных и после выкатки не меняется.
+ */
+public interface TypeCodec<T> {
+
+    byte tag();
+
+    Class<T> type();
+
+    void write(DataOutputStream out, T value, CodecRegistry registry) throws IOException;
+
+    T read(DataInputStream in, CodecRegistry registry) throws IOException;
+}
@@ -0,0 +1,134 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.cache.CacheMode;
+import com.example.bankcards.cache.CacheSerializerType;
+import com.example.bankcards.cache.CacheSpecProperties;
+import com.example.bankcards.cache.TieredCacheManager;
+import com.example.bankcards.cache.codec.BinaryRedisSerializer;
+import com.example.bankcards.cache.codec.DtoCodecs;
+import com.example.bankcards.cache.codec.Lz4CompressingRedisSerializer;
+import com.example.bankcards.service.idempotency.IdempotencyRecord;
+import com.example.bankcards.service.idempotency.IdempotencyScope;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Кэши приложения. Режим (LOCAL, REDIS, NEAR), формат значений и время жизни
+ * задаются для каждого имени кэша в cache.names, по умолчанию - в cache.defaults.
+ * Если ни одному кэшу Redis не нужен, подключение к Redis не используется.
+ * Аннотаций @Cacheable в приложении нет: через cache.names настраиваются кэши идемпотентности.
+ */
+@EnableCaching
+@EnableConfigurationProperties(CacheSpecProperties.class)
+@Configuration
+public class CacheConfig {
+
+    /**
+     * @param claimTtl время жизни записи PROCESSING: ключ узла, упавшего во время запроса,
+     *                 освобождается через claimTtl, а не через ttl кэша
+     */
+    @Bean
+    public CacheManager cacheManager(CacheSpecProperties cacheSpecProperties,
+                                     ObjectProvider<RedisConnectionFactory> connectionFactory,
+                                     ObjectMapper idempotencyObjectMapper,
+                                     @Value("${idempotency.claim-ttl}") Duration claimTtl) {
+
+        requireSharedIdempotencyCaches(cacheSpecProperties);
+
+        Function<Object, Duration> ttlOverride = value ->
+                value instanceof IdempotencyRecord record && !record.isCompleted() ? claimTtl : null;
+
+        RedisCacheManager redisCacheManager = cacheSpecProperties.usesRedis()
+                ? redisCacheManager(connectionFactory.getObject(), cacheSpecProperties, idempotencyObjectMapper, ttlOverride)
+                : null;
+
+        // PROCESSING занят выполняющимся запросом и меняется другим узлом - локально не храним
+        return new TieredCacheManager(cacheSpecProperties, redisCacheManager,
+                value -> !(value instanceof IdempotencyRecord record) || record.isCompleted(), ttlOverride);
+    }
+
+    /**
+     * Занятый ключ идемпотентности в режиме LOCAL виден только своему узлу: повтор,
+     * пришедший на другой узел, выполнил бы операцию второй раз. Поэтому LOCAL для этих кэшей
+     * допускается только с cache.single-node: true.
+     */
+    private static void requireSharedIdempotencyCaches(CacheSpecProperties cacheSpecProperties) {
+        if (cacheSpecProperties.isSingleNode()) {
+            return;
+        }
+        for (IdempotencyScope scope : IdempotencyScope.values()) {
+            if (cacheSpecProperties.forCache(scope.getCacheName()).getMode() == CacheMode.LOCAL) {
+                throw new IllegalStateException("Idempotency cache " + scope.getCacheName()
+                        + " is LOCAL, so its claims are node-local; use REDIS or NEAR, or set cache.single-node: true");
+            }
+        }
+    }
+
+    /**
+     * Формат значений выбирается по имени кэша, по умолчанию - JSON.
+     */
+    private static RedisCacheManager redisCacheManager(RedisConnectionFactory connectionFactory,
+                                                       CacheSpecProperties cacheSpecProperties,
+                                                       ObjectMapper objectMapper,
+                                                       Function<Object, Duration> ttlOverride) {
+
+        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(objectMapper);
+        BinaryRedisSerializer binarySerializer = new BinaryRedisSerializer(DtoCodecs.registry());
+
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
+                .disableCachingNullValues();
+
+        Set<String> cacheNames = new HashSet<>(cacheSpecProperties.getNames().keySet());
+        Arrays.stream(IdempotencyScope.values()).map(IdempotencyScope::getCacheName).forEach(cacheNames::add);
+
+        Map<String, RedisCacheConfiguration> cacheConfigurations = cacheNames.stream()
+                .collect(Collectors.toMap(Function.identity(), cacheName ->
+                        redisCacheConfiguration(config, cacheSpecProperties.forCache(cacheName), jsonSerializer, binarySerializer, ttlOverride)));
+
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(redisCacheConfiguration(config, cacheSpecProperties.getDefaults(), jsonSerializer, binarySerializer, ttlOverride))
+                .withInitialCacheConfigurations(cacheConfigurations)
+                .build();
+        redisCacheManager.initializeCaches();
+        return redisCacheManager;
+    }
+
+    private static RedisCacheConfiguration redisCacheConfiguration(RedisCacheConfiguration config,
+                                                                   CacheSpecProperties.CacheSpec spec,
+                                                                   RedisSerializer<Object> jsonSerializer,
+                                                                   RedisSerializer<Object> binarySerializer,
+                                                                   Function<Object, Duration> ttlOverride) {
+        RedisSerializer<Object> serializer = spec.getSerializer() == CacheSerializerType.BINARY ? binarySerializer : jsonSerializer;
+        if (spec.getCompressionThresholdBytes() != null) {
+            serializer = new Lz4CompressingRedisSerializer(serializer, spec.getCompressionThresholdBytes());
+        }
+        return config
+                .entryTtl((key, value) -> {
+                    Duration override = ttlOverride.apply(value);
+                    return override != null ? override : spec.getTtl();
+                })
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer));
+    }
+}
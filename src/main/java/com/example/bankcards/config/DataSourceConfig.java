@@ -0,0 +1,88 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.datasource.ReadFromPrimary;
+import com.example.bankcards.datasource.ReadFromPrimaryInterceptor;
+import com.example.bankcards.datasource.ReadReplicaPool;
+import com.example.bankcards.datasource.ReadReplicaRoutingDataSource;
+import com.example.bankcards.datasource.ReplicaProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Основная база и реплики для чтения. Соединение транзакции берётся лениво, при первом запросе:
+ * транзакции только для чтения получают его от реплики, остальные - от основной базы.
+ * Без настроенных реплик используется обычный пул основной базы.
+ */
+@EnableConfigurationProperties(ReplicaProperties.class)
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    public ReadReplicaPool readReplicaPool(DataSourceProperties dataSourceProperties, ReplicaProperties replicaProperties) {
+        List<ReadReplicaPool.Replica> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaProperties.getUrls().size(); i++) {
+            String name = "replica-" + i;
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName(name);
+            dataSource.setJdbcUrl(replicaProperties.getUrls().get(i));
+            dataSource.setDriverClassName(dataSourceProperties.determineDriverClassName());
+            dataSource.setUsername(replicaProperties.getUsername() != null
+                    ? replicaProperties.getUsername() : dataSourceProperties.determineUsername());
+            dataSource.setPassword(replicaProperties.getPassword() != null
+                    ? replicaProperties.getPassword() : dataSourceProperties.determinePassword());
+            dataSource.setMaximumPoolSize(replicaProperties.getPoolSize());
+            dataSource.setConnectionTimeout(replicaProperties.getConnectionTimeoutMs());
+            dataSource.setReadOnly(true);
+            replicas.add(new ReadReplicaPool.Replica(name, dataSource));
+        }
+        return new ReadReplicaPool(replicas);
+    }
+
+    /**
+     * Пул основной базы - отдельный бин, чтобы контекст закрыл его при остановке,
+     * а метрики Hikari (hikaricp.*) регистрировались для него, как для автоконфигурированного пула.
+     */
+    @Bean(destroyMethod = "close")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties, Environment environment) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        return primary;
+    }
+
+    @Primary
+    @Bean
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReadReplicaPool readReplicaPool,
+                                 MeterRegistry meterRegistry) {
+        if (readReplicaPool.isEmpty()) {
+            return primaryDataSource;
+        }
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(new ReadReplicaRoutingDataSource(primaryDataSource, readReplicaPool, meterRegistry));
+        return dataSource;
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor readFromPrimaryAdvisor() {
+        return new DefaultPointcutAdvisor(AnnotationMatchingPointcut.forMethodAnnotation(ReadFromPrimary.class),
+                new ReadFromPrimaryInterceptor());
+    }
+}
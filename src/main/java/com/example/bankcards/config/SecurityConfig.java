@@ -32,6 +32,9 @@ public class SecurityConfig {
             "v3/api-docs/yaml"
     };
 
+    // Доступны только на порту management.server.port
+    private static final String[] WHITE_LIST_ACTUATOR = {"/actuator/health", "/actuator/prometheus"};
+
     private final JwtAuthenticationFilter jwtRequestFilter;
 
     @Bean
@@ -41,6 +44,7 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(WHITE_LIST).permitAll()
                         .requestMatchers(WHITE_LIST_SWAGGER).permitAll()
+                        .requestMatchers(WHITE_LIST_ACTUATOR).permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session
@@ -1,11 +1,13 @@
 package com.example.bankcards.config.security_filter;
 
+import com.example.bankcards.security.JwtPrincipal;
 import com.example.bankcards.security.JwtUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -14,41 +16,43 @@ import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.stream.Collectors;
 
-@RequiredArgsConstructor
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
+    private final Timer verifyTimer;
+
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, MeterRegistry meterRegistry) {
+        this.jwtUtil = jwtUtil;
+        this.verifyTimer = Timer.builder("auth.jwt.verify")
+                .description("Time spent verifying JWT tokens, including verified token cache hits")
+                .register(meterRegistry);
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
 
         final String authHeader = request.getHeader("Authorization");
 
-        String username = null;
-        String jwt = null;
-
         if (authHeader != null && !authHeader.isBlank() && authHeader.startsWith("Bearer ")) {
-            jwt = authHeader.substring(7);
+            String jwt = authHeader.substring(7);
 
             if (jwt.isBlank()){
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid JWT token");
+                return;
             }
-            username = jwtUtil.extractUsername(jwt);
-        }
 
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                // Подпись и срок действия проверяются один раз, повторный токен берётся из кэша
+                JwtPrincipal principal = verifyTimer.record(() -> jwtUtil.verify(jwt));
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            if (jwtUtil.isTokenValid(jwt, username)) {
-                // Извлечение ролей из токена
-                List<SimpleGrantedAuthority> authorities = jwtUtil.extractRoles(jwt).stream()
+                List<SimpleGrantedAuthority> authorities = principal.roles().stream()
                         .map(SimpleGrantedAuthority::new)
-                        .collect(Collectors.toList());
+                        .toList();
 
                 UsernamePasswordAuthenticationToken authToken =
-                        new UsernamePasswordAuthenticationToken(username, null, authorities);
+                        new UsernamePasswordAuthenticationToken(principal, null, authorities);
 
                 SecurityContextHolder.getContext().setAuthentication(authToken);
             }
@@ -1,7 +1,17 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.card.*;
+import com.example.bankcards.entity.enums.CardStatus;
 import com.example.bankcards.service.AdminCardService;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.TransactionExportService;
+import com.example.bankcards.service.export.ExportFormat;
+import com.example.bankcards.service.idempotency.IdempotencyScope;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -11,11 +21,14 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 import javax.validation.Valid;
 import javax.validation.constraints.*;
+import java.time.LocalDate;
 
 @Tag(name = "Card Management", description = "Администрирование карт — создание, обновление, активация, блокировка и удаление.")
 @RequiredArgsConstructor
@@ -24,6 +37,34 @@ import javax.validation.constraints.*;
 public class AdminCardController {
 
     private final AdminCardService adminCardService;
+    private final TransactionExportService transactionExportService;
+    private final IdempotencyService idempotencyService;
+
+    /**
+     * Запрос списка карт с фильтрами и пагинацией по id
+     * @param status статус карты
+     * @param owner email владельца
+     * @param expiresFrom срок действия не раньше
+     * @param expiresTo срок действия не позже
+     * @param afterId nextAfterId из предыдущего ответа, без него - первая страница
+     * @param size размер страницы, не больше 100
+     * @return dto со страницей карт
+     */
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Получить список карт",
+            description = "Возвращает карты по фильтрам статуса, владельца и срока действия. " +
+                    "Для следующей страницы передайте nextAfterId из ответа в параметре afterId.")
+    @GetMapping
+    public CardListResponseDTO listCards(
+            @RequestParam(required = false) CardStatus status,
+            @RequestParam(required = false) String owner,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate expiresFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate expiresTo,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "20") int size) {
+
+        return adminCardService.listCards(status, owner, expiresFrom, expiresTo, afterId, size);
+    }
 
     /**
      * Запрос создания карты
@@ -37,7 +78,9 @@ public class AdminCardController {
     public CardResponseDTO createCard(@Valid @RequestBody CreateCardRequestDTO request,
                                       @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey) {
 
-        return adminCardService.createCard(request, idempotencyKey);
+        return idempotencyService.execute(IdempotencyScope.CREATE_CARD, idempotencyKey, request,
+                CardResponseDTO.class,
+                () -> adminCardService.createCard(request, idempotencyKey));
     }
 
 
@@ -53,7 +96,9 @@ public class AdminCardController {
     public CardResponseDTO updateCard(@Valid @RequestBody UpdateCardRequestDTO request,
                                       @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey) {
 
-        return adminCardService.updateCard(request);
+        return idempotencyService.execute(IdempotencyScope.UPDATE_CARD, idempotencyKey, request,
+                CardResponseDTO.class,
+                () -> adminCardService.updateCard(request));
     }
 
 
@@ -69,7 +114,8 @@ public class AdminCardController {
     public void deleteCard(@Valid @RequestBody DeleteCardRequestDTO request,
                              @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey) {
 
-        adminCardService.deleteCard(request, idempotencyKey);
+        idempotencyService.execute(IdempotencyScope.DELETE_CARD, idempotencyKey, request,
+                () -> adminCardService.deleteCard(request, idempotencyKey));
     }
 
     /**
@@ -84,7 +130,8 @@ public class AdminCardController {
     public void activateCard(@Valid @RequestBody ActivateCardRequestDTO request,
                                @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey) {
 
-        adminCardService.activateCard(request, idempotencyKey);
+        idempotencyService.execute(IdempotencyScope.ACTIVATE_CARD, idempotencyKey, request,
+                () -> adminCardService.activateCard(request, idempotencyKey));
     }
 
     /**
@@ -99,6 +146,48 @@ public class AdminCardController {
     public void blockCard(@Valid @RequestBody BlockCardRequestDTO request,
                             @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey) {
 
-        adminCardService.blockCard(request, idempotencyKey);
+        idempotencyService.execute(IdempotencyScope.ADMIN_BLOCK_CARD, idempotencyKey, request,
+                () -> adminCardService.blockCard(request, idempotencyKey));
+    }
+
+    /**
+     * Запрос установки лимитов расходов по карте.
+     * @param request dto - с номером карты, дневным и месячным лимитом
+     * @param idempotencyKey
+     */
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Установить лимиты карты",
+            description = "Задаёт лимиты расходов по карте за скользящие сутки и 30 дней. Возвращаемого значения нет.")
+    @PutMapping("/limits")
+    public void setCardLimits(@Valid @RequestBody SetLimitsForCardRequestDTO request,
+                              @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey) {
+
+        idempotencyService.execute(IdempotencyScope.SET_CARD_LIMITS, idempotencyKey, request,
+                () -> adminCardService.setCardLimits(request));
+    }
+
+    /**
+     * Запрос выгрузки всей истории транзакций по карте
+     * @param format NDJSON или CSV
+     * @return поток строк транзакций в порядке создания
+     */
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Выгрузить историю транзакций по карте",
+            description = "Потоково отдаёт всю историю транзакций карты в формате NDJSON или CSV.")
+    @GetMapping("/transactions/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            @Valid ShowTransactionalByCardRequestDTO cardDto,
+            @RequestParam(defaultValue = "NDJSON") ExportFormat format) {
+
+        Long cardId = adminCardService.getCardId(cardDto.cardNumber());
+
+        StreamingResponseBody body = outputStream ->
+                transactionExportService.exportCardHistory(cardId, format, outputStream);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"transactions." + format.getFileExtension() + "\"")
+                .body(body);
     }
 }
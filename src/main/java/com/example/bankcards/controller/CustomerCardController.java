@@ -2,9 +2,18 @@ package com.example.bankcards.controller;
 
 
 import com.example.bankcards.dto.card.*;
+import com.example.bankcards.dto.transaction.TransactionHistoryResponseDTO;
 import com.example.bankcards.dto.transaction.TransactionResponseDTO;
 import com.example.bankcards.entity.enums.CardStatus;
 import com.example.bankcards.service.CustomerCardService;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.TransactionExportService;
+import com.example.bankcards.service.export.ExportFormat;
+import com.example.bankcards.service.idempotency.IdempotencyScope;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.*;
 import org.springframework.data.domain.Page;
@@ -21,8 +30,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
-import javax.validation.Valid;
-import javax.validation.constraints.NotBlank;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
 import java.util.List;
 
 @Tag(
@@ -36,6 +45,8 @@ import java.util.List;
 public class CustomerCardController {
 
     private final CustomerCardService cardFunctionService;
+    private final TransactionExportService transactionExportService;
+    private final IdempotencyService idempotencyService;
 
     /**
      * Запрос получений данных карты
@@ -79,7 +90,28 @@ public class CustomerCardController {
     public TransactionResponseDTO transfer(@Valid @RequestBody TransferFundsBetweenUserCardsRequestDTO transferDto,
                                            @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey) {
 
-        return cardFunctionService.transferBetweenCards(transferDto, idempotencyKey);
+        return idempotencyService.execute(IdempotencyScope.TRANSFER, idempotencyKey, transferDto,
+                TransactionResponseDTO.class,
+                () -> cardFunctionService.transferBetweenCards(transferDto, idempotencyKey));
+    }
+
+    /**
+     * Запрос пакетного перевода средств между своими картами
+     * @param batchTransferDto dto со списком переводов
+     * @param idempotencyKey
+     * @return dto с транзакциями в порядке переводов
+     */
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @Operation(summary = "Перевести средства между своими картами пакетом",
+            description = "Проводит все переводы в одной транзакции: либо все, либо ни одного. " +
+                    "Возвращает транзакции в порядке переводов в запросе.")
+    @PostMapping("/transfer/batch")
+    public BatchTransferResponseDTO transferBatch(@Valid @RequestBody BatchTransferRequestDTO batchTransferDto,
+                                                  @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey) {
+
+        return idempotencyService.execute(IdempotencyScope.TRANSFER_BATCH, idempotencyKey, batchTransferDto,
+                BatchTransferResponseDTO.class,
+                () -> cardFunctionService.transferBatchBetweenCards(batchTransferDto, idempotencyKey));
     }
 
     /**
@@ -95,7 +127,9 @@ public class CustomerCardController {
     public TransactionResponseDTO withdraw(@Valid @RequestBody WithdrawFundsRequestDTO withdrawDto,
                                            @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey) {
 
-        return cardFunctionService.withdrawalFromCard(withdrawDto, idempotencyKey);
+        return idempotencyService.execute(IdempotencyScope.WITHDRAWAL, idempotencyKey, withdrawDto,
+                TransactionResponseDTO.class,
+                () -> cardFunctionService.withdrawalFromCard(withdrawDto, idempotencyKey));
     }
 
     /**
@@ -114,6 +148,50 @@ public class CustomerCardController {
         return cardFunctionService.getTransactionalByCard(historyTransactionsDto, page, size, idempotencyKey);
     }
 
+    /**
+     * Запрос истории транзакций по карте с пагинацией по курсору
+     * @param after курсор nextCursor из предыдущего ответа, без него - первая страница
+     * @param size размер страницы, не больше 100
+     * @return dto со страницей транзакций и курсором следующей страницы
+     */
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @Operation(summary = "Получить историю транзакций по карте по курсору",
+            description = "Возвращает транзакции карты в порядке создания. Для следующей страницы " +
+                    "передайте nextCursor из ответа в параметре after; nextCursor = null - история закончилась.")
+    @GetMapping("/transactions/history")
+    public TransactionHistoryResponseDTO getTransactionHistory(
+            @Valid ShowTransactionalByCardRequestDTO historyTransactionsDto,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int size) {
+
+        return cardFunctionService.getTransactionHistory(historyTransactionsDto, after, size);
+    }
+
+    /**
+     * Запрос выгрузки всей истории транзакций по карте
+     * @param format NDJSON или CSV
+     * @return поток строк транзакций в порядке создания
+     */
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    @Operation(summary = "Выгрузить историю транзакций по карте",
+            description = "Потоково отдаёт всю историю транзакций карты в формате NDJSON или CSV.")
+    @GetMapping("/transactions/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            @Valid ShowTransactionalByCardRequestDTO cardDto,
+            @RequestParam(defaultValue = "NDJSON") ExportFormat format) {
+
+        Long cardId = cardFunctionService.getOwnCardId(cardDto.cardNumber());
+
+        StreamingResponseBody body = outputStream ->
+                transactionExportService.exportCardHistory(cardId, format, outputStream);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"transactions." + format.getFileExtension() + "\"")
+                .body(body);
+    }
+
     /**
      * Запрос блокирования карты
      * @param blockCardDto dto c номером карты
@@ -127,7 +205,8 @@ public class CustomerCardController {
     public void blockCard(@Valid @RequestBody BlockCardRequestDTO blockCardDto,
                             @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey){
 
-        cardFunctionService.requestCardBlock(blockCardDto, idempotencyKey);
+        idempotencyService.execute(IdempotencyScope.BLOCK_CARD, idempotencyKey, blockCardDto,
+                () -> cardFunctionService.requestCardBlock(blockCardDto, idempotencyKey));
     }
 
     /**
@@ -143,6 +222,8 @@ public class CustomerCardController {
     public TransactionResponseDTO replenishmentCard(@Valid @RequestBody ReplenishmentCardRequestDTO replenishmentCardDto,
                                                     @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey){
 
-        return cardFunctionService.cardReplenishment(replenishmentCardDto, idempotencyKey);
+        return idempotencyService.execute(IdempotencyScope.REPLENISHMENT, idempotencyKey, replenishmentCardDto,
+                TransactionResponseDTO.class,
+                () -> cardFunctionService.cardReplenishment(replenishmentCardDto, idempotencyKey));
     }
 }
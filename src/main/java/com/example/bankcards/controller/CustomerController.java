@@ -6,6 +6,7 @@ import com.example.bankcards.dto.CustomerRegistrationRequestDTO;
 import com.example.bankcards.service.AuthService;
 import com.example.bankcards.service.CustomerService;
 import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.idempotency.IdempotencyScope;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -38,9 +39,8 @@ public class CustomerController {
     @PostMapping("/registration")
     public CustomerRegistrationResponseDTO customerRegistration(@Valid @RequestBody CustomerRegistrationRequestDTO customerReqDto,
                                                                 @RequestHeader("Idempotency-Key") @NotBlank String idempotencyKey){
-//        if (idempotencyService.idempotencyKeyCheck(idempotencyKey)) {
-//            return idempotencyService.getResultByIdempotencyKey(idempotencyKey, CustomerRegistrationResponseDTO.class);
-//        }
-        return customerService.registerCustomer(customerReqDto, idempotencyKey);
+        return idempotencyService.execute(IdempotencyScope.REGISTER, idempotencyKey, customerReqDto,
+                CustomerRegistrationResponseDTO.class,
+                () -> customerService.registerCustomer(customerReqDto, idempotencyKey));
     }
 }
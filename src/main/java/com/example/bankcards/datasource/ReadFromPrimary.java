@@ -0,0 +1,17 @@
+package com.example.bankcards.datasource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Читающий метод, которому нельзя отставание реплики: его транзакция только для чтения
+ * всё равно идёт в основную базу. Например, баланс карты сразу после перевода.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadFromPrimary {
+}
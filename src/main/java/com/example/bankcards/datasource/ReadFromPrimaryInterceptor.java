@@ -0,0 +1,33 @@
+package com.example.bankcards.datasource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Отмечает поток на время вызова метода с @ReadFromPrimary.
+ * Соединение транзакции берётся лениво, при первом запросе - уже внутри метода,
+ * поэтому порядок относительно транзакционного прокси не важен.
+ */
+public class ReadFromPrimaryInterceptor implements MethodInterceptor {
+
+    private static final ThreadLocal<Integer> DEPTH = ThreadLocal.withInitial(() -> 0);
+
+    public static boolean isPrimaryForced() {
+        return DEPTH.get() > 0;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        DEPTH.set(DEPTH.get() + 1);
+        try {
+            return invocation.proceed();
+        } finally {
+            int depth = DEPTH.get() - 1;
+            if (depth == 0) {
+                DEPTH.remove();
+            } else {
+                DEPTH.set(depth);
+            }
+        }
+    }
+}
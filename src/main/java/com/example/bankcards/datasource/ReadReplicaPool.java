@@ -0,0 +1,108 @@
+package com.example.bankcards.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул реплик: выдаёт здоровые реплики по кругу и периодически проверяет их доступность и отставание.
+ */
+@Slf4j
+public class ReadReplicaPool implements DisposableBean {
+
+    /**
+     * Отставание воспроизведения WAL в мс; 0, если реплика применила всё полученное.
+     */
+    private static final String LAG_QUERY = "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000, 0) END";
+
+    private final List<Replica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReadReplicaPool(List<Replica> replicas) {
+        this.replicas = replicas;
+    }
+
+    public boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    /**
+     * Следующая здоровая реплика по кругу или null, если здоровых нет.
+     */
+    public Replica nextHealthy() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.isHealthy()) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    public void checkHealth(long maxLagMillis) {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(2);
+                try (ResultSet resultSet = statement.executeQuery(LAG_QUERY)) {
+                    double lagMillis = resultSet.next() ? resultSet.getDouble(1) : Double.MAX_VALUE;
+                    healthy = lagMillis <= maxLagMillis;
+                    if (!healthy) {
+                        log.warn("Read replica {} lags {} ms behind the primary", replica.name(), (long) lagMillis);
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("Read replica {} is unavailable: {}", replica.name(), e.getMessage());
+                healthy = false;
+            }
+            replica.setHealthy(healthy);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(replica -> replica.dataSource().close());
+    }
+
+    public static final class Replica {
+
+        private final String name;
+        private final HikariDataSource dataSource;
+        private volatile boolean healthy = true;
+
+        public Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public HikariDataSource dataSource() {
+            return dataSource;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public void setHealthy(boolean healthy) {
+            if (this.healthy != healthy) {
+                log.info("Read replica {} is now {}", name, healthy ? "healthy" : "unhealthy");
+            }
+            this.healthy = healthy;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bankcards.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * Источник соединений для транзакций только для чтения (readOnlyDataSource у LazyConnectionDataSourceProxy).
+ * Отдаёт соединение здоровой реплики; в основную базу идут методы с @ReadFromPrimary,
+ * а также все чтения, если здоровых реплик нет или реплика не выдала соединение.
+ */
+@Slf4j
+public class ReadReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final ReadReplicaPool readReplicaPool;
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    public ReadReplicaRoutingDataSource(DataSource primary, ReadReplicaPool readReplicaPool, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.readReplicaPool = readReplicaPool;
+        this.replicaReads = Counter.builder("datasource.read.routing")
+                .description("Read-only transactions by the database they were routed to")
+                .tag("target", "replica")
+                .register(meterRegistry);
+        this.primaryReads = Counter.builder("datasource.read.routing")
+                .description("Read-only transactions by the database they were routed to")
+                .tag("target", "primary")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!ReadFromPrimaryInterceptor.isPrimaryForced()) {
+            ReadReplicaPool.Replica replica = readReplicaPool.nextHealthy();
+            if (replica != null) {
+                try {
+                    Connection connection = replica.dataSource().getConnection();
+                    replicaReads.increment();
+                    return connection;
+                } catch (SQLException e) {
+                    log.warn("Read replica {} refused a connection, reading from the primary: {}", replica.name(), e.getMessage());
+                    replica.setHealthy(false);
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    /**
+     * Пулы реплик и основной базы открыты с настроенными учётными данными, как и HikariDataSource,
+     * соединение с другими не выдаётся.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Connections are obtained with the configured credentials");
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.bankcards.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Периодически проверяет реплики: недоступная или отстающая больше max-lag-ms
+ * реплика исключается из чтения до следующей успешной проверки.
+ */
+@Component
+public class ReplicaHealthCheckJob {
+
+    private final ReadReplicaPool readReplicaPool;
+    private final long maxLagMillis;
+
+    public ReplicaHealthCheckJob(ReadReplicaPool readReplicaPool,
+                                 @Value("${datasource.replica.max-lag-ms}") long maxLagMillis) {
+        this.readReplicaPool = readReplicaPool;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.health-check-interval-ms}")
+    public void check() {
+        if (!readReplicaPool.isEmpty()) {
+            readReplicaPool.checkHealth(maxLagMillis);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.bankcards.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Реплики для транзакций только для чтения. Пустой список urls - всё идёт в основную базу.
+ * username и password по умолчанию берутся из spring.datasource.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "datasource.replica")
+public class ReplicaProperties {
+
+    private List<String> urls = new ArrayList<>();
+    private String username;
+    private String password;
+    private int poolSize = 10;
+    private long connectionTimeoutMs = 1000;
+
+    /**
+     * Реплика с большим отставанием считается нездоровой.
+     */
+    private long maxLagMs = 5000;
+    private long healthCheckIntervalMs = 5000;
+}
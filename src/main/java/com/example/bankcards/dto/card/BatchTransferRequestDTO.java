@@ -0,0 +1,13 @@
+package com.example.bankcards.dto.card;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+public record BatchTransferRequestDTO(
+        @NotEmpty
+        @Size(max = 100, message = "Batch may contain at most 100 transfers")
+        List<@Valid TransferFundsBetweenUserCardsRequestDTO> transfers
+) {
+}
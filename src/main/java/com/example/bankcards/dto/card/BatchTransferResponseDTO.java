@@ -0,0 +1,21 @@
+package com.example.bankcards.dto.card;
+
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Результаты пакетного перевода: транзакции в порядке переводов в запросе.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Setter
+@Getter
+public class BatchTransferResponseDTO {
+
+    private List<TransactionResponseDTO> transfers;
+}
@@ -0,0 +1,22 @@
+package com.example.bankcards.dto.card;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Страница админского списка карт в порядке id. nextAfterId передаётся в параметре afterId
+ * за следующей страницей, null - карт больше нет.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Setter
+@Getter
+public class CardListResponseDTO {
+
+    private List<CardResponseDTO> cards;
+    private Long nextAfterId;
+}
@@ -0,0 +1,36 @@
+package com.example.bankcards.dto.transaction;
+
+import com.example.bankcards.exception.card.InvalidHistoryCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Позиция в истории транзакций карты: последняя отданная клиенту пара (createdAt, id).
+ * Клиенту передаётся непрозрачной строкой Base64url.
+ */
+public record TransactionHistoryCursor(LocalDateTime createdAt, Long id) {
+
+    private static final char SEPARATOR = '|';
+
+    public String encode() {
+        String raw = createdAt.toString() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static TransactionHistoryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new InvalidHistoryCursorException(cursor);
+            }
+            return new TransactionHistoryCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidHistoryCursorException(cursor);
+        }
+    }
+}
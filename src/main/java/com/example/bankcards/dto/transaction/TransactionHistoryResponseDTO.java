@@ -0,0 +1,22 @@
+package com.example.bankcards.dto.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Страница истории транзакций. nextCursor передаётся в параметре after за следующей страницей,
+ * null - история закончилась.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Setter
+@Getter
+public class TransactionHistoryResponseDTO {
+
+    private List<TransactionResponseDTO> transactions;
+    private String nextCursor;
+}
@@ -1,6 +1,7 @@
 package com.example.bankcards.dto.transaction;
 
 
+import com.example.bankcards.entity.enums.TransactionStatus;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -19,4 +20,13 @@ public class TransactionResponseDTO {
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime createdAt;
     private String statusTransaction;
+
+    /**
+     * Для JPQL-выражения SELECT new: строка журнала сразу в dto, без управляемой сущности.
+     */
+    public TransactionResponseDTO(BigDecimal amount, LocalDateTime createdAt, TransactionStatus transactionStatus) {
+        this.amount = amount;
+        this.createdAt = createdAt;
+        this.statusTransaction = transactionStatus.toString();
+    }
 }
@@ -3,10 +3,13 @@ package com.example.bankcards.entity;
 
 import com.example.bankcards.entity.enums.*;
 import com.example.bankcards.entity.enums.converter.CardStatusConverter;
+import com.example.bankcards.entity.listener.CardNumberListener;
 import com.example.bankcards.entity.operations.TransactionEntity;
 import com.example.bankcards.util.CardNumberEncryptorConverter;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Formula;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -19,18 +22,29 @@ import java.util.List;
 @Getter
 @Builder
 @Table(name = "card_entity")
+@DynamicUpdate
+@EntityListeners(CardNumberListener.class)
 public class CardEntity extends BaseEntity {
 
     @Id
     @Column(name = "id")
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence_card")
-    @SequenceGenerator(name = "sequence_card", sequenceName = "card_main_sequence", allocationSize = 1)
+    @SequenceGenerator(name = "sequence_card", sequenceName = "card_main_sequence", allocationSize = 50)
     private Long id;
 
     @Column(name = "card_number")
     @Convert(converter = CardNumberEncryptorConverter.class)
     private String cardNumber;
 
+    @Column(name = "card_number_hash")
+    private String cardNumberHash;
+
+    @Column(name = "card_last4")
+    private String cardLast4;
+
+    @Column(name = "card_number_masked")
+    private String cardNumberMasked;
+
     @ManyToOne
     @JoinColumn(name = "owner_id", referencedColumnName = "id")
     private CustomerEntity customerEntity;
@@ -42,9 +56,21 @@ public class CardEntity extends BaseEntity {
     @Convert(converter = CardStatusConverter.class)
     private CardStatus status;
 
-    @Column(name = "card_balance")
+    /**
+     * Только для чтения: баланс хранится в card_balance и меняется проводками журнала (LedgerService).
+     */
+    @Formula("(SELECT b.balance FROM card_balance b WHERE b.card_id = id)")
     private BigDecimal balance;
 
+    /**
+     * Лимиты расходов за скользящие сутки и 30 дней; null - без лимита.
+     */
+    @Column(name = "daily_limit")
+    private BigDecimal dailyLimit;
+
+    @Column(name = "monthly_limit")
+    private BigDecimal monthlyLimit;
+
     @Column(name = "currency")
     @Enumerated(EnumType.STRING)
     private Currency currency;
@@ -20,7 +20,7 @@ public class CustomerEntity extends BaseEntity {
     @Id
     @Column(name = "id")
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence_customer")
-    @SequenceGenerator(name = "sequence_customer", sequenceName = "customer_main_sequence", allocationSize = 1)
+    @SequenceGenerator(name = "sequence_customer", sequenceName = "customer_main_sequence", allocationSize = 50)
     private Long id;
 
     @Column(name = "name")
@@ -0,0 +1,45 @@
+package com.example.bankcards.entity;
+
+import com.example.bankcards.service.idempotency.IdempotencyScope;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись журнала идемпотентности: сериализованный ответ операции под ключом клиента.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Setter
+@Getter
+@Builder
+@Table(name = "idempotency_record")
+public class IdempotencyRecordEntity {
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence_idempotency_record")
+    @SequenceGenerator(name = "sequence_idempotency_record", sequenceName = "idempotency_record_sequence", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "scope")
+    @Enumerated(EnumType.STRING)
+    private IdempotencyScope scope;
+
+    @Column(name = "idempotency_key")
+    private String idempotencyKey;
+
+    @Column(name = "response")
+    private byte[] response;
+
+    @Column(name = "bucket")
+    private short bucket;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+}
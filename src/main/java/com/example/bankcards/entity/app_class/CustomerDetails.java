@@ -18,6 +18,10 @@ public class CustomerDetails implements UserDetails {
 
     private CustomerEntity customerEntity;
 
+    public Long getCustomerId() {
+        return customerEntity.getId();
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return customerEntity.getRoles().stream().map(role -> new SimpleGrantedAuthority("ROLE_" + role.getName()))
@@ -0,0 +1,10 @@
+package com.example.bankcards.entity.enums;
+
+/**
+ * Счёт проводки журнала. CASH - встречный счёт банка для снятий и пополнений,
+ * чтобы сумма проводок каждой операции оставалась нулевой.
+ */
+public enum LedgerAccount {
+
+    CARD, CASH
+}
@@ -2,10 +2,29 @@ package com.example.bankcards.entity.enums;
 
 import lombok.Getter;
 
+import java.time.Duration;
+
+/**
+ * Лимит расходов по карте за скользящее окно из buckets интервалов длиной bucket.
+ */
 @Getter
 public enum LimitType {
 
-    DAILY, MONTHLY, YEAR;
+    DAILY(Duration.ofHours(1), 24),
+    MONTHLY(Duration.ofDays(1), 30),
+    YEAR(Duration.ofDays(1), 365);
+
+    private final Duration bucket;
+    private final int buckets;
+
+    LimitType(Duration bucket, int buckets) {
+        this.bucket = bucket;
+        this.buckets = buckets;
+    }
+
+    public Duration getWindow() {
+        return bucket.multipliedBy(buckets);
+    }
 
     public static LimitType fromString(String limit) {
         for (LimitType limitType : LimitType.values()) {
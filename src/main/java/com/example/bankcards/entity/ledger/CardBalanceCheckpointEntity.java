@@ -0,0 +1,42 @@
+package com.example.bankcards.entity.ledger;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Контрольная точка баланса: баланс карты после проводки cardSeq.
+ * Баланс восстанавливается от последней точки суммой следующих проводок.
+ */
+@Entity
+@Immutable
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Builder
+@Table(name = "card_balance_checkpoint")
+public class CardBalanceCheckpointEntity {
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence_card_balance_checkpoint")
+    @SequenceGenerator(name = "sequence_card_balance_checkpoint", sequenceName = "card_balance_checkpoint_sequence", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "card_id")
+    private Long cardId;
+
+    @Column(name = "card_seq")
+    private Long cardSeq;
+
+    @Column(name = "balance")
+    private BigDecimal balance;
+
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
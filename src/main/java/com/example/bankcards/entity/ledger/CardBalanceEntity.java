@@ -0,0 +1,37 @@
+package com.example.bankcards.entity.ledger;
+
+import com.example.bankcards.entity.BaseEntity;
+import com.example.bankcards.entity.CardEntity;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+
+/**
+ * Баланс карты - проекция журнала, обновляется в транзакции проводки.
+ * entrySeq - номер последней проводки по карте.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Setter
+@Getter
+@Builder
+@Table(name = "card_balance")
+public class CardBalanceEntity extends BaseEntity {
+
+    @Id
+    @Column(name = "card_id")
+    private Long cardId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "card_id")
+    private CardEntity card;
+
+    @Column(name = "balance")
+    private BigDecimal balance;
+
+    @Column(name = "entry_seq")
+    private long entrySeq;
+}
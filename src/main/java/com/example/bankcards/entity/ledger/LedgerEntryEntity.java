@@ -0,0 +1,50 @@
+package com.example.bankcards.entity.ledger;
+
+import com.example.bankcards.entity.enums.LedgerAccount;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Проводка журнала: изменение счёта на amount (со знаком) в рамках операции transactionId.
+ * Проводки не меняются и не удаляются. Для счёта CARD cardSeq - номер проводки по карте.
+ */
+@Entity
+@Immutable
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Builder
+@Table(name = "ledger_entry")
+public class LedgerEntryEntity {
+
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence_ledger_entry")
+    @SequenceGenerator(name = "sequence_ledger_entry", sequenceName = "ledger_entry_sequence", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "transaction_id")
+    private Long transactionId;
+
+    @Column(name = "account")
+    @Enumerated(EnumType.STRING)
+    private LedgerAccount account;
+
+    @Column(name = "card_id")
+    private Long cardId;
+
+    @Column(name = "card_seq")
+    private Long cardSeq;
+
+    @Column(name = "amount")
+    private BigDecimal amount;
+
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
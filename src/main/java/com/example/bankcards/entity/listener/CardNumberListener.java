@@ -0,0 +1,30 @@
+package com.example.bankcards.entity.listener;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
+import com.example.bankcards.util.CardNumberMaskUtil;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Заполняет производные от номера карты колонки при каждой записи карты.
+ */
+@Component
+@RequiredArgsConstructor
+public class CardNumberListener {
+
+    private final CardNumberBlindIndexUtil cardNumberBlindIndexUtil;
+
+    @PrePersist
+    @PreUpdate
+    public void fillCardNumberHash(CardEntity cardEntity) {
+        if (cardEntity.getCardNumber() == null) {
+            return;
+        }
+        cardEntity.setCardNumberHash(cardNumberBlindIndexUtil.hash(cardEntity.getCardNumber()));
+        cardEntity.setCardLast4(CardNumberMaskUtil.lastFour(cardEntity.getCardNumber()));
+        cardEntity.setCardNumberMasked(CardNumberMaskUtil.mask(cardEntity.getCardNumber()));
+    }
+}
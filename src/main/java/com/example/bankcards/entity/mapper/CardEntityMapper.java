@@ -2,6 +2,8 @@ package com.example.bankcards.entity.mapper;
 
 import com.example.bankcards.dto.card.CardResponseDTO;
 import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.repository.projection.CardListView;
+import com.example.bankcards.util.CardNumberMaskUtil;
 import org.mapstruct.*;
 
 @Mapper(componentModel = "spring")
@@ -12,11 +14,13 @@ public interface CardEntityMapper {
     @Mapping(target = "currency", expression = "java(cardEntity.getCurrency().toString())")
     CardResponseDTO toCardResponse(CardEntity cardEntity);
 
+    @Mapping(target = "cardNumber", source = "cardNumberMasked")
+    @Mapping(target = "currency", expression = "java(cardListView.getCurrency().toString())")
+    CardResponseDTO toCardResponse(CardListView cardListView);
+
 
     @Named("convertCardNumberToMask")
     default String convertCardNumberToMask(String cardNumber) {
-        if (cardNumber == null || cardNumber.length() < 4) return cardNumber;
-        String lastFourDigit = cardNumber.substring(cardNumber.length() - 4);
-        return "**** **** **** " + lastFourDigit;
+        return CardNumberMaskUtil.mask(cardNumber);
     }
 }
@@ -2,6 +2,7 @@ package com.example.bankcards.entity.mapper;
 
 import com.example.bankcards.dto.transaction.TransactionResponseDTO;
 import com.example.bankcards.entity.operations.TransactionEntity;
+import com.example.bankcards.repository.projection.TransactionHistoryView;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 
@@ -10,4 +11,7 @@ public interface TransactionEntityMapper {
 
     @Mapping(target = "statusTransaction", expression = "java(transactionEntity.getTransactionStatus().toString())")
     TransactionResponseDTO toTransactionResponse(TransactionEntity transactionEntity);
+
+    @Mapping(target = "statusTransaction", expression = "java(transactionHistoryView.getTransactionStatus().toString())")
+    TransactionResponseDTO toTransactionResponse(TransactionHistoryView transactionHistoryView);
 }
@@ -0,0 +1,8 @@
+package com.example.bankcards.exception.card;
+
+public class InvalidHistoryCursorException extends RuntimeException {
+
+    public InvalidHistoryCursorException(String cursor) {
+        super(String.format("Invalid transaction history cursor %s", cursor));
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.bankcards.exception.idempotency;
+
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException() {
+        super("Idempotency key was already used with a different request body");
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.bankcards.exception.idempotency;
+
+public class IdempotencyRequestInProgressException extends RuntimeException {
+
+    public IdempotencyRequestInProgressException() {
+        super("Request with this idempotency key is still in progress, please retry later");
+    }
+}
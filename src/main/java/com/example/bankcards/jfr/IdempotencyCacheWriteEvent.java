@@ -0,0 +1,25 @@
+package com.example.bankcards.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Фоновая запись готового ответа идемпотентности в кэш (Redis) после операции.
+ */
+@Name(IdempotencyCacheWriteEvent.NAME)
+@Label("Idempotency Cache Write")
+@Category({"Bank Cards", "Money Movement"})
+@StackTrace(false)
+public class IdempotencyCacheWriteEvent extends Event {
+
+    public static final String NAME = "com.example.bankcards.IdempotencyCacheWrite";
+
+    @Label("Cache")
+    public String cacheName;
+
+    @Label("Success")
+    public boolean success;
+}
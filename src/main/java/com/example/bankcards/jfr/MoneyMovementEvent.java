@@ -0,0 +1,74 @@
+package com.example.bankcards.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Событие JFR на одну операцию с деньгами: перевод, пакет переводов, снятие или пополнение.
+ * Длительность события - всё время операции, поля *Time - суммарное время фаз по всем попыткам.
+ */
+@Name(MoneyMovementEvent.NAME)
+@Label("Money Movement")
+@Category({"Bank Cards", "Money Movement"})
+@Description("Card money movement with per-phase timings")
+@StackTrace(false)
+public class MoneyMovementEvent extends Event {
+
+    public static final String NAME = "com.example.bankcards.MoneyMovement";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Card Ids")
+    String cardIds;
+
+    @Label("Outcome")
+    @Description("SUCCESS or the simple name of the exception that ended the operation")
+    String outcome;
+
+    @Label("Attempts")
+    int attempts;
+
+    @Label("JVM Lock Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long jvmLockTime;
+
+    @Label("Row Lock Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long rowLockTime;
+
+    @Label("Crypto Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cryptoTime;
+
+    @Label("Business Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long businessTime;
+
+    @Label("Ledger Write Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long ledgerWriteTime;
+
+    @Label("Commit Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long commitTime;
+
+    /**
+     * Имя поля события с временем фазы.
+     */
+    public static String fieldName(MoneyMovementPhase phase) {
+        return switch (phase) {
+            case JVM_LOCK -> "jvmLockTime";
+            case ROW_LOCK -> "rowLockTime";
+            case CRYPTO -> "cryptoTime";
+            case BUSINESS -> "businessTime";
+            case LEDGER_WRITE -> "ledgerWriteTime";
+            case COMMIT -> "commitTime";
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.bankcards.jfr;
+
+/**
+ * Фазы операции с деньгами, время которых пишется в MoneyMovementEvent.
+ * CRYPTO вложена в другие фазы: номера карт расшифровываются при чтении строк (ROW_LOCK)
+ * и шифруются при flush (LEDGER_WRITE, COMMIT).
+ */
+public enum MoneyMovementPhase {
+
+    /**
+     * Ожидание полосатых блокировок карт в JVM.
+     */
+    JVM_LOCK,
+
+    /**
+     * Чтение карт с блокировкой строк (или без неё в оптимистичном режиме).
+     */
+    ROW_LOCK,
+
+    /**
+     * Шифрование и расшифровка номеров карт конвертером JPA.
+     */
+    CRYPTO,
+
+    /**
+     * Проверки и изменение балансов в памяти.
+     */
+    BUSINESS,
+
+    /**
+     * Запись ответа в журнал идемпотентности; её saveAndFlush сбрасывает и изменения карт.
+     */
+    LEDGER_WRITE,
+
+    /**
+     * Фиксация транзакции вместе с оставшимся flush Hibernate.
+     */
+    COMMIT
+}
@@ -0,0 +1,118 @@
+package com.example.bankcards.jfr;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Сбор времени фаз текущей операции с деньгами для MoneyMovementEvent.
+ * Профиль привязан к потоку и создаётся, только если событие включено в записи JFR;
+ * без записи addPhase и остальные методы сводятся к чтению пустого ThreadLocal.
+ * Если операцию выполняет другой поток (шард BalanceEngine), профиль передаётся ему через
+ * {@link #current()} и {@link #runWith}: фазы пишутся туда, пока поток запроса ждёт ответа.
+ */
+public final class MoneyMovementProfile {
+
+    private static final ThreadLocal<MoneyMovementProfile> CURRENT = new ThreadLocal<>();
+
+    private final long[] phaseNanos = new long[MoneyMovementPhase.values().length];
+    private int attempts;
+    private String cardIds = "";
+
+    private MoneyMovementProfile() {
+    }
+
+    /**
+     * Выполняет операцию и, если событие включено, пишет по ней MoneyMovementEvent.
+     */
+    public static <T> T record(String operation, Supplier<T> action) {
+        MoneyMovementEvent event = new MoneyMovementEvent();
+        if (!event.isEnabled() || CURRENT.get() != null) {
+            return action.get();
+        }
+        MoneyMovementProfile profile = new MoneyMovementProfile();
+        CURRENT.set(profile);
+        event.begin();
+        String outcome = "SUCCESS";
+        try {
+            return action.get();
+        } catch (RuntimeException | Error e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            CURRENT.remove();
+            event.end();
+            if (event.shouldCommit()) {
+                profile.fill(event, operation, outcome);
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Профиль операции текущего потока; null - событие не пишется.
+     */
+    public static MoneyMovementProfile current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Выполняет часть операции в чужом потоке так, что её фазы идут в профиль profile.
+     */
+    public static <T> T runWith(MoneyMovementProfile profile, Supplier<T> action) {
+        if (profile == null) {
+            return action.get();
+        }
+        MoneyMovementProfile previous = CURRENT.get();
+        CURRENT.set(profile);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static void addPhase(MoneyMovementPhase phase, long nanos) {
+        addPhase(CURRENT.get(), phase, nanos);
+    }
+
+    /**
+     * Время фазы, общей для нескольких операций (например, фиксации пакета шарда), в профиль каждой из них.
+     */
+    public static void addPhase(MoneyMovementProfile profile, MoneyMovementPhase phase, long nanos) {
+        if (profile != null) {
+            profile.phaseNanos[phase.ordinal()] += nanos;
+        }
+    }
+
+    public static void attempt() {
+        MoneyMovementProfile profile = CURRENT.get();
+        if (profile != null) {
+            profile.attempts++;
+        }
+    }
+
+    public static void cardIds(Collection<Long> cardIds) {
+        MoneyMovementProfile profile = CURRENT.get();
+        if (profile != null) {
+            profile.cardIds = cardIds.stream().sorted().map(String::valueOf).collect(Collectors.joining(","));
+        }
+    }
+
+    private void fill(MoneyMovementEvent event, String operation, String outcome) {
+        event.operation = operation;
+        event.outcome = outcome;
+        event.cardIds = cardIds;
+        event.attempts = attempts;
+        event.jvmLockTime = phaseNanos[MoneyMovementPhase.JVM_LOCK.ordinal()];
+        event.rowLockTime = phaseNanos[MoneyMovementPhase.ROW_LOCK.ordinal()];
+        event.cryptoTime = phaseNanos[MoneyMovementPhase.CRYPTO.ordinal()];
+        event.businessTime = phaseNanos[MoneyMovementPhase.BUSINESS.ordinal()];
+        event.ledgerWriteTime = phaseNanos[MoneyMovementPhase.LEDGER_WRITE.ordinal()];
+        event.commitTime = phaseNanos[MoneyMovementPhase.COMMIT.ordinal()];
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.bankcards.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Офлайн-разбор записи JFR: распределение времени операций с деньгами по фазам.
+ * Для каждой операции печатает число событий, исходы и p50/p95/p99/max всей операции и каждой фазы,
+ * а также время фоновой записи ответов идемпотентности в кэш.
+ * <p>
+ * Запуск: {@code java -cp app.jar -Dloader.main=com.example.bankcards.jfr.MoneyMovementRecordingAnalyzer
+ * org.springframework.boot.loader.launch.PropertiesLauncher recording.jfr}
+ */
+public final class MoneyMovementRecordingAnalyzer {
+
+    private static final String TOTAL = "total";
+
+    private MoneyMovementRecordingAnalyzer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: MoneyMovementRecordingAnalyzer <recording.jfr>");
+            System.exit(2);
+        }
+        analyze(Path.of(args[0]), System.out);
+    }
+
+    public static void analyze(Path recording, PrintStream out) throws IOException {
+        Map<String, Map<String, List<Long>>> nanosByOperation = new TreeMap<>();
+        Map<String, Map<String, Integer>> outcomesByOperation = new TreeMap<>();
+        Map<String, List<Long>> cacheWriteNanos = new TreeMap<>();
+
+        for (RecordedEvent event : RecordingFile.readAllEvents(recording)) {
+            String eventName = event.getEventType().getName();
+            if (MoneyMovementEvent.NAME.equals(eventName)) {
+                String operation = event.getString("operation");
+                Map<String, List<Long>> phases = nanosByOperation.computeIfAbsent(operation, name -> new TreeMap<>());
+                phases.computeIfAbsent(TOTAL, name -> new ArrayList<>()).add(event.getDuration().toNanos());
+                for (MoneyMovementPhase phase : MoneyMovementPhase.values()) {
+                    long nanos = event.getDuration(MoneyMovementEvent.fieldName(phase)).toNanos();
+                    phases.computeIfAbsent(phase.name(), name -> new ArrayList<>()).add(nanos);
+                }
+                outcomesByOperation.computeIfAbsent(operation, name -> new TreeMap<>())
+                        .merge(event.getString("outcome"), 1, Integer::sum);
+            } else if (IdempotencyCacheWriteEvent.NAME.equals(eventName)) {
+                cacheWriteNanos.computeIfAbsent(event.getString("cacheName"), name -> new ArrayList<>())
+                        .add(event.getDuration().toNanos());
+            }
+        }
+
+        if (nanosByOperation.isEmpty()) {
+            out.println("No " + MoneyMovementEvent.NAME + " events in " + recording);
+        }
+        nanosByOperation.forEach((operation, phases) -> {
+            out.printf("%s: %d operations, outcomes %s%n", operation, phases.get(TOTAL).size(), outcomesByOperation.get(operation));
+            printHeader(out);
+            printRow(out, TOTAL, phases.get(TOTAL));
+            for (MoneyMovementPhase phase : MoneyMovementPhase.values()) {
+                printRow(out, phase.name(), phases.get(phase.name()));
+            }
+            out.println();
+        });
+        if (!cacheWriteNanos.isEmpty()) {
+            out.println("Idempotency cache writes");
+            printHeader(out);
+            cacheWriteNanos.forEach((cacheName, nanos) -> printRow(out, cacheName, nanos));
+        }
+    }
+
+    private static void printHeader(PrintStream out) {
+        out.printf("  %-28s %12s %12s %12s %12s%n", "phase", "p50", "p95", "p99", "max");
+    }
+
+    private static void printRow(PrintStream out, String name, List<Long> nanos) {
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        out.printf("  %-28s %12s %12s %12s %12s%n", name,
+                format(percentile(sorted, 0.50)), format(percentile(sorted, 0.95)),
+                format(percentile(sorted, 0.99)), format(sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static String format(long nanos) {
+        return String.format("%.3f ms", nanos / 1_000_000.0);
+    }
+}
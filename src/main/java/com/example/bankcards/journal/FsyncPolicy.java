@@ -0,0 +1,23 @@
+package com.example.bankcards.journal;
+
+/**
+ * Когда записи журнала сбрасываются на диск.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * fsync после каждой записи - самая медленная и самая надёжная политика.
+     */
+    PER_OP,
+
+    /**
+     * Групповой fsync: один поток сбрасывает на диск всё записанное к этому моменту,
+     * остальные ждут его вместо собственного fsync.
+     */
+    GROUP,
+
+    /**
+     * fsync фоном раз в journal.fsync.interval-ms; при сбое питания теряется последний интервал.
+     */
+    INTERVAL
+}
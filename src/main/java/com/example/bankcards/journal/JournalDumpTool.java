@@ -0,0 +1,49 @@
+package com.example.bankcards.journal;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Офлайн-просмотр журнала операций: число записей по типам и намерения, которые не закрыты.
+ * Ничего не меняет - закрывает намерения только восстановление при старте приложения.
+ * <p>
+ * Запуск: {@code java -cp app.jar -Dloader.main=com.example.bankcards.journal.JournalDumpTool
+ * org.springframework.boot.loader.launch.PropertiesLauncher /application/journal}
+ */
+public final class JournalDumpTool {
+
+    private JournalDumpTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: JournalDumpTool <journal directory>");
+            System.exit(2);
+        }
+        dump(Path.of(args[0]), System.out);
+    }
+
+    public static void dump(Path directory, PrintStream out) throws IOException {
+        List<JournalRecord> records = WriteAheadJournal.read(directory);
+        Map<JournalRecordKind, Integer> counts = new LinkedHashMap<>();
+        Map<Long, JournalRecord> open = new LinkedHashMap<>();
+        for (JournalRecord record : records) {
+            counts.merge(record.kind(), 1, Integer::sum);
+            if (record.kind() == JournalRecordKind.INTENT) {
+                open.put(record.sequence(), record);
+            } else {
+                open.remove(record.intentSequence());
+            }
+        }
+
+        out.printf("records: %d%n", records.size());
+        counts.forEach((kind, count) -> out.printf("  %-6s %d%n", kind, count));
+        out.printf("open intents: %d%n", open.size());
+        open.values().forEach(record ->
+                out.printf("  #%d %s%n", record.sequence(), TransactionIntent.decode(record.payload())));
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.bankcards.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Запись журнала, прочитанная с диска.
+ */
+public record JournalRecord(long sequence, JournalRecordKind kind, byte[] payload) {
+
+    /**
+     * Номер намерения, которое закрывает запись COMMIT или ABORT.
+     */
+    public long intentSequence() {
+        if (kind == JournalRecordKind.INTENT) {
+            return sequence;
+        }
+        return ByteBuffer.wrap(payload).getLong();
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.bankcards.journal;
+
+/**
+ * Тип записи журнала. COMMIT и ABORT закрывают намерение, номер которого лежит в их теле.
+ */
+public enum JournalRecordKind {
+
+    INTENT((byte) 1),
+    COMMIT((byte) 2),
+    ABORT((byte) 3);
+
+    private final byte code;
+
+    JournalRecordKind(byte code) {
+        this.code = code;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    public static JournalRecordKind fromCode(byte code) {
+        for (JournalRecordKind kind : values()) {
+            if (kind.code == code) {
+                return kind;
+            }
+        }
+        return null;
+    }
+}
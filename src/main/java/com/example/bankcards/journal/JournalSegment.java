@@ -0,0 +1,230 @@
+package com.example.bankcards.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Файл сегмента журнала, отображённый в память. Имя файла - номер первой записи сегмента.
+ * Запись: [длина тела][CRC32C тела][тело: номер записи, тип, данные].
+ * Файл создаётся сразу на полный размер записью нулей, поэтому нулевая длина - конец записей.
+ * Место выделяется до отображения файла: нехватка диска проявится как IOException при создании сегмента,
+ * а не как SIGBUS при записи в отображённую память.
+ * Чтение останавливается на недописанной записи (неверный CRC, номер не по порядку, мусор после конца записей)
+ * и сообщает её смещение, см. {@link Contents}.
+ */
+final class JournalSegment {
+
+    static final int RECORD_HEADER_BYTES = 8;
+    static final int BODY_HEADER_BYTES = 9;
+    static final String SUFFIX = ".wal";
+    private static final int ZERO_CHUNK_BYTES = 64 * 1024;
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private final Path path;
+    private final long firstSequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+    private volatile int forcedPosition;
+    private long lastSequence;
+
+    private JournalSegment(Path path, long firstSequence, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.lastSequence = firstSequence - 1;
+    }
+
+    /**
+     * Создаёт сегмент: файл заполняется нулями и сбрасывается на диск вместе с записью в каталоге,
+     * только потом отображается в память. Если места не хватило, недосозданный файл удаляется.
+     */
+    static JournalSegment create(Path directory, long firstSequence, int sizeBytes) throws IOException {
+        Path path = directory.resolve(fileName(firstSequence));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            writeZeros(channel, 0, sizeBytes);
+            channel.force(true);
+            syncDirectory(directory);
+            return new JournalSegment(path, firstSequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeBytes));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    /**
+     * Читает все целые записи сегмента подряд, начиная с номера из имени файла.
+     */
+    static Contents read(Path path, List<JournalRecord> records) throws IOException {
+        long firstSequence = firstSequence(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long expected = firstSequence;
+            int position = 0;
+            while (position + RECORD_HEADER_BYTES + BODY_HEADER_BYTES <= buffer.capacity()) {
+                int bodyLength = buffer.getInt(position);
+                if (bodyLength == 0) {
+                    break;
+                }
+                if (bodyLength < BODY_HEADER_BYTES || position + RECORD_HEADER_BYTES + bodyLength > buffer.capacity()) {
+                    return new Contents(expected - 1, position);
+                }
+                byte[] body = new byte[bodyLength];
+                buffer.get(position + RECORD_HEADER_BYTES, body);
+                CRC32C crc = new CRC32C();
+                crc.update(body);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    return new Contents(expected - 1, position);
+                }
+                ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+                long sequence = bodyBuffer.getLong();
+                JournalRecordKind kind = JournalRecordKind.fromCode(bodyBuffer.get());
+                if (sequence != expected || kind == null) {
+                    return new Contents(expected - 1, position);
+                }
+                byte[] payload = new byte[bodyLength - BODY_HEADER_BYTES];
+                bodyBuffer.get(payload);
+                records.add(new JournalRecord(sequence, kind, payload));
+                expected++;
+                position += RECORD_HEADER_BYTES + bodyLength;
+            }
+            // после последней целой записи файл должен быть нулевым - иначе там начало недописанной записи
+            for (int i = position; i < buffer.capacity(); i++) {
+                if (buffer.get(i) != 0) {
+                    return new Contents(expected - 1, position);
+                }
+            }
+            return new Contents(expected - 1, -1);
+        }
+    }
+
+    /**
+     * Обнуляет сегмент с offset до конца и сбрасывает его на диск: недописанная запись
+     * перестаёт отличаться от свободного места.
+     */
+    static void clearTail(Path path, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            writeZeros(channel, offset, channel.size());
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Сбрасывает на диск сам каталог: без этого созданный или удалённый файл сегмента
+     * может не пережить сбой питания, даже если его содержимое сброшено.
+     * На Windows каталог не открыть как файл, там запись каталога сбрасывает файловая система.
+     */
+    static void syncDirectory(Path directory) throws IOException {
+        if (WINDOWS) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    static long firstSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    static boolean isSegment(Path path) {
+        return path.getFileName().toString().matches("\\d{20}\\" + SUFFIX);
+    }
+
+    boolean fits(int payloadLength) {
+        return position + RECORD_HEADER_BYTES + BODY_HEADER_BYTES + payloadLength <= buffer.capacity();
+    }
+
+    void append(long sequence, JournalRecordKind kind, byte[] payload) {
+        byte[] body = ByteBuffer.allocate(BODY_HEADER_BYTES + payload.length)
+                .putLong(sequence)
+                .put(kind.code())
+                .put(payload)
+                .array();
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        buffer.putInt(position, body.length);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.put(position + RECORD_HEADER_BYTES, body);
+        position += RECORD_HEADER_BYTES + body.length;
+        lastSequence = sequence;
+    }
+
+    int position() {
+        return position;
+    }
+
+    int forcedPosition() {
+        return forcedPosition;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long firstSequence() {
+        return firstSequence;
+    }
+
+    /**
+     * Сбрасывает на диск байты [from, to) - записи, которые ещё не сброшены.
+     */
+    void force(int from, int to) {
+        if (to > from) {
+            buffer.force(from, to - from);
+        }
+        if (to > forcedPosition) {
+            forcedPosition = to;
+        }
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeZeros(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(ZERO_CHUNK_BYTES, Math.max(to - from, 0)));
+        long position = from;
+        while (position < to) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), to - position));
+            position += channel.write(zeros, position);
+        }
+    }
+
+    private static String fileName(long firstSequence) {
+        return String.format("%020d%s", firstSequence, SUFFIX);
+    }
+
+    /**
+     * Что нашлось в сегменте при чтении.
+     * @param lastSequence номер последней целой записи; номер первой минус один, если целых записей нет
+     * @param tornAt смещение недописанной или испорченной записи; -1, если за целыми записями только нули
+     */
+    record Contents(long lastSequence, int tornAt) {
+
+        boolean torn() {
+            return tornAt >= 0;
+        }
+    }
+}
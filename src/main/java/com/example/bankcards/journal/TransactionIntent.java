@@ -0,0 +1,70 @@
+package com.example.bankcards.journal;
+
+import com.example.bankcards.entity.enums.Currency;
+import com.example.bankcards.entity.enums.TransactionType;
+import com.example.bankcards.entity.operations.TransactionEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+
+/**
+ * Принятая операция с деньгами в журнале: id сохранённой TransactionEntity и её суть.
+ * Id выдаётся последовательностью до фиксации, поэтому по нему при восстановлении видно,
+ * дошла ли операция до базы.
+ */
+public record TransactionIntent(long transactionId,
+                                TransactionType transactionType,
+                                Long sourceCardId,
+                                Long targetCardId,
+                                BigDecimal amount,
+                                Currency currency) {
+
+    private static final long NO_CARD = 0L;
+
+    public static TransactionIntent of(TransactionEntity transaction) {
+        return new TransactionIntent(transaction.getId(),
+                transaction.getTransactionType(),
+                transaction.getSourceCardEntity() != null ? transaction.getSourceCardEntity().getId() : null,
+                transaction.getTargetCardEntity() != null ? transaction.getTargetCardEntity().getId() : null,
+                transaction.getAmount(),
+                transaction.getCurrency());
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(transactionId);
+            out.writeUTF(transactionType.name());
+            out.writeLong(sourceCardId != null ? sourceCardId : NO_CARD);
+            out.writeLong(targetCardId != null ? targetCardId : NO_CARD);
+            out.writeUTF(amount.toPlainString());
+            out.writeUTF(currency != null ? currency.name() : "");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static TransactionIntent decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            long transactionId = in.readLong();
+            TransactionType transactionType = TransactionType.valueOf(in.readUTF());
+            long sourceCardId = in.readLong();
+            long targetCardId = in.readLong();
+            BigDecimal amount = new BigDecimal(in.readUTF());
+            String currency = in.readUTF();
+            return new TransactionIntent(transactionId, transactionType,
+                    sourceCardId != NO_CARD ? sourceCardId : null,
+                    targetCardId != NO_CARD ? targetCardId : null,
+                    amount,
+                    currency.isEmpty() ? null : Currency.valueOf(currency));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.bankcards.journal;
+
+import com.example.bankcards.entity.operations.TransactionEntity;
+import com.example.bankcards.repository.TransactionEntityRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Журнал принятых операций с деньгами перед базой.
+ * LedgerService пишет намерение для каждой TransactionEntity в транзакции операции;
+ * перед фиксацией транзакция ждёт, пока её намерения окажутся на диске (по политике journal.fsync.policy),
+ * после фиксации или отката намерения закрываются. Пакет движка балансов при GROUP обходится одним fsync.
+ * При старте незакрытые намерения сверяются с базой: операция, которая есть в transaction_entity,
+ * закрывается как зафиксированная, остальные - как откаченные. Так же при каждом сжатии сверяются намерения
+ * транзакций, исход фиксации которых остался неизвестен, - иначе они держали бы сегменты журнала вечно.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "journal.enabled", havingValue = "true")
+public class TransactionJournal {
+
+    private final WriteAheadJournal journal;
+    private final TransactionEntityRepository transactionEntityRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter recoveredCommittedCounter;
+    private final Counter recoveredAbortedCounter;
+    /**
+     * Намерения транзакций с неизвестным исходом фиксации: номер записи - id операции.
+     */
+    private final ConcurrentMap<Long, Long> unresolvedIntents = new ConcurrentHashMap<>();
+
+    public TransactionJournal(TransactionEntityRepository transactionEntityRepository,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${journal.directory}") String directory,
+                              @Value("${journal.segment-size-mb}") int segmentSizeMb,
+                              @Value("${journal.fsync.policy}") FsyncPolicy fsyncPolicy,
+                              @Value("${journal.fsync.interval-ms}") long fsyncIntervalMillis) throws IOException {
+        this.transactionEntityRepository = transactionEntityRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        Timer fsyncTimer = Timer.builder("journal.fsync")
+                .description("Time spent forcing transaction journal records to disk")
+                .tag("policy", fsyncPolicy.name())
+                .register(meterRegistry);
+        this.journal = WriteAheadJournal.open(Path.of(directory), segmentSizeMb * 1024 * 1024, fsyncPolicy,
+                fsyncIntervalMillis, nanos -> fsyncTimer.record(nanos, TimeUnit.NANOSECONDS));
+        this.recoveredCommittedCounter = Counter.builder("journal.recovery")
+                .description("Journal intents left open at startup or by an unknown commit outcome, by outcome found in the database")
+                .tag("outcome", "committed")
+                .register(meterRegistry);
+        this.recoveredAbortedCounter = Counter.builder("journal.recovery")
+                .description("Journal intents left open at startup or by an unknown commit outcome, by outcome found in the database")
+                .tag("outcome", "aborted")
+                .register(meterRegistry);
+        Gauge.builder("journal.intents.open", journal, WriteAheadJournal::openIntentCount)
+                .description("Journal intents not yet closed by a commit or rollback")
+                .register(meterRegistry);
+        Gauge.builder("journal.segments", journal, WriteAheadJournal::segmentCount)
+                .description("Transaction journal segment files on disk")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Сверяет с базой намерения, не закрытые до остановки.
+     */
+    @PostConstruct
+    public void recover() {
+        List<JournalRecord> intents = journal.recoveredIntents();
+        if (intents.isEmpty()) {
+            return;
+        }
+        for (JournalRecord record : intents) {
+            TransactionIntent intent = TransactionIntent.decode(record.payload());
+            if (!resolve(record.sequence(), intent.transactionId())) {
+                log.warn("Journal intent {} was not committed before shutdown: {}", record.sequence(), intent);
+            }
+        }
+        log.info("Transaction journal recovered {} open intents", intents.size());
+        journal.compact();
+    }
+
+    /**
+     * Пишет намерение операции в журнал. Вызывается в транзакции операции после сохранения TransactionEntity.
+     */
+    public void accepted(TransactionEntity transaction) {
+        pendingIntents().add(new PendingIntent(journal.appendIntent(TransactionIntent.of(transaction).encode()),
+                transaction.getId()));
+    }
+
+    @Scheduled(fixedDelayString = "${journal.compaction.interval-ms}")
+    public void compact() {
+        reconcileUnresolved();
+        int deleted = journal.compact();
+        if (deleted > 0) {
+            log.debug("Transaction journal compacted {} segments", deleted);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        journal.close();
+    }
+
+    /**
+     * Закрывает намерения транзакций с неизвестным исходом так же, как {@link #recover()}: по наличию операции в базе.
+     * Если база недоступна, намерение ждёт следующего сжатия.
+     */
+    private void reconcileUnresolved() {
+        unresolvedIntents.forEach((sequence, transactionId) -> {
+            try {
+                resolve(sequence, transactionId);
+                unresolvedIntents.remove(sequence);
+            } catch (RuntimeException e) {
+                log.warn("Journal intent {} still has an unknown outcome", sequence, e);
+            }
+        });
+    }
+
+    /**
+     * Закрывает намерение по базе: COMMIT, если операция в ней есть, иначе ABORT.
+     * Чтение в транзакции не только для чтения - по основной базе, а не по реплике.
+     * @return true, если операция зафиксирована
+     */
+    private boolean resolve(long sequence, long transactionId) {
+        Boolean committed = transactionTemplate.execute(status -> transactionEntityRepository.existsById(transactionId));
+        if (Boolean.TRUE.equals(committed)) {
+            journal.commit(sequence);
+            recoveredCommittedCounter.increment();
+            return true;
+        }
+        journal.abort(sequence);
+        recoveredAbortedCounter.increment();
+        return false;
+    }
+
+    /**
+     * Намерения текущей транзакции. Перед фиксацией ждёт их записи на диск, после завершения закрывает.
+     * Если исход фиксации неизвестен, намерения сверяются с базой при следующем сжатии.
+     */
+    @SuppressWarnings("unchecked")
+    private List<PendingIntent> pendingIntents() {
+        List<PendingIntent> pending = (List<PendingIntent>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Journal intents are written inside a card operation transaction");
+        }
+        List<PendingIntent> created = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                journal.sync(created.get(created.size() - 1).sequence());
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TransactionJournal.this);
+                if (status == STATUS_COMMITTED) {
+                    created.forEach(intent -> journal.commit(intent.sequence()));
+                } else if (status == STATUS_ROLLED_BACK) {
+                    created.forEach(intent -> journal.abort(intent.sequence()));
+                } else {
+                    log.warn("Commit outcome unknown for {} journal intents, reconciling on next compaction", created.size());
+                    created.forEach(intent -> unresolvedIntents.put(intent.sequence(), intent.transactionId()));
+                }
+            }
+        });
+        return created;
+    }
+
+    private record PendingIntent(long sequence, long transactionId) {
+    }
+}
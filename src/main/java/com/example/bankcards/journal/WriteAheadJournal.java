@@ -0,0 +1,313 @@
+package com.example.bankcards.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Локальный журнал упреждающей записи на сегментах, отображённых в память.
+ * Намерение (INTENT) пишется до фиксации в базе, после фиксации или отката его закрывает COMMIT или ABORT.
+ * Записи получают сквозные номера; сегмент закрывается, когда следующая запись в него не помещается.
+ * Закрытые сегменты, в которых не осталось открытых намерений, удаляются {@link #compact()}.
+ * <p>
+ * При открытии журнал читает все сегменты, запоминает незакрытые намерения ({@link #recoveredIntents()})
+ * и пишет дальше в новый сегмент. Недописанный хвост допустим только у последнего сегмента - это запись,
+ * не дождавшаяся fsync; он обнуляется. Испорченный или пустой более старый сегмент, как и пропуск номеров
+ * между сегментами, - потеря подтверждённых записей: открытие падает с IOException и ничего не удаляет.
+ * Создание и удаление сегментов сбрасывается на диск вместе с каталогом.
+ * Журнал не зависит от Spring и используется напрямую бенчмарком и утилитой просмотра.
+ */
+public final class WriteAheadJournal implements Closeable {
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final LongConsumer fsyncNanos;
+    private final List<SealedSegment> sealed = new ArrayList<>();
+    private final ConcurrentSkipListSet<Long> openIntents = new ConcurrentSkipListSet<>();
+    private final List<JournalRecord> recoveredIntents;
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private final ScheduledExecutorService intervalSync;
+    private JournalSegment active;
+    private long nextSequence;
+    private volatile long durableSequence;
+    private boolean syncing;
+
+    private WriteAheadJournal(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy, long intervalMillis,
+                              LongConsumer fsyncNanos) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncNanos = fsyncNanos;
+
+        Files.createDirectories(directory);
+        Map<Long, JournalRecord> open = new LinkedHashMap<>();
+        long lastSequence = 0;
+        List<Path> paths = segments(directory);
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            boolean newest = i == paths.size() - 1;
+            if (lastSequence != 0 && JournalSegment.firstSequence(path) != lastSequence + 1) {
+                throw new IOException("Journal segment " + path + " does not follow record " + lastSequence);
+            }
+            List<JournalRecord> records = new ArrayList<>();
+            JournalSegment.Contents contents = JournalSegment.read(path, records);
+            if (!newest && (contents.torn() || records.isEmpty())) {
+                throw new IOException("Journal segment " + path + " is corrupted at offset " + Math.max(contents.tornAt(), 0)
+                        + "; only the newest segment may end with an unfinished record");
+            }
+            if (records.isEmpty()) {
+                // последний сегмент создан, но ни одна запись в него не дошла до диска; его имя займёт следующий сегмент
+                Files.delete(path);
+                JournalSegment.syncDirectory(directory);
+                continue;
+            }
+            if (contents.torn()) {
+                // запись не дождалась fsync и не была подтверждена; без обнуления сегмент
+                // перестанет быть последним и следующий старт счёл бы его испорченным
+                JournalSegment.clearTail(path, contents.tornAt());
+            }
+            long segmentLast = contents.lastSequence();
+            for (JournalRecord record : records) {
+                if (record.kind() == JournalRecordKind.INTENT) {
+                    open.put(record.sequence(), record);
+                } else {
+                    open.remove(record.intentSequence());
+                }
+            }
+            lastSequence = Math.max(lastSequence, segmentLast);
+            sealed.add(new SealedSegment(path, segmentLast));
+        }
+        this.recoveredIntents = List.copyOf(open.values());
+        this.openIntents.addAll(open.keySet());
+        this.nextSequence = lastSequence + 1;
+        this.durableSequence = lastSequence;
+        this.active = JournalSegment.create(directory, nextSequence, segmentBytes);
+
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            intervalSync = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            intervalSync.scheduleWithFixedDelay(this::forceWritten, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            intervalSync = null;
+        }
+    }
+
+    /**
+     * Открывает журнал в каталоге, создавая каталог при необходимости.
+     * @param fsyncNanos получает время каждого fsync в наносекундах
+     */
+    public static WriteAheadJournal open(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy,
+                                         long intervalMillis, LongConsumer fsyncNanos) throws IOException {
+        return new WriteAheadJournal(directory, segmentBytes, fsyncPolicy, intervalMillis, fsyncNanos);
+    }
+
+    /**
+     * Все целые записи журнала по порядку, без открытия на запись.
+     */
+    public static List<JournalRecord> read(Path directory) throws IOException {
+        // просмотр ничего не чинит и не падает: показывает все целые записи, даже перед испорченной
+        List<JournalRecord> records = new ArrayList<>();
+        for (Path path : segments(directory)) {
+            JournalSegment.read(path, records);
+        }
+        return records;
+    }
+
+    /**
+     * Пишет намерение. При PER_OP запись уже на диске, при GROUP - после {@link #sync(long)}.
+     * @return номер записи
+     */
+    public synchronized long appendIntent(byte[] payload) {
+        // намерение регистрируется под тем же монитором, что и запись: compact() не увидит его записанным, но не открытым
+        long sequence = append(JournalRecordKind.INTENT, payload);
+        openIntents.add(sequence);
+        return sequence;
+    }
+
+    public void commit(long intentSequence) {
+        closeIntent(JournalRecordKind.COMMIT, intentSequence);
+    }
+
+    public void abort(long intentSequence) {
+        closeIntent(JournalRecordKind.ABORT, intentSequence);
+    }
+
+    /**
+     * Ждёт, пока запись с номером sequence окажется на диске. Для GROUP первый пришедший поток
+     * делает fsync за всех, кто записал до него; остальные ждут его результата.
+     * Для PER_OP и INTERVAL ничего не делает.
+     */
+    public void sync(long sequence) {
+        if (fsyncPolicy != FsyncPolicy.GROUP || durableSequence >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                syncLock.unlock();
+                try {
+                    forceWritten();
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет закрытые сегменты, все намерения которых закрыты.
+     * @return число удалённых сегментов
+     */
+    public synchronized int compact() {
+        long firstOpen = openIntents.isEmpty() ? nextSequence : openIntents.first();
+        int deleted = 0;
+        try {
+            while (!sealed.isEmpty() && sealed.get(0).lastSequence() < firstOpen) {
+                Files.deleteIfExists(sealed.get(0).path());
+                sealed.remove(0);
+                deleted++;
+            }
+            if (deleted > 0) {
+                JournalSegment.syncDirectory(directory);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return deleted;
+    }
+
+    /**
+     * Намерения, не закрытые к моменту открытия журнала: их судьбу решает восстановление при старте.
+     */
+    public List<JournalRecord> recoveredIntents() {
+        return recoveredIntents;
+    }
+
+    public int openIntentCount() {
+        return openIntents.size();
+    }
+
+    public synchronized int segmentCount() {
+        return sealed.size() + 1;
+    }
+
+    @Override
+    public void close() {
+        if (intervalSync != null) {
+            intervalSync.shutdownNow();
+        }
+        forceWritten();
+        synchronized (this) {
+            active.close();
+        }
+    }
+
+    private void closeIntent(JournalRecordKind kind, long intentSequence) {
+        append(kind, ByteBuffer.allocate(Long.BYTES).putLong(intentSequence).array());
+        openIntents.remove(intentSequence);
+    }
+
+    private synchronized long append(JournalRecordKind kind, byte[] payload) {
+        if (JournalSegment.RECORD_HEADER_BYTES + JournalSegment.BODY_HEADER_BYTES + payload.length > segmentBytes) {
+            throw new IllegalArgumentException("Journal record of " + payload.length + " bytes does not fit a segment");
+        }
+        long sequence = nextSequence;
+        if (!active.fits(payload.length)) {
+            roll(sequence);
+        }
+        active.append(sequence, kind, payload);
+        nextSequence = sequence + 1;
+        if (fsyncPolicy == FsyncPolicy.PER_OP) {
+            force(active, active.forcedPosition(), active.position());
+            durableSequence = sequence;
+        }
+        return sequence;
+    }
+
+    /**
+     * Сбрасывает на диск всё, что записано в текущий сегмент; прежние сегменты сброшены при закрытии.
+     */
+    private void forceWritten() {
+        JournalSegment segment;
+        int from;
+        int to;
+        long lastSequence;
+        synchronized (this) {
+            segment = active;
+            from = segment.forcedPosition();
+            to = segment.position();
+            lastSequence = nextSequence - 1;
+        }
+        force(segment, from, to);
+        if (lastSequence > durableSequence) {
+            durableSequence = lastSequence;
+        }
+    }
+
+    /**
+     * Новый сегмент создаётся раньше, чем закрывается текущий: если создать не удалось (нет места),
+     * запись падает, а журнал остаётся в прежнем состоянии.
+     */
+    private void roll(long nextFirstSequence) {
+        JournalSegment next;
+        try {
+            next = JournalSegment.create(directory, nextFirstSequence, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        force(active, active.forcedPosition(), active.position());
+        active.close();
+        sealed.add(new SealedSegment(active.path(), active.lastSequence()));
+        active = next;
+    }
+
+    private void force(JournalSegment segment, int from, int to) {
+        long start = System.nanoTime();
+        segment.force(from, to);
+        fsyncNanos.accept(System.nanoTime() - start);
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isSegment)
+                    .sorted(Comparator.comparingLong(JournalSegment::firstSequence))
+                    .toList();
+        }
+    }
+
+    private record SealedSegment(Path path, long lastSequence) {
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bankcards.migration;
+
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
+import com.example.bankcards.util.CardNumberEncryptorUtil;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import lombok.Setter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Liquibase-заполнение card_number_hash для уже существующих карт.
+ * Строки обрабатываются порциями по id, чтобы не держать весь набор в памяти.
+ * Ключи передаются параметрами changelog из spring.liquibase.parameters.
+ */
+@Setter
+public class CardNumberHashBackfillChange implements CustomTaskChange {
+
+    private static final String SELECT_CHUNK = "SELECT id, card_number FROM card_entity " +
+            "WHERE card_number_hash IS NULL AND id > ? ORDER BY id LIMIT ?";
+    private static final String UPDATE_HASH = "UPDATE card_entity SET card_number_hash = ? WHERE id = ?";
+
+    private String encryptionKey;
+    private String encryptionSalt;
+    private String blindIndexKey;
+    private String chunkSize = "500";
+
+    private int processed;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        CardNumberEncryptorUtil encryptorUtil = new CardNumberEncryptorUtil(encryptionKey, encryptionSalt);
+        CardNumberBlindIndexUtil blindIndexUtil = new CardNumberBlindIndexUtil(blindIndexKey);
+        Connection connection = ((JdbcConnection) database.getConnection()).getWrappedConnection();
+        int limit = Integer.parseInt(chunkSize);
+
+        try (PreparedStatement select = connection.prepareStatement(SELECT_CHUNK);
+             PreparedStatement update = connection.prepareStatement(UPDATE_HASH)) {
+            long lastId = 0;
+            int rowsInChunk;
+            do {
+                rowsInChunk = 0;
+                select.setLong(1, lastId);
+                select.setInt(2, limit);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getLong("id");
+                        String cardNumber = encryptorUtil.decryptCardNumber(rs.getString("card_number"));
+                        update.setString(1, blindIndexUtil.hash(cardNumber));
+                        update.setLong(2, lastId);
+                        update.addBatch();
+                        rowsInChunk++;
+                    }
+                }
+                if (rowsInChunk > 0) {
+                    update.executeBatch();
+                    processed += rowsInChunk;
+                }
+            } while (rowsInChunk == limit);
+        } catch (SQLException e) {
+            throw new CustomChangeException(e);
+        }
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return String.format("card_number_hash filled for %d cards", processed);
+    }
+
+    @Override
+    public void setUp() throws SetupException {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = new ValidationErrors();
+        errors.checkRequiredField("encryptionKey", encryptionKey);
+        errors.checkRequiredField("encryptionSalt", encryptionSalt);
+        errors.checkRequiredField("blindIndexKey", blindIndexKey);
+        return errors;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bankcards.migration;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.repository.CardEntityRepository;
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Дозаполняет card_number_hash для карт, записанных без него
+ * (например, экземплярами приложения старой версии во время выкатки).
+ * Каждая порция обрабатывается в отдельной транзакции.
+ */
+@Slf4j
+@Component
+public class CardNumberHashBackfillJob {
+
+    private final CardEntityRepository cardEntityRepository;
+    private final CardNumberBlindIndexUtil cardNumberBlindIndexUtil;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public CardNumberHashBackfillJob(CardEntityRepository cardEntityRepository,
+                                     CardNumberBlindIndexUtil cardNumberBlindIndexUtil,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${card.blind-index.backfill.chunk-size}") int chunkSize) {
+        this.cardEntityRepository = cardEntityRepository;
+        this.cardNumberBlindIndexUtil = cardNumberBlindIndexUtil;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long lastId = 0;
+        int processed = 0;
+        Integer rowsInChunk;
+        do {
+            final long afterId = lastId;
+            List<CardEntity> chunk = cardEntityRepository
+                    .findByCardNumberHashIsNullAndIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            rowsInChunk = transactionTemplate.execute(status -> {
+                chunk.forEach(card -> cardEntityRepository
+                        .updateCardNumberHash(card.getId(), cardNumberBlindIndexUtil.hash(card.getCardNumber())));
+                return chunk.size();
+            });
+            lastId = chunk.get(chunk.size() - 1).getId();
+            processed += rowsInChunk;
+        } while (rowsInChunk == chunkSize);
+
+        if (processed > 0) {
+            log.info("card_number_hash backfilled for {} cards", processed);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.bankcards.migration;
+
+import com.example.bankcards.util.CardNumberEncryptorUtil;
+import com.example.bankcards.util.CardNumberMaskUtil;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import lombok.Setter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Liquibase-заполнение card_last4 и card_number_masked для уже существующих карт.
+ * Чтение и запись идут порциями по id через соединение Liquibase, а расшифровка порции -
+ * самая дорогая часть - делится между parallelism потоками, пока следующая порция читается из БД.
+ */
+@Setter
+public class CardNumberMaskBackfillChange implements CustomTaskChange {
+
+    private static final String SELECT_CHUNK = "SELECT id, card_number FROM card_entity " +
+            "WHERE card_last4 IS NULL AND id > ? ORDER BY id LIMIT ?";
+    private static final String UPDATE_MASK = "UPDATE card_entity SET card_last4 = ?, card_number_masked = ? WHERE id = ?";
+
+    private String encryptionKey;
+    private String encryptionSalt;
+    private String chunkSize = "2000";
+    private String parallelism;
+
+    private int processed;
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        CardNumberEncryptorUtil encryptorUtil = new CardNumberEncryptorUtil(encryptionKey, encryptionSalt);
+        Connection connection = ((JdbcConnection) database.getConnection()).getWrappedConnection();
+        int limit = Integer.parseInt(chunkSize);
+        int threads = parallelism == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (PreparedStatement select = connection.prepareStatement(SELECT_CHUNK);
+             PreparedStatement update = connection.prepareStatement(UPDATE_MASK)) {
+            Chunk chunk = readChunk(select, 0, limit);
+            while (!chunk.ids().isEmpty()) {
+                List<Future<List<String>>> decrypted = decrypt(executor, encryptorUtil, chunk.encrypted(), threads);
+                Chunk next = chunk.ids().size() == limit ? readChunk(select, chunk.lastId(), limit) : Chunk.EMPTY;
+
+                int index = 0;
+                for (Future<List<String>> part : decrypted) {
+                    for (String cardNumber : part.get()) {
+                        update.setString(1, CardNumberMaskUtil.lastFour(cardNumber));
+                        update.setString(2, CardNumberMaskUtil.mask(cardNumber));
+                        update.setLong(3, chunk.ids().get(index++));
+                        update.addBatch();
+                    }
+                }
+                update.executeBatch();
+                processed += chunk.ids().size();
+                chunk = next;
+            }
+        } catch (SQLException | ExecutionException e) {
+            throw new CustomChangeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomChangeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Chunk readChunk(PreparedStatement select, long afterId, int limit) throws SQLException {
+        List<Long> ids = new ArrayList<>(limit);
+        List<String> encrypted = new ArrayList<>(limit);
+        select.setLong(1, afterId);
+        select.setInt(2, limit);
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong("id"));
+                encrypted.add(rs.getString("card_number"));
+            }
+        }
+        return new Chunk(ids, encrypted);
+    }
+
+    private static List<Future<List<String>>> decrypt(ExecutorService executor, CardNumberEncryptorUtil encryptorUtil,
+                                                      List<String> encrypted, int threads) {
+        int partSize = Math.max(1, (encrypted.size() + threads - 1) / threads);
+        List<Future<List<String>>> parts = new ArrayList<>();
+        for (int from = 0; from < encrypted.size(); from += partSize) {
+            List<String> part = encrypted.subList(from, Math.min(encrypted.size(), from + partSize));
+            parts.add(executor.submit(() -> encryptorUtil.decryptCardNumbers(part)));
+        }
+        return parts;
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return String.format("card_last4 and card_number_masked filled for %d cards", processed);
+    }
+
+    @Override
+    public void setUp() throws SetupException {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = new ValidationErrors();
+        errors.checkRequiredField("encryptionKey", encryptionKey);
+        errors.checkRequiredField("encryptionSalt", encryptionSalt);
+        return errors;
+    }
+
+    private record Chunk(List<Long> ids, List<String> encrypted) {
+
+        static final Chunk EMPTY = new Chunk(List.of(), List.of());
+
+        long lastId() {
+            return ids.get(ids.size() - 1);
+        }
+    }
+}
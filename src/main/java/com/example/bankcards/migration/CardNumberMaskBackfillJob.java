@@ -0,0 +1,74 @@
+package com.example.bankcards.migration;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.repository.CardEntityRepository;
+import com.example.bankcards.util.CardNumberMaskUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Дозаполняет card_last4 и card_number_masked для карт, записанных без них
+ * (например, экземплярами приложения старой версии во время выкатки).
+ * Диапазон id делится на порции, порции обрабатываются параллельно, каждая в своей транзакции.
+ */
+@Slf4j
+@Component
+public class CardNumberMaskBackfillJob {
+
+    private final CardEntityRepository cardEntityRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int parallelism;
+
+    public CardNumberMaskBackfillJob(CardEntityRepository cardEntityRepository,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${card.mask.backfill.chunk-size}") int chunkSize,
+                                     @Value("${card.mask.backfill.parallelism}") int parallelism) {
+        this.cardEntityRepository = cardEntityRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Long minId = cardEntityRepository.findMinIdWithoutCardLast4().orElse(null);
+        if (minId == null) {
+            return;
+        }
+        long maxId = cardEntityRepository.findMaxIdWithoutCardLast4().orElse(minId);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<CompletableFuture<Integer>> chunks = new ArrayList<>();
+            for (long fromId = minId; fromId <= maxId; fromId += chunkSize) {
+                long chunkFrom = fromId;
+                long chunkTo = Math.min(maxId, fromId + chunkSize - 1);
+                chunks.add(CompletableFuture.supplyAsync(() -> backfillChunk(chunkFrom, chunkTo), executor));
+            }
+            int processed = chunks.stream().mapToInt(CompletableFuture::join).sum();
+            log.info("card_last4 and card_number_masked backfilled for {} cards", processed);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private int backfillChunk(long fromId, long toId) {
+        return transactionTemplate.execute(status -> {
+            List<CardEntity> chunk = cardEntityRepository.findByCardLast4IsNullAndIdBetween(fromId, toId);
+            chunk.forEach(card -> cardEntityRepository.updateCardNumberMask(card.getId(),
+                    CardNumberMaskUtil.lastFour(card.getCardNumber()), CardNumberMaskUtil.mask(card.getCardNumber())));
+            return chunk.size();
+        });
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.ledger.CardBalanceCheckpointEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface CardBalanceCheckpointEntityRepository extends JpaRepository<CardBalanceCheckpointEntity, Long> {
+
+    Optional<CardBalanceCheckpointEntity> findFirstByCardIdAndCardSeqLessThanEqualOrderByCardSeqDesc(Long cardId, Long cardSeq);
+}
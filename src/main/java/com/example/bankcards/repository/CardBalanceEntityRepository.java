@@ -0,0 +1,79 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.repository.projection.CardBalanceCheckpointCandidateView;
+import com.example.bankcards.repository.projection.CardBalanceStateView;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CardBalanceEntityRepository extends JpaRepository<CardBalanceEntity, Long> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query(value = "SELECT b FROM CardBalanceEntity b WHERE b.cardId = :cardId")
+    Optional<CardBalanceEntity> findByIdWithLock(@Param("cardId") Long cardId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "0"))
+    @Query(value = "SELECT b FROM CardBalanceEntity b WHERE b.cardId = :cardId")
+    Optional<CardBalanceEntity> findByIdWithLockNoWait(@Param("cardId") Long cardId);
+
+    /**
+     * Баланс карты под блокировкой строки с увеличением версии - перед сменой статуса, лимитов или удалением карты.
+     */
+    @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
+    @Query(value = "SELECT b FROM CardBalanceEntity b WHERE b.cardId = :cardId")
+    Optional<CardBalanceEntity> findByIdForCardChange(@Param("cardId") Long cardId);
+
+    /**
+     * Балансы карт, строки которых сейчас никто не держит, под блокировкой (FOR UPDATE SKIP LOCKED);
+     * занятые строки в результат не попадают.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query(value = "SELECT b FROM CardBalanceEntity b WHERE b.cardId IN :cardIds ORDER BY b.cardId")
+    List<CardBalanceEntity> findAllByIdSkipLocked(@Param("cardIds") Collection<Long> cardIds);
+
+    /**
+     * Балансы после afterId в порядке id, у которых с последней контрольной точки накопилось
+     * не меньше minEntries проводок; начальная точка без записи считается точкой 0.
+     */
+    @Query(value = "SELECT b.card_id AS \"cardId\", b.entry_seq AS \"entrySeq\", b.balance AS \"balance\" " +
+            "FROM card_balance b WHERE b.card_id > :afterId " +
+            "AND b.entry_seq - COALESCE((SELECT MAX(c.card_seq) FROM card_balance_checkpoint c WHERE c.card_id = b.card_id), 0) >= :minEntries " +
+            "ORDER BY b.card_id LIMIT :limit",
+            nativeQuery = true)
+    List<CardBalanceCheckpointCandidateView> findCheckpointCandidates(@Param("afterId") Long afterId,
+                                                                     @Param("minEntries") long minEntries,
+                                                                     @Param("limit") int limit);
+
+    @Query(value = "SELECT b.cardId AS cardId, b.balance AS balance, b.entrySeq AS entrySeq, b.version AS version " +
+            "FROM CardBalanceEntity b WHERE b.cardId IN :cardIds")
+    List<CardBalanceStateView> findStates(@Param("cardIds") Collection<Long> cardIds);
+
+    /**
+     * Записывает баланс, посчитанный в памяти, если строку с версии version никто не менял.
+     * @return 0, если версия в базе другая
+     */
+    @Modifying
+    @Query(value = "UPDATE CardBalanceEntity b SET b.balance = :balance, b.entrySeq = :entrySeq, " +
+            "b.version = :version + 1, b.updatedAt = :now WHERE b.cardId = :cardId AND b.version = :version")
+    int updateIfVersion(@Param("cardId") Long cardId,
+                        @Param("balance") BigDecimal balance,
+                        @Param("entrySeq") long entrySeq,
+                        @Param("version") Integer version,
+                        @Param("now") LocalDateTime now);
+}
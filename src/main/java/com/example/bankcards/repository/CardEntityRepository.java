@@ -2,25 +2,101 @@ package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.CardEntity;
 import com.example.bankcards.entity.enums.CardStatus;
-import jakarta.persistence.LockModeType;
+import com.example.bankcards.repository.projection.CardIdView;
+import com.example.bankcards.repository.projection.CardListView;
+import com.example.bankcards.repository.projection.CardOwnerView;
+import com.example.bankcards.repository.projection.CardVersionView;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface CardEntityRepository extends JpaRepository<CardEntity, Long> {
 
-    Page<CardEntity> findByCustomerEntityId(Long customerId, Pageable pageable);
+    /**
+     * Карты клиента для списка: проекция с маской номера, без расшифровки. Статус null - все статусы.
+     */
+    @Query(value = "SELECT c.id AS id, c.cardNumberMasked AS cardNumberMasked, o.name AS cardHolder, " +
+            "c.expiryDate AS expiryDate, c.status AS status, b.balance AS balance, c.currency AS currency " +
+            "FROM CardEntity c JOIN c.customerEntity o JOIN CardBalanceEntity b ON b.cardId = c.id " +
+            "WHERE o.id = :customerId AND (:status IS NULL OR c.status = :status)",
+            countQuery = "SELECT count(c) FROM CardEntity c " +
+                    "WHERE c.customerEntity.id = :customerId AND (:status IS NULL OR c.status = :status)")
+    Page<CardListView> findCustomerCards(@Param("customerId") Long customerId,
+                                         @Param("status") CardStatus status,
+                                         Pageable pageable);
 
-    Page<CardEntity> findByCustomerEntityIdAndStatus(Long customerId, CardStatus status, Pageable pageable);
+    @Query(value = "SELECT c.id AS id, c.cardNumberHash AS cardNumberHash FROM CardEntity c " +
+            "WHERE c.cardNumberHash IN :cardNumberHashes")
+    List<CardIdView> findIdsByCardNumberHashIn(@Param("cardNumberHashes") Collection<String> cardNumberHashes);
 
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query(value = "SELECT c FROM CardEntity c WHERE c.cardNumber = :encryptedCardNumber")
-    Optional<CardEntity> findByCardNumberWithLock(@Param("encryptedCardNumber") String cardNumber);
+    /**
+     * Ограничивает ожидание блокировок строк до конца текущей транзакции (PostgreSQL lock_timeout).
+     */
+    @Query(value = "SELECT set_config('lock_timeout', :timeout, true)", nativeQuery = true)
+    String setLocalLockTimeout(@Param("timeout") String timeout);
 
-    Optional<CardEntity> findByCardNumber(String cardNumber);
+    Optional<CardEntity> findByCardNumberHash(String cardNumberHash);
+
+    @Query(value = "SELECT c.id AS id, c.customerEntity.id AS ownerId FROM CardEntity c " +
+            "WHERE c.cardNumberHash = :cardNumberHash")
+    Optional<CardOwnerView> findOwnerByCardNumberHash(@Param("cardNumberHash") String cardNumberHash);
+
+    List<CardEntity> findByCardNumberHashIn(Collection<String> cardNumberHashes);
+
+    List<CardEntity> findByCardNumberHashIsNullAndIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    @Modifying
+    @Query(value = "UPDATE CardEntity c SET c.cardNumberHash = :cardNumberHash WHERE c.id = :id")
+    int updateCardNumberHash(@Param("id") Long id, @Param("cardNumberHash") String cardNumberHash);
+
+    @Query(value = "SELECT min(c.id) FROM CardEntity c WHERE c.cardLast4 IS NULL")
+    Optional<Long> findMinIdWithoutCardLast4();
+
+    @Query(value = "SELECT max(c.id) FROM CardEntity c WHERE c.cardLast4 IS NULL")
+    Optional<Long> findMaxIdWithoutCardLast4();
+
+    List<CardEntity> findByCardLast4IsNullAndIdBetween(Long fromId, Long toId);
+
+    @Modifying
+    @Query(value = "UPDATE CardEntity c SET c.cardLast4 = :cardLast4, c.cardNumberMasked = :cardNumberMasked " +
+            "WHERE c.id = :id")
+    int updateCardNumberMask(@Param("id") Long id,
+                             @Param("cardLast4") String cardLast4,
+                             @Param("cardNumberMasked") String cardNumberMasked);
+
+    /**
+     * Страница карт после afterId по возрастанию id. Pageable задаёт только размер, OFFSET не используется.
+     * Фильтр равен null - не применяется.
+     */
+    @Query(value = "SELECT c.id AS id, c.cardNumberMasked AS cardNumberMasked, o.name AS cardHolder, " +
+            "c.expiryDate AS expiryDate, c.status AS status, b.balance AS balance, c.currency AS currency " +
+            "FROM CardEntity c JOIN c.customerEntity o JOIN CardBalanceEntity b ON b.cardId = c.id " +
+            "WHERE c.id > :afterId " +
+            "AND (:status IS NULL OR c.status = :status) " +
+            "AND (:ownerEmail IS NULL OR o.email = :ownerEmail) " +
+            "AND (:expiresFrom IS NULL OR c.expiryDate >= :expiresFrom) " +
+            "AND (:expiresTo IS NULL OR c.expiryDate <= :expiresTo) " +
+            "ORDER BY c.id")
+    List<CardListView> findAdminCardsAfter(@Param("afterId") Long afterId,
+                                            @Param("status") CardStatus status,
+                                            @Param("ownerEmail") String ownerEmail,
+                                            @Param("expiresFrom") LocalDate expiresFrom,
+                                            @Param("expiresTo") LocalDate expiresTo,
+                                            Pageable pageable);
+
+    /**
+     * Карты с лимитами расходов после afterId в порядке id - для прогрева счётчиков лимитов.
+     * Версия - версия баланса карты: она меняется с каждой проводкой по карте.
+     */
+    @Query(value = "SELECT c.id AS id, b.version AS version FROM CardEntity c JOIN CardBalanceEntity b ON b.cardId = c.id " +
+            "WHERE (c.dailyLimit IS NOT NULL OR c.monthlyLimit IS NOT NULL) AND c.id > :afterId ORDER BY c.id")
+    List<CardVersionView> findLimitedCardsAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
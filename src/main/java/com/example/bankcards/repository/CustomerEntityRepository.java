@@ -2,6 +2,8 @@ package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.CustomerEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -10,4 +12,7 @@ import java.util.Optional;
 public interface CustomerEntityRepository extends JpaRepository<CustomerEntity, Long> {
 
     Optional<CustomerEntity> findByEmail(String email);
+
+    @Query(value = "SELECT c.id FROM CustomerEntity c WHERE c.email = :email")
+    Optional<Long> findIdByEmail(@Param("email") String email);
 }
@@ -0,0 +1,30 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.IdempotencyRecordEntity;
+import com.example.bankcards.service.idempotency.IdempotencyScope;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordEntityRepository extends JpaRepository<IdempotencyRecordEntity, Long> {
+
+    @Query(value = "SELECT r.response FROM IdempotencyRecordEntity r " +
+            "WHERE r.scope = :scope AND r.idempotencyKey = :idempotencyKey")
+    Optional<byte[]> findResponse(@Param("scope") IdempotencyScope scope,
+                                  @Param("idempotencyKey") String idempotencyKey);
+
+    /**
+     * Удаляет не больше limit просроченных записей одной части таблицы.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_record WHERE id IN (" +
+            "SELECT id FROM idempotency_record WHERE bucket = :bucket AND expires_at <= :now LIMIT :limit)",
+            nativeQuery = true)
+    int deleteExpired(@Param("bucket") int bucket, @Param("now") LocalDateTime now, @Param("limit") int limit);
+}
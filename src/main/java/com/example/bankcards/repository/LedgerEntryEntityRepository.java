@@ -0,0 +1,22 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.ledger.LedgerEntryEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+
+@Repository
+public interface LedgerEntryEntityRepository extends JpaRepository<LedgerEntryEntity, Long> {
+
+    /**
+     * Сумма проводок по карте с номерами в (afterSeq, toSeq].
+     */
+    @Query(value = "SELECT COALESCE(SUM(e.amount), 0) FROM LedgerEntryEntity e " +
+            "WHERE e.cardId = :cardId AND e.cardSeq > :afterSeq AND e.cardSeq <= :toSeq")
+    BigDecimal sumCardEntries(@Param("cardId") Long cardId,
+                              @Param("afterSeq") long afterSeq,
+                              @Param("toSeq") long toSeq);
+}
@@ -1,12 +1,25 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
 import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import com.example.bankcards.entity.enums.TransactionType;
 import com.example.bankcards.entity.operations.TransactionEntity;
+import com.example.bankcards.repository.projection.CardSpendView;
+import com.example.bankcards.repository.projection.TransactionHistoryView;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface TransactionEntityRepository extends JpaRepository<TransactionEntity, Long> {
@@ -15,5 +28,52 @@ public interface TransactionEntityRepository extends JpaRepository<TransactionEn
     List<TransactionEntity> findBySourceCardEntity(CardEntity cardEntity);
 
     List<TransactionEntity> findBySourceCardEntity(CardEntity cardEntity, Pageable pageable);
-}
 
+    /**
+     * Первая страница истории карты. Pageable задаёт только размер: без OFFSET, порядок фиксирован запросом.
+     */
+    @Query(value = "SELECT t.id AS id, t.amount AS amount, t.createdAt AS createdAt, " +
+            "t.transactionStatus AS transactionStatus FROM TransactionEntity t " +
+            "WHERE t.sourceCardEntity.id = :cardId ORDER BY t.createdAt, t.id")
+    List<TransactionHistoryView> findHistoryFirstPage(@Param("cardId") Long cardId, Pageable pageable);
+
+    /**
+     * Страница истории карты строго после (createdAt, id): поиск по индексу
+     * (source_card_id, created_at, id) вместо пропуска OFFSET строк.
+     */
+    @Query(value = "SELECT t.id AS id, t.amount AS amount, t.createdAt AS createdAt, " +
+            "t.transactionStatus AS transactionStatus FROM TransactionEntity t " +
+            "WHERE t.sourceCardEntity.id = :cardId AND (t.createdAt, t.id) > (:createdAt, :id) " +
+            "ORDER BY t.createdAt, t.id")
+    List<TransactionHistoryView> findHistoryAfter(@Param("cardId") Long cardId,
+                                                  @Param("createdAt") LocalDateTime createdAt,
+                                                  @Param("id") Long id,
+                                                  Pageable pageable);
+
+    /**
+     * Вся история карты однонаправленным курсором (ScrollableResults) порциями по fetch size.
+     * Строки сразу собираются в TransactionResponseDTO, управляемые сущности не создаются.
+     * Вызывать внутри транзакции и закрывать поток.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = "SELECT new com.example.bankcards.dto.transaction.TransactionResponseDTO(" +
+            "t.amount, t.createdAt, t.transactionStatus) FROM TransactionEntity t " +
+            "WHERE t.sourceCardEntity.id = :cardId ORDER BY t.createdAt, t.id")
+    Stream<TransactionResponseDTO> streamHistory(@Param("cardId") Long cardId);
+
+    /**
+     * Успешные списания с карт (снятия и переводы) с момента since - для счётчиков лимитов.
+     * Читается по индексу (source_card_id, created_at, id), без агрегации.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query(value = "SELECT t.sourceCardEntity.id AS cardId, t.amount AS amount, t.createdAt AS createdAt " +
+            "FROM TransactionEntity t WHERE t.sourceCardEntity.id IN :cardIds AND t.createdAt >= :since " +
+            "AND t.transactionType IN :types AND t.transactionStatus = :status")
+    List<CardSpendView> findSpendSince(@Param("cardIds") Collection<Long> cardIds,
+                                       @Param("since") LocalDateTime since,
+                                       @Param("types") Collection<TransactionType> types,
+                                       @Param("status") TransactionStatus status);
+}
@@ -0,0 +1,15 @@
+package com.example.bankcards.repository.projection;
+
+import java.math.BigDecimal;
+
+/**
+ * Баланс карты, для которого пора записать контрольную точку.
+ */
+public interface CardBalanceCheckpointCandidateView {
+
+    Long getCardId();
+
+    Long getEntrySeq();
+
+    BigDecimal getBalance();
+}
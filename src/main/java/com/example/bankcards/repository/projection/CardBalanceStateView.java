@@ -0,0 +1,17 @@
+package com.example.bankcards.repository.projection;
+
+import java.math.BigDecimal;
+
+/**
+ * Состояние баланса карты без загрузки сущности в контекст персистентности.
+ */
+public interface CardBalanceStateView {
+
+    Long getCardId();
+
+    BigDecimal getBalance();
+
+    Long getEntrySeq();
+
+    Integer getVersion();
+}
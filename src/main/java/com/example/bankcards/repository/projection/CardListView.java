@@ -0,0 +1,28 @@
+package com.example.bankcards.repository.projection;
+
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.Currency;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Строка списка карт: колонки карты и имя владельца из одного запроса с join.
+ * Номер берётся из card_number_masked, зашифрованный card_number не читается и не расшифровывается.
+ */
+public interface CardListView {
+
+    Long getId();
+
+    String getCardNumberMasked();
+
+    String getCardHolder();
+
+    LocalDate getExpiryDate();
+
+    CardStatus getStatus();
+
+    BigDecimal getBalance();
+
+    Currency getCurrency();
+}
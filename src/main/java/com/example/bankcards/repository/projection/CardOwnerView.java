@@ -0,0 +1,8 @@
+package com.example.bankcards.repository.projection;
+
+public interface CardOwnerView {
+
+    Long getId();
+
+    Long getOwnerId();
+}
@@ -0,0 +1,16 @@
+package com.example.bankcards.repository.projection;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Списание с карты для восстановления счётчиков лимитов.
+ */
+public interface CardSpendView {
+
+    Long getCardId();
+
+    BigDecimal getAmount();
+
+    LocalDateTime getCreatedAt();
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.repository.projection;
+
+import com.example.bankcards.entity.enums.TransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Строка истории транзакций карты. Все колонки есть в индексе
+ * ix_transaction_entity_source_card_history, поэтому в Postgres запрос обслуживается index-only scan.
+ */
+public interface TransactionHistoryView {
+
+    Long getId();
+
+    BigDecimal getAmount();
+
+    LocalDateTime getCreatedAt();
+
+    TransactionStatus getTransactionStatus();
+}
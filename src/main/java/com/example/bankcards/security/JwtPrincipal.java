@@ -0,0 +1,25 @@
+package com.example.bankcards.security;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Данные проверенного JWT: получаются одним разбором токена и дальше не меняются.
+ * customerId равен null у токенов, выпущенных до появления claim customerId.
+ */
+public record JwtPrincipal(String subject, Long customerId, List<String> roles, Instant expiresAt) implements Principal {
+
+    public JwtPrincipal {
+        roles = roles == null ? List.of() : List.copyOf(roles);
+    }
+
+    public boolean isExpired(Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+
+    @Override
+    public String getName() {
+        return subject;
+    }
+}
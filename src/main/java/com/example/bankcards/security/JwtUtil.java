@@ -2,6 +2,7 @@ package com.example.bankcards.security;
 
 import com.example.bankcards.entity.app_class.*;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -20,16 +21,24 @@ import java.util.function.Function;
 @Component
 public class JwtUtil {
 
-    private final String secretKey;
+    private static final String CUSTOMER_ID_CLAIM = "customerId";
 
-    public JwtUtil(@Value("${jwt.secret}") String secretKey) {
-        this.secretKey = secretKey;
+    private final SecretKey signingKey;
+    private final JwtParser jwtParser;
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    public JwtUtil(@Value("${jwt.secret}") String secretKey,
+                   @Value("${jwt.cache.max-size}") int cacheMaxSize) {
+        this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        this.jwtParser = Jwts.parser().verifyWith(signingKey).build();
+        this.verifiedTokenCache = new VerifiedTokenCache(cacheMaxSize);
     }
 
     public String generateToken(CustomerDetails customerDetails) {
 
         Map<String, Object> claims = new HashMap<>();
         claims.put("email", customerDetails.getUsername());
+        claims.put(CUSTOMER_ID_CLAIM, customerDetails.getCustomerId());
         claims.put("roles", customerDetails.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
         return createToken(claims, customerDetails.getUsername());
     }
@@ -41,28 +50,35 @@ public class JwtUtil {
                 .subject(subject)
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(Date.from(ZonedDateTime.now().plusMinutes(60).toInstant()))
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
     }
 
-    private SecretKey getSigningKey() {
+    /**
+     * Проверяет подпись и срок действия токена за один разбор.
+     * Повторные запросы с тем же токеном обслуживаются из кэша без проверки подписи.
+     * @throws io.jsonwebtoken.JwtException если токен невалиден или истёк
+     */
+    public JwtPrincipal verify(String token) {
+        JwtPrincipal cached = verifiedTokenCache.get(token);
+        if (cached != null) {
+            return cached;
+        }
+
+        Claims claims = extractAllClaims(token);
+        JwtPrincipal principal = new JwtPrincipal(claims.getSubject(), extractCustomerId(claims),
+                extractRoles(claims), claims.getExpiration().toInstant());
 
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        verifiedTokenCache.put(token, principal);
+        return principal;
     }
 
     public String extractUsername(String token) {
-        return Jwts
-                .parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
+        return extractClaim(token, Claims::getSubject);
     }
 
     public List<String> extractRoles(String token) {
-        Claims claims = extractAllClaims(token);
-        return (List<String>) claims.get("roles");
+        return extractRoles(extractAllClaims(token));
     }
 
     public boolean isTokenValid(String token, String username) {
@@ -78,16 +94,22 @@ public class JwtUtil {
         return extractClaim(token, Claims::getExpiration);
     }
 
+    private Long extractCustomerId(Claims claims) {
+        return claims.get(CUSTOMER_ID_CLAIM) instanceof Number customerId ? customerId.longValue() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> extractRoles(Claims claims) {
+        return (List<String>) claims.get("roles");
+    }
+
     private <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
         final Claims claims = extractAllClaims(token);
         return claimsResolver.apply(claims);
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts
-                .parser()
-                .verifyWith(getSigningKey())
-                .build()
+        return jwtParser
                 .parseSignedClaims(token)
                 .getPayload();
     }
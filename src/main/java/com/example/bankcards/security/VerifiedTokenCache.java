@@ -0,0 +1,79 @@
+package com.example.bankcards.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ограниченный по размеру кэш уже проверенных токенов.
+ * Ключ - SHA-256 от токена, поэтому сами токены в памяти не хранятся.
+ * Запись живёт не дольше срока действия токена; при переполнении сначала
+ * удаляются истёкшие записи, затем те, что истекают раньше остальных.
+ */
+public class VerifiedTokenCache {
+
+    private static final Base64.Encoder KEY_ENCODER = Base64.getEncoder().withoutPadding();
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final int maxSize;
+    private final Map<String, JwtPrincipal> entries = new ConcurrentHashMap<>();
+
+    public VerifiedTokenCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public JwtPrincipal get(String token) {
+        String key = digest(token);
+        JwtPrincipal principal = entries.get(key);
+        if (principal != null && principal.isExpired(Instant.now())) {
+            entries.remove(key, principal);
+            return null;
+        }
+        return principal;
+    }
+
+    public void put(String token, JwtPrincipal principal) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        entries.put(digest(token), principal);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Instant now = Instant.now();
+        entries.values().removeIf(principal -> principal.isExpired(now));
+
+        int excess = entries.size() - maxSize + Math.max(1, maxSize / 10);
+        if (excess <= 0) {
+            return;
+        }
+        entries.entrySet().stream()
+                .sorted(Comparator.comparing(entry -> entry.getValue().expiresAt()))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(entries::remove);
+    }
+
+    private static String digest(String token) {
+        return KEY_ENCODER.encodeToString(DIGEST.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -4,39 +4,51 @@ import com.example.bankcards.dto.card.*;
 import com.example.bankcards.dto.transaction.TransactionResponseDTO;
 import com.example.bankcards.entity.*;
 import com.example.bankcards.entity.enums.*;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
 import com.example.bankcards.entity.mapper.CardEntityMapper;
 import com.example.bankcards.entity.mapper.TransactionEntityMapper;
 import com.example.bankcards.exception.card.CardWithNumberAlreadyExistsException;
 import com.example.bankcards.exception.card.CardWithNumberNoExistsException;
 import com.example.bankcards.exception.customer.CustomerNotFoundException;
 import com.example.bankcards.repository.CardEntityRepository;
+import com.example.bankcards.repository.projection.CardListView;
+import com.example.bankcards.repository.projection.CardOwnerView;
+import com.example.bankcards.service.ledger.LedgerService;
+import com.example.bankcards.service.lock.CardRowLocker;
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.*;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.security.*;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RequiredArgsConstructor
 @Service
 public class AdminCardService {
 
+    private static final int MAX_LIST_PAGE_SIZE = 100;
+
     private final CardEntityRepository cardEntityRepository;
     private final CustomerService customerService;
     private final CardEntityMapper cardEntityMapper;
     private final TransactionEntityMapper transactionEntityMapper;
+    private final CardNumberBlindIndexUtil cardNumberBlindIndexUtil;
+    private final LedgerService ledgerService;
+    private final CardRowLocker cardRowLocker;
 
 
-    @Cacheable(value = "key:create-card", key = "#idempotencyKey", unless = "#result == null")
     @Transactional
     public CardResponseDTO createCard(CreateCardRequestDTO createCardDto, String idempotencyKey) {
 
 
-        if(cardEntityRepository.findByCardNumber(createCardDto.cardNumber()).isPresent()) {
+        if(cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(createCardDto.cardNumber())).isPresent()) {
             throw new CardWithNumberAlreadyExistsException(createCardDto.cardNumber());
         }
 
@@ -48,19 +60,21 @@ public class AdminCardService {
                 .customerEntity(customer)
                 .expiryDate(createCardDto.expiryDate())
                 .status(CardStatus.ACTIVE)
-                .balance(BigDecimal.ZERO)
                 .currency(Currency.RUB)
                 .build();
 
         cardEntity = cardEntityRepository.save(cardEntity);
+        CardBalanceEntity cardBalance = ledgerService.openAccount(cardEntity, BigDecimal.ZERO);
 
-        return cardEntityMapper.toCardResponse(cardEntity);
+        // balance карты - @Formula, до перечитывания строки он пуст: в ответ идёт баланс открытого счёта
+        CardResponseDTO response = cardEntityMapper.toCardResponse(cardEntity);
+        response.setBalance(cardBalance.getBalance());
+        return response;
     }
 
-    @Cacheable(value = "key:update-card", key = "#idempotencyKey", unless = "#result == null")
     @Transactional
     public CardResponseDTO updateCard(UpdateCardRequestDTO updateDto) {
-        CardEntity cardEntity = cardEntityRepository.findByCardNumber(updateDto.cardNumber())
+        CardEntity cardEntity = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(updateDto.cardNumber()))
                 .orElseThrow(()-> new CardWithNumberNoExistsException(updateDto.cardNumber()));
 
         cardEntity.setCardNumber(updateDto.newCardNumber());
@@ -73,8 +87,9 @@ public class AdminCardService {
 
     @Transactional
     public void blockCard(BlockCardRequestDTO blockCardDto, String idempotencyKey) {
-        CardEntity cardEntity = cardEntityRepository.findByCardNumber(blockCardDto.cardNumber())
+        CardEntity cardEntity = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(blockCardDto.cardNumber()))
                 .orElseThrow(()-> new CardWithNumberNoExistsException(blockCardDto.cardNumber()));
+        cardRowLocker.lockForCardChange(cardEntity.getId());
         cardEntity.setStatus(CardStatus.BLOCKED);
         cardEntityRepository.save(cardEntity);
     }
@@ -82,28 +97,72 @@ public class AdminCardService {
 
     @Transactional
     public void activateCard(ActivateCardRequestDTO activateCardDto, String idempotencyKey) {
-        CardEntity cardEntity = cardEntityRepository.findByCardNumber(activateCardDto.cardNumber())
+        CardEntity cardEntity = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(activateCardDto.cardNumber()))
                 .orElseThrow(()-> new CardWithNumberNoExistsException(activateCardDto.cardNumber()));
         cardEntity.setStatus(CardStatus.ACTIVE);
         cardEntityRepository.save(cardEntity);
     }
 
+    /**
+     * Устанавливает лимиты расходов по карте. Лимиты читаются из карты при каждой проверке,
+     * а счётчики расходов сверяются с версией card_balance. Смена лимитов берёт баланс карты
+     * с увеличением версии (см. {@link CardRowLocker#lockForCardChange(Long)}): новые лимиты действуют
+     * со следующей операции, а счётчики один раз перечитают расходы.
+     */
+    @Transactional
+    public void setCardLimits(SetLimitsForCardRequestDTO setLimitsDto) {
+        CardEntity cardEntity = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(setLimitsDto.cardNumber()))
+                .orElseThrow(()-> new CardWithNumberNoExistsException(setLimitsDto.cardNumber()));
+        cardRowLocker.lockForCardChange(cardEntity.getId());
+        cardEntity.setDailyLimit(setLimitsDto.dailyLimit());
+        cardEntity.setMonthlyLimit(setLimitsDto.monthlyLimit());
+        cardEntityRepository.save(cardEntity);
+    }
+
     @Transactional
     public void deleteCard(DeleteCardRequestDTO deleteCardDto, String idempotencyKey) {
-        CardEntity cardEntity = cardEntityRepository.findByCardNumber(deleteCardDto.cardNumber())
+        CardEntity cardEntity = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(deleteCardDto.cardNumber()))
                 .orElseThrow(()-> new CardWithNumberNoExistsException(deleteCardDto.cardNumber()));
 
+        cardRowLocker.lockForCardChange(cardEntity.getId());
         cardEntityRepository.deleteById(cardEntity.getId());
     }
 
+    /**
+     * Список карт с фильтрами, страница за страницей по id.
+     * Один запрос с join к владельцу на страницу, номера расшифровываются только у отданных карт.
+     * @param afterId id последней карты предыдущей страницы, null - с начала
+     * @param size размер страницы, приводится к диапазону 1..MAX_LIST_PAGE_SIZE
+     */
+    @Transactional(readOnly = true)
+    public CardListResponseDTO listCards(CardStatus status, String ownerEmail, LocalDate expiresFrom,
+                                         LocalDate expiresTo, Long afterId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_LIST_PAGE_SIZE));
+
+        List<CardListView> rows = cardEntityRepository.findAdminCardsAfter(afterId == null ? 0L : afterId,
+                status, ownerEmail, expiresFrom, expiresTo, PageRequest.of(0, pageSize + 1));
+
+        Long nextAfterId = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            nextAfterId = rows.get(pageSize - 1).getId();
+        }
+
+        return new CardListResponseDTO(rows.stream()
+                .map(cardEntityMapper::toCardResponse)
+                .collect(Collectors.toList()), nextAfterId);
+    }
+
     @Transactional(readOnly = true)
-    public List<CardResponseDTO> getAllCards() {
-        return cardEntityRepository.findAll().stream().map(cardEntityMapper::toCardResponse).toList();
+    public Long getCardId(String cardNumber) {
+        return cardEntityRepository.findOwnerByCardNumberHash(cardNumberBlindIndexUtil.hash(cardNumber))
+                .map(CardOwnerView::getId)
+                .orElseThrow(()-> new CardWithNumberNoExistsException(cardNumber));
     }
 
     @Transactional(readOnly = true)
     public List<TransactionResponseDTO> getCardTransactions(ShowTransactionalByCardRequestDTO cardDto) {
-        CardEntity cardEntity = cardEntityRepository.findByCardNumber(cardDto.cardNumber())
+        CardEntity cardEntity = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(cardDto.cardNumber()))
                 .orElseThrow(()-> new CardWithNumberNoExistsException(cardDto.cardNumber()));
 
         return cardEntity.getHistory().stream().map(transactionEntityMapper::toTransactionResponse).toList();
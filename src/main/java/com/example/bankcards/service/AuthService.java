@@ -6,26 +6,41 @@ import com.example.bankcards.entity.CustomerEntity;
 import com.example.bankcards.entity.app_class.CustomerDetails;
 import com.example.bankcards.exception.customer.CustomerNotFoundException;
 import com.example.bankcards.repository.CustomerEntityRepository;
+import com.example.bankcards.security.JwtPrincipal;
 import com.example.bankcards.security.JwtUtil;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
-@RequiredArgsConstructor
 @Service
 public class AuthService {
 
     private final AuthenticationManager authenticationManager;
     private final JwtUtil jwtUtil;
     private final CustomerEntityRepository customerEntityRepository;
+    private final Timer passwordVerifyTimer;
+
+    public AuthService(AuthenticationManager authenticationManager,
+                       JwtUtil jwtUtil,
+                       CustomerEntityRepository customerEntityRepository,
+                       MeterRegistry meterRegistry) {
+        this.authenticationManager = authenticationManager;
+        this.jwtUtil = jwtUtil;
+        this.customerEntityRepository = customerEntityRepository;
+        // почти всё время проверки пароля уходит на Argon2
+        this.passwordVerifyTimer = Timer.builder("auth.password.verify")
+                .description("Time spent checking login credentials (Argon2 password hash)")
+                .register(meterRegistry);
+    }
 
     public AuthResponse authenticate(AuthRequest request) {
-        Authentication authentication = authenticationManager.authenticate(
+        Authentication authentication = passwordVerifyTimer.record(() -> authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(request.email(), request.password())
-        );
+        ));
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
@@ -38,13 +53,21 @@ public class AuthService {
         return new AuthResponse(token);
     }
 
+    /**
+     * Id текущего клиента. Берётся из JWT без обращения к БД;
+     * для токенов, выпущенных до появления claim customerId, ищется по email.
+     */
     public long getCustomerId(){
 
-        String emailCustomer = (String) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
-        CustomerEntity customer = customerEntityRepository.findByEmail(emailCustomer)
-                .orElseThrow(() -> new CustomerNotFoundException(emailCustomer));
+        if (authentication.getPrincipal() instanceof JwtPrincipal principal && principal.customerId() != null) {
+            return principal.customerId();
+        }
 
-        return customer.getId();
+        String emailCustomer = authentication.getName();
+
+        return customerEntityRepository.findIdByEmail(emailCustomer)
+                .orElseThrow(() -> new CustomerNotFoundException(emailCustomer));
     }
 }
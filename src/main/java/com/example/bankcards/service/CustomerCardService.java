@@ -1,9 +1,13 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.datasource.ReadFromPrimary;
 import com.example.bankcards.dto.card.*;
+import com.example.bankcards.dto.transaction.TransactionHistoryCursor;
+import com.example.bankcards.dto.transaction.TransactionHistoryResponseDTO;
 import com.example.bankcards.dto.transaction.TransactionResponseDTO;
 import com.example.bankcards.entity.enums.CardStatus;
 import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
 
 import com.example.bankcards.entity.enums.Currency;
 import com.example.bankcards.entity.enums.TransactionStatus;
@@ -15,11 +19,20 @@ import com.example.bankcards.exception.card.CardBlockedException;
 import com.example.bankcards.exception.card.CardWithNumberNoExistsException;
 import com.example.bankcards.exception.card.InsufficientFundsException;
 import com.example.bankcards.exception.customer.*;
+import com.example.bankcards.jfr.MoneyMovementProfile;
 import com.example.bankcards.repository.CardEntityRepository;
 import com.example.bankcards.repository.TransactionEntityRepository;
+import com.example.bankcards.repository.projection.CardOwnerView;
+import com.example.bankcards.repository.projection.TransactionHistoryView;
+import com.example.bankcards.service.engine.BalanceEngine;
+import com.example.bankcards.service.ledger.LedgerService;
+import com.example.bankcards.service.limit.SpendingLimitService;
+import com.example.bankcards.service.lock.CardOperationExecutor;
+import com.example.bankcards.service.lock.CardRowLocker;
+import com.example.bankcards.service.lock.LockedCards;
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.*;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -29,17 +42,28 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @RequiredArgsConstructor
 @Service
 public class CustomerCardService {
 
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
     private final CardEntityRepository cardEntityRepository;
     private final TransactionEntityRepository transactionEntityRepository;
     private final CardEntityMapper cardEntityMapper;
     private final TransactionEntityMapper transactionEntityMapper;
+    private final CardNumberBlindIndexUtil cardNumberBlindIndexUtil;
     private final AuthService authService;
+    private final CardOperationExecutor cardOperationExecutor;
+    private final CardRowLocker cardRowLocker;
+    private final SpendingLimitService spendingLimitService;
+    private final LedgerService ledgerService;
+    private final Optional<BalanceEngine> balanceEngine;
 
     @Transactional(readOnly = true)
     public Page<CardResponseDTO> getCustomerCards(CardStatus status, int page, int size) {
@@ -47,20 +71,17 @@ public class CustomerCardService {
         long idCustomer = authService.getCustomerId();
 
         Pageable pageable = PageRequest.of(page,size, Sort.by(Sort.Direction.ASC,"createdAt"));
-        if(status != null){
-            return cardEntityRepository.findByCustomerEntityIdAndStatus(idCustomer, status, pageable)
-                    .map(cardEntityMapper::toCardResponse);
-        }
 
-        return cardEntityRepository.findByCustomerEntityId(idCustomer, pageable).map(cardEntityMapper::toCardResponse);
+        return cardEntityRepository.findCustomerCards(idCustomer, status, pageable).map(cardEntityMapper::toCardResponse);
     }
 
+    @ReadFromPrimary
     @Transactional(readOnly = true)
     public CardResponseDTO getCustomerCard(String cartNumber) {
 
         long idCustomer = authService.getCustomerId();
 
-        CardEntity cardEntity = cardEntityRepository.findByCardNumber(cartNumber)
+        CardEntity cardEntity = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(cartNumber))
                 .orElseThrow(()-> new CardWithNumberNoExistsException(cartNumber));
 
         if(idCustomer != cardEntity.getCustomerEntity().getId()){
@@ -72,7 +93,7 @@ public class CustomerCardService {
 
     @Transactional
     public void requestCardBlock(BlockCardRequestDTO blockCardDto, String idempotencyKey) {
-        CardEntity cardEntity = cardEntityRepository.findByCardNumber(blockCardDto.cardNumber())
+        CardEntity cardEntity = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(blockCardDto.cardNumber()))
                 .orElseThrow(()-> new CardWithNumberNoExistsException(blockCardDto.cardNumber()));
 
         long idCustomer = authService.getCustomerId();
@@ -85,6 +106,7 @@ public class CustomerCardService {
             throw new RuntimeException("Card is already blocked");
         }
 
+        cardRowLocker.lockForCardChange(cardEntity.getId());
         cardEntity.setStatus(CardStatus.BLOCKED);
         cardEntityRepository.save(cardEntity);
 
@@ -93,7 +115,7 @@ public class CustomerCardService {
     @Transactional(readOnly = true)
     public List<TransactionResponseDTO> getTransactionalByCard(ShowTransactionalByCardRequestDTO Dto,
                                                                int page, int size, String idempotencyKey) {
-        CardEntity cardEntity = cardEntityRepository.findByCardNumber(Dto.cardNumber())
+        CardEntity cardEntity = cardEntityRepository.findByCardNumberHash(cardNumberBlindIndexUtil.hash(Dto.cardNumber()))
                 .orElseThrow(()-> new CardWithNumberNoExistsException(Dto.cardNumber()));
 
         long idCustomer = authService.getCustomerId();
@@ -109,25 +131,176 @@ public class CustomerCardService {
     }
 
 
-    @Cacheable(value = "key:transfer", key = "#idempotencyKey", unless = "#result == null")
-    @Transactional
+    /**
+     * Id карты текущего клиента для выгрузки истории.
+     */
+    @Transactional(readOnly = true)
+    public Long getOwnCardId(String cardNumber) {
+        CardOwnerView card = cardEntityRepository.findOwnerByCardNumberHash(cardNumberBlindIndexUtil.hash(cardNumber))
+                .orElseThrow(()-> new CardWithNumberNoExistsException(cardNumber));
+
+        if(authService.getCustomerId() != card.getOwnerId()){
+            throw new NoAccessToOtherDataException();
+        }
+
+        return card.getId();
+    }
+
+    /**
+     * История транзакций карты постранично по курсору: каждая страница - поиск по индексу
+     * (source_card_id, created_at, id) от последней отданной строки, без OFFSET,
+     * поэтому глубокие страницы стоят столько же, сколько первая.
+     * @param after курсор из nextCursor предыдущей страницы, null - с начала истории
+     * @param size размер страницы, приводится к диапазону 1..MAX_HISTORY_PAGE_SIZE
+     */
+    @Transactional(readOnly = true)
+    public TransactionHistoryResponseDTO getTransactionHistory(ShowTransactionalByCardRequestDTO historyDto,
+                                                               String after, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE));
+
+        CardOwnerView card = cardEntityRepository.findOwnerByCardNumberHash(cardNumberBlindIndexUtil.hash(historyDto.cardNumber()))
+                .orElseThrow(()-> new CardWithNumberNoExistsException(historyDto.cardNumber()));
+
+        long idCustomer = authService.getCustomerId();
+
+        if(idCustomer != card.getOwnerId()){
+            throw new NoAccessToOtherDataException();
+        }
+
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        List<TransactionHistoryView> rows;
+        if (after == null || after.isBlank()) {
+            rows = transactionEntityRepository.findHistoryFirstPage(card.getId(), limit);
+        } else {
+            TransactionHistoryCursor cursor = TransactionHistoryCursor.decode(after);
+            rows = transactionEntityRepository.findHistoryAfter(card.getId(), cursor.createdAt(), cursor.id(), limit);
+        }
+
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = rows.subList(0, pageSize);
+            TransactionHistoryView last = rows.get(pageSize - 1);
+            nextCursor = new TransactionHistoryCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+
+        return new TransactionHistoryResponseDTO(rows.stream()
+                .map(transactionEntityMapper::toTransactionResponse)
+                .collect(Collectors.toList()), nextCursor);
+    }
+
     public TransactionResponseDTO transferBetweenCards(TransferFundsBetweenUserCardsRequestDTO transferFundsDto,
                                                        String idempotencyKey) {
 
         long idCustomer = authService.getCustomerId();
 
-        List<String> listCardNumberOrderByBlock = List.of(transferFundsDto.fromCardNumber(), transferFundsDto.toCardNumber());
+        return MoneyMovementProfile.record("TRANSFER", () -> executeOnCards(
+                List.of(transferFundsDto.fromCardNumber(), transferFundsDto.toCardNumber()),
+                lockedCards -> transfer(transferFundsDto, lockedCards, idCustomer)));
+    }
+
+    public BatchTransferResponseDTO transferBatchBetweenCards(BatchTransferRequestDTO batchTransferDto,
+                                                              String idempotencyKey) {
+
+        long idCustomer = authService.getCustomerId();
+
+        List<String> cardNumbers = batchTransferDto.transfers().stream()
+                .flatMap(transferDto -> Stream.of(transferDto.fromCardNumber(), transferDto.toCardNumber()))
+                .distinct()
+                .toList();
+
+        return MoneyMovementProfile.record("TRANSFER_BATCH", () -> executeOnCards(cardNumbers,
+                lockedCards -> transferBatch(batchTransferDto.transfers(), lockedCards, idCustomer)));
+    }
+
+    public TransactionResponseDTO withdrawalFromCard(WithdrawFundsRequestDTO withdrawDto, String idempotencyKey){
+
+        long idCustomer = authService.getCustomerId();
+
+        return MoneyMovementProfile.record("WITHDRAWAL", () -> executeOnCards(List.of(withdrawDto.cardNumber()),
+                lockedCards -> withdraw(withdrawDto, lockedCards, idCustomer)));
+    }
+
+    public TransactionResponseDTO cardReplenishment(ReplenishmentCardRequestDTO replenishmentCardDto, String idempotencyKey) {
+
+        long idCustomer = authService.getCustomerId();
+
+        return MoneyMovementProfile.record("REPLENISHMENT", () -> executeOnCards(List.of(replenishmentCardDto.cardNumber()),
+                lockedCards -> replenish(replenishmentCardDto, lockedCards, idCustomer)));
+    }
+
+    /**
+     * Операции с деньгами идут через движок балансов, если он включён на этом узле (card.engine.enabled),
+     * иначе - через блокировки CardOperationExecutor.
+     */
+    private <T> T executeOnCards(List<String> cardNumbers, Function<LockedCards, T> operation) {
+        return balanceEngine.isPresent()
+                ? balanceEngine.get().execute(cardNumbers, operation)
+                : cardOperationExecutor.execute(cardNumbers, operation);
+    }
+
+    private TransactionResponseDTO transfer(TransferFundsBetweenUserCardsRequestDTO transferFundsDto,
+                                            LockedCards lockedCards, long idCustomer) {
 
-        listCardNumberOrderByBlock.stream().sorted().toList();
+        TransactionEntity transferTransactionEntity = applyTransfer(transferFundsDto, lockedCards, idCustomer);
+
+        return transactionEntityMapper.toTransactionResponse(transferTransactionEntity);
 
-        CardEntity firstCard = cardEntityRepository.findByCardNumberWithLock(listCardNumberOrderByBlock.get(0))
-                .orElseThrow(()-> new CardWithNumberNoExistsException(transferFundsDto.fromCardNumber()));
+    }
+
+    /**
+     * Проверяет и проводит все переводы пакета в одной транзакции.
+     * Сначала проверяются все переводы, каждый - по балансу после предыдущих, и суммарные расходы карт по лимитам;
+     * записи начинаются, только если прошёл весь пакет, так что отказ ничего не оставляет в транзакции.
+     * Балансы карт сбрасываются одним flush,
+     * операции и проводки журнала вставляются при нём JDBC-пакетами (hibernate.jdbc.batch_size).
+     */
+    private BatchTransferResponseDTO transferBatch(List<TransferFundsBetweenUserCardsRequestDTO> transfers,
+                                                   LockedCards lockedCards, long idCustomer) {
+
+        Map<String, BigDecimal> available = new HashMap<>();
+        Map<String, BigDecimal> spent = new LinkedHashMap<>();
+        List<Currency> currencies = new ArrayList<>(transfers.size());
+        for (TransferFundsBetweenUserCardsRequestDTO transferFundsDto : transfers) {
+            BigDecimal availableFrom = available.computeIfAbsent(transferFundsDto.fromCardNumber(),
+                    cardNumber -> lockedCards.balance(cardNumber).getBalance());
+            currencies.add(checkTransfer(transferFundsDto, lockedCards, idCustomer, availableFrom));
+
+            available.put(transferFundsDto.fromCardNumber(), availableFrom.subtract(transferFundsDto.amount()));
+            available.merge(transferFundsDto.toCardNumber(),
+                    lockedCards.balance(transferFundsDto.toCardNumber()).getBalance().add(transferFundsDto.amount()),
+                    (current, ignored) -> current.add(transferFundsDto.amount()));
+            spent.merge(transferFundsDto.fromCardNumber(), transferFundsDto.amount(), BigDecimal::add);
+        }
+        spent.forEach((cardNumber, amount) ->
+                spendingLimitService.check(lockedCards.get(cardNumber), lockedCards.balance(cardNumber), amount));
+
+        List<TransactionEntity> transferTransactionEntities = new ArrayList<>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            transferTransactionEntities.add(postTransfer(transfers.get(i), currencies.get(i), lockedCards));
+        }
+
+        return new BatchTransferResponseDTO(transferTransactionEntities.stream()
+                .map(transactionEntityMapper::toTransactionResponse)
+                .collect(Collectors.toList()));
+    }
+
+    private TransactionEntity applyTransfer(TransferFundsBetweenUserCardsRequestDTO transferFundsDto,
+                                            LockedCards lockedCards, long idCustomer) {
+        Currency currency = checkTransfer(transferFundsDto, lockedCards, idCustomer,
+                lockedCards.balance(transferFundsDto.fromCardNumber()).getBalance());
+        return postTransfer(transferFundsDto, currency, lockedCards);
+    }
 
-        CardEntity secondCard = cardEntityRepository.findByCardNumberWithLock(listCardNumberOrderByBlock.get(1))
-                .orElseThrow(()-> new CardWithNumberNoExistsException(transferFundsDto.toCardNumber()));
+    /**
+     * Проверки перевода, которые ничего не меняют: владелец, статус карт, средства и валюта.
+     * @param availableFrom сколько можно списать с карты-источника к этому переводу
+     * @return валюта перевода
+     */
+    private Currency checkTransfer(TransferFundsBetweenUserCardsRequestDTO transferFundsDto,
+                                   LockedCards lockedCards, long idCustomer, BigDecimal availableFrom) {
 
-        CardEntity cardEntityFrom = firstCard.getCardNumber().equals(transferFundsDto.fromCardNumber()) ? firstCard : secondCard;
-        CardEntity cardEntityTo = cardEntityFrom == firstCard ? secondCard : firstCard;
+        CardEntity cardEntityFrom = lockedCards.get(transferFundsDto.fromCardNumber());
+        CardEntity cardEntityTo = lockedCards.get(transferFundsDto.toCardNumber());
 
         if(idCustomer != cardEntityFrom.getCustomerEntity().getId()){
             throw new NoAccessToOtherDataException();
@@ -137,38 +310,46 @@ public class CustomerCardService {
             throw new CardBlockedException();
         }
 
-        if (cardEntityFrom.getBalance().compareTo(transferFundsDto.amount()) < 0) {
+        if (availableFrom.compareTo(transferFundsDto.amount()) < 0) {
             throw new InsufficientFundsException();
         }
 
-        cardEntityFrom.setBalance((cardEntityFrom.getBalance().subtract(transferFundsDto.amount())));
-        cardEntityTo.setBalance(cardEntityTo.getBalance().add(transferFundsDto.amount()));
+        return Currency.fromString(transferFundsDto.currency());
+    }
+
+    /**
+     * Лимиты и проводка перевода, уже прошедшего {@link #checkTransfer}. Отказать может только проверка лимита,
+     * и она идёт до первой записи.
+     */
+    private TransactionEntity postTransfer(TransferFundsBetweenUserCardsRequestDTO transferFundsDto, Currency currency,
+                                           LockedCards lockedCards) {
+
+        CardEntity cardEntityFrom = lockedCards.get(transferFundsDto.fromCardNumber());
+        CardEntity cardEntityTo = lockedCards.get(transferFundsDto.toCardNumber());
+        CardBalanceEntity balanceFrom = lockedCards.balance(transferFundsDto.fromCardNumber());
+        CardBalanceEntity balanceTo = lockedCards.balance(transferFundsDto.toCardNumber());
 
-        TransactionEntity transferTransactionEntity = TransactionEntity.builder()
+        spendingLimitService.checkAndRecord(cardEntityFrom, balanceFrom, transferFundsDto.amount());
+        spendingLimitService.recordCredit(balanceTo);
+
+        TransactionEntity transferTransactionEntity = transactionEntityRepository.save(TransactionEntity.builder()
                 .sourceCardEntity(cardEntityFrom)
                 .targetCardEntity(cardEntityTo)
                 .amount(transferFundsDto.amount())
-                .currency(Currency.fromString(transferFundsDto.currency()))
+                .currency(currency)
                 .transactionType(TransactionType.TRANSFER)
                 .transactionStatus(TransactionStatus.SUCCESS)
-                .build();
+                .build());
 
-        cardEntityRepository.save(cardEntityFrom);
-        cardEntityRepository.save(cardEntityTo);
-        transferTransactionEntity = transactionEntityRepository.save(transferTransactionEntity);
-
-        return transactionEntityMapper.toTransactionResponse(transferTransactionEntity);
+        ledgerService.transfer(transferTransactionEntity, balanceFrom, balanceTo, transferFundsDto.amount());
 
+        return transferTransactionEntity;
     }
 
-    @Cacheable(value = "key:withdrawal", key = "#idempotencyKey", unless = "#result == null")
-    @Transactional
-    public TransactionResponseDTO withdrawalFromCard(WithdrawFundsRequestDTO withdrawDto, String idempotencyKey){
+    private TransactionResponseDTO withdraw(WithdrawFundsRequestDTO withdrawDto, LockedCards lockedCards, long idCustomer){
 
-        CardEntity cardEntityFrom = cardEntityRepository.findByCardNumberWithLock(withdrawDto.cardNumber())
-                .orElseThrow(()-> new CardWithNumberNoExistsException(withdrawDto.cardNumber()));
-
-        long idCustomer = authService.getCustomerId();
+        CardEntity cardEntityFrom = lockedCards.get(withdrawDto.cardNumber());
+        CardBalanceEntity balanceFrom = lockedCards.balance(withdrawDto.cardNumber());
 
         if(idCustomer != cardEntityFrom.getCustomerEntity().getId()){
             throw new NoAccessToOtherDataException();
@@ -180,58 +361,56 @@ public class CustomerCardService {
             throw new CardBlockedException();
         }
 
-        if (cardEntityFrom.getBalance().compareTo(amountWithdraw) < 0) {
+        if (balanceFrom.getBalance().compareTo(amountWithdraw) < 0) {
             throw new InsufficientFundsException();
         }
 
-        cardEntityFrom.setBalance(cardEntityFrom.getBalance().subtract(amountWithdraw));
+        Currency currency = Currency.fromString(withdrawDto.currency());
+
+        spendingLimitService.checkAndRecord(cardEntityFrom, balanceFrom, amountWithdraw);
 
         TransactionEntity withdrawTransactionEntity = TransactionEntity.builder()
                 .sourceCardEntity(cardEntityFrom)
                 .amount(amountWithdraw)
-                .currency(Currency.fromString(withdrawDto.currency()))
+                .currency(currency)
                 .transactionType(TransactionType.DEBIT)
                 .transactionStatus(TransactionStatus.SUCCESS)
                 .build();
 
         withdrawTransactionEntity = transactionEntityRepository.save(withdrawTransactionEntity);
 
-        cardEntityRepository.save(cardEntityFrom);
+        ledgerService.debit(withdrawTransactionEntity, balanceFrom, amountWithdraw);
 
         return transactionEntityMapper.toTransactionResponse(withdrawTransactionEntity);
 
     }
 
-    @Cacheable(value = "key:replenishment", key = "#idempotencyKey", unless = "#result == null")
-    @Transactional
-    public TransactionResponseDTO cardReplenishment(ReplenishmentCardRequestDTO replenishmentCardDto, String idempotencyKey) {
+    private TransactionResponseDTO replenish(ReplenishmentCardRequestDTO replenishmentCardDto,
+                                             LockedCards lockedCards, long idCustomer) {
 
-        CardEntity cardEntity = cardEntityRepository.findByCardNumberWithLock(replenishmentCardDto.cardNumber())
-                .orElseThrow(()-> new CardWithNumberNoExistsException(replenishmentCardDto.cardNumber()));
-
-        long idCustomer = authService.getCustomerId();
+        CardEntity cardEntity = lockedCards.get(replenishmentCardDto.cardNumber());
+        CardBalanceEntity cardBalance = lockedCards.balance(replenishmentCardDto.cardNumber());
 
         if(idCustomer != cardEntity.getCustomerEntity().getId()){
             throw new NoAccessToOtherDataException();
         }
 
-        cardEntity.setBalance(cardEntity.getBalance().add(replenishmentCardDto.amount()));
+        Currency currency = Currency.fromString(replenishmentCardDto.currency());
+
+        spendingLimitService.recordCredit(cardBalance);
 
         TransactionEntity replenishTransactionEntity = TransactionEntity.builder()
                 .sourceCardEntity(cardEntity)
                 .amount(replenishmentCardDto.amount())
                 .transactionType(TransactionType.CREDIT)
                 .transactionStatus(TransactionStatus.SUCCESS)
-                .currency(Currency.fromString(replenishmentCardDto.currency()))
+                .currency(currency)
                 .build();
 
         replenishTransactionEntity = transactionEntityRepository.save(replenishTransactionEntity);
 
-        TransactionResponseDTO transactionResponseDTO = transactionEntityMapper
-                .toTransactionResponse(replenishTransactionEntity);
-
-        cardEntityRepository.save(cardEntity);
+        ledgerService.credit(replenishTransactionEntity, cardBalance, replenishmentCardDto.amount());
 
-        return transactionResponseDTO;
+        return transactionEntityMapper.toTransactionResponse(replenishTransactionEntity);
     }
 }
@@ -9,7 +9,6 @@ import com.example.bankcards.repository.CustomerEntityRepository;
 import com.example.bankcards.repository.RoleRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.*;
 import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -32,7 +31,6 @@ public class CustomerService {
      * Метод создание пользователя
      * @return dto зарегистрированного пользователя
      */
-    @Cacheable(value = "key:register", key = "#idempotencyKey", unless = "#result == null")
     @Transactional
     public CustomerRegistrationResponseDTO registerCustomer(CustomerRegistrationRequestDTO customerDto, String idempotencyKey) {
         if(customerEntityRepository.findByEmail(customerDto.email()).isPresent()) {
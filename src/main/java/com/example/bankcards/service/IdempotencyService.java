@@ -1,50 +1,321 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.cache.NearCache;
 import com.example.bankcards.exception.ErrorValueIdempotencyKeyException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import com.example.bankcards.exception.idempotency.IdempotencyKeyReusedException;
+import com.example.bankcards.exception.idempotency.IdempotencyRequestInProgressException;
+import com.example.bankcards.jfr.IdempotencyCacheWriteEvent;
+import com.example.bankcards.service.idempotency.IdempotencyLedger;
+import com.example.bankcards.service.idempotency.IdempotencyRecord;
+import com.example.bankcards.service.idempotency.IdempotencyScope;
+import com.example.bankcards.service.idempotency.RequestFingerprint;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.*;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
+/**
+ * Идемпотентное выполнение изменяющих операций API.
+ * <ol>
+ *     <li>Готовый ответ ищется в кэше (в режиме NEAR - сначала в памяти процесса, затем в Redis),
+ *     при промахе - в журнале идемпотентности в базе (IdempotencyLedger).</li>
+ *     <li>Повтор с тем же ключом, пришедший на этот же узел во время выполнения,
+ *     не выполняется второй раз, а ждёт результат первого запроса.</li>
+ *     <li>Первый запрос атомарно занимает ключ в кэше (в Redis - SET NX) записью PROCESSING;
+ *     если ключ уже занят другим узлом, повтор получает 409. Запись PROCESSING живёт
+ *     idempotency.claim-ttl, а не весь TTL кэша: ключ узла, упавшего во время запроса, скоро освобождается.</li>
+ *     <li>Ответ записывается в журнал в транзакции операции, а в Redis - асинхронно после неё.
+ *     При ошибке ключ освобождается, и клиент может повторить запрос.</li>
+ * </ol>
+ * Redis только ускоряет повторы: при его потере или недоступности повтор найдёт ответ в журнале,
+ * а параллельный дубликат не зафиксируется из-за уникального ключа журнала.
+ * Ключ действует в пределах операции (IdempotencyScope) и аутентифицированного пользователя.
+ * Вместе с ответом хранится отпечаток тела запроса (RequestFingerprint): повтор ключа
+ * с другим телом получает 422, а не ответ первого запроса.
+ */
 @Slf4j
 @Service
 public class IdempotencyService {
 
-//    private final RedisTemplate<String, Object> redisTemplate;
-//    private final ObjectMapper mapper;
-//    private final long timeLifeRecordDB;
-//
-//    public IdempotencyService(@Value("${cache.ttl}") long timeLifeRecordDB, ObjectMapper mapper, RedisTemplate<String, Object> redisTemplate){
-//        this.timeLifeRecordDB = timeLifeRecordDB;
-//        this.mapper = mapper;
-//        this.redisTemplate = redisTemplate;
-//    }
-//
-//    public boolean idempotencyKeyCheck(String idempotencyKey) {
-//
-//        if (idempotencyKey.isBlank()) {
-//            throw new ErrorValueIdempotencyKeyException();
-//        }
-//        return redisTemplate.hasKey(idempotencyKey);
-//
-//    }
-//
-//    @Transactional(readOnly = true)
-//    public <T> T getResultByIdempotencyKey(String idempotencyKey, Class<T> clazz) {
-//
-//        var resultOperation = redisTemplate.opsForValue().get(idempotencyKey);
-//
-//        return mapper.convertValue(resultOperation, clazz);
-//    }
-//
-//    @Transactional
-//    public void saveIdempotencyKey(String idempotencyKey, Object resultMethod) {
-//
-//        redisTemplate.opsForValue().set(idempotencyKey, resultMethod, timeLifeRecordDB, TimeUnit.SECONDS);
-//    }
+    /**
+     * Максимальная длина заголовка Idempotency-Key.
+     */
+    public static final int MAX_KEY_LENGTH = 128;
+
+    /**
+     * Длина столбца idempotency_record.idempotency_key: ключ вместе с пользователем должен в него входить.
+     */
+    private static final int MAX_STORED_KEY_LENGTH = 320;
+
+    private final Map<IdempotencyScope, Cache> caches = new EnumMap<>(IdempotencyScope.class);
+    private final ConcurrentMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.randomUUID().toString();
+    private final IdempotencyLedger idempotencyLedger;
+    private final ThreadPoolExecutor fanOutExecutor;
+    private final long inFlightWaitMillis;
+    private final Timer cacheHitTimer;
+    private final Timer cacheMissTimer;
+    private final Timer ledgerHitTimer;
+    private final Timer ledgerMissTimer;
+
+    public IdempotencyService(CacheManager cacheManager,
+                              IdempotencyLedger idempotencyLedger,
+                              MeterRegistry meterRegistry,
+                              @Value("${idempotency.in-flight-wait-ms}") long inFlightWaitMillis,
+                              @Value("${idempotency.fan-out.threads}") int fanOutThreads,
+                              @Value("${idempotency.fan-out.queue-capacity}") int fanOutQueueCapacity) {
+        for (IdempotencyScope scope : IdempotencyScope.values()) {
+            // запросы выполняются вне транзакций, откладывать записи в кэш до фиксации не нужно
+            Cache cache = cacheManager.getCache(scope.getCacheName());
+            caches.put(scope, cache instanceof TransactionAwareCacheDecorator decorator ? decorator.getTargetCache() : cache);
+        }
+        this.idempotencyLedger = idempotencyLedger;
+        this.inFlightWaitMillis = inFlightWaitMillis;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("idempotency-fan-out-");
+        threadFactory.setDaemon(true);
+        // Запись в Redis не обязательна: при переполнении очереди она отбрасывается, ответ остаётся в журнале.
+        this.fanOutExecutor = new ThreadPoolExecutor(fanOutThreads, fanOutThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(fanOutQueueCapacity), threadFactory, new ThreadPoolExecutor.DiscardPolicy());
+
+        this.cacheHitTimer = lookupTimer(meterRegistry, "idempotency.cache.lookup", "hit");
+        this.cacheMissTimer = lookupTimer(meterRegistry, "idempotency.cache.lookup", "miss");
+        this.ledgerHitTimer = lookupTimer(meterRegistry, "idempotency.ledger.lookup", "hit");
+        this.ledgerMissTimer = lookupTimer(meterRegistry, "idempotency.ledger.lookup", "miss");
+    }
+
+    /**
+     * Выполняет действие не больше одного раза на ключ идемпотентности и возвращает его ответ;
+     * повторы с тем же ключом и тем же телом запроса получают сохранённый ответ.
+     * @param request тело запроса, по которому повтор отличается от повторного использования ключа
+     * @throws ErrorValueIdempotencyKeyException если ключ пустой или длиннее MAX_KEY_LENGTH
+     * @throws IdempotencyRequestInProgressException если ключ занят запросом, который ещё выполняется
+     * @throws IdempotencyKeyReusedException если ключ уже использован запросом с другим телом
+     */
+    public <T> T execute(IdempotencyScope scope, String idempotencyKey, Object request,
+                         Class<T> responseType, Supplier<T> action) {
+        // длинный ключ не поместится в журнал, и запись ответа упадёт уже после операции
+        if (idempotencyKey == null || idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new ErrorValueIdempotencyKeyException();
+        }
+        String key = cacheKey(idempotencyKey);
+        String fingerprint = RequestFingerprint.of(request);
+        Cache cache = caches.get(scope);
+
+        long start = System.nanoTime();
+        IdempotencyRecord stored = readCache(cache, key);
+        if (stored != null && stored.isCompleted()) {
+            cacheHitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return replay(stored, fingerprint, responseType);
+        }
+        cacheMissTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        String inFlightKey = scope.getCacheName() + ':' + key;
+        InFlight execution = new InFlight(fingerprint, new CompletableFuture<>());
+        InFlight running = inFlight.putIfAbsent(inFlightKey, execution);
+        if (running != null) {
+            if (!Objects.equals(running.fingerprint(), fingerprint)) {
+                throw new IdempotencyKeyReusedException();
+            }
+            return responseType.cast(await(running.result()));
+        }
+
+        try {
+            T response = executeClaimed(scope, cache, key, fingerprint, responseType, action);
+            execution.result().complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            execution.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(inFlightKey, execution);
+        }
+    }
+
+    /**
+     * Вариант execute для операций без ответа.
+     */
+    public void execute(IdempotencyScope scope, String idempotencyKey, Object request, Runnable action) {
+        execute(scope, idempotencyKey, request, Void.class, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOutExecutor.shutdown();
+    }
+
+    private <T> T executeClaimed(IdempotencyScope scope, Cache cache, String key, String fingerprint,
+                                 Class<T> responseType, Supplier<T> action) {
+        long start = System.nanoTime();
+        IdempotencyRecord committed = idempotencyLedger.find(scope, key).orElse(null);
+        (committed != null ? ledgerHitTimer : ledgerMissTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (committed != null) {
+            publish(cache, key, committed);
+            return replay(committed, fingerprint, responseType);
+        }
+
+        IdempotencyRecord existing = claim(cache, key, fingerprint);
+        if (existing != null) {
+            if (!existing.matches(fingerprint)) {
+                throw new IdempotencyKeyReusedException();
+            }
+            if (!existing.isCompleted()) {
+                throw new IdempotencyRequestInProgressException();
+            }
+            return responseType.cast(existing.response());
+        }
+
+        T response;
+        boolean recorded;
+        idempotencyLedger.begin(scope, key, fingerprint);
+        try {
+            response = action.get();
+        } catch (DataIntegrityViolationException e) {
+            evict(cache, key);
+            // дубликат с другого узла успел зафиксироваться раньше - отдаём его ответ
+            IdempotencyRecord concurrent = idempotencyLedger.find(scope, key).orElseThrow(() -> e);
+            publish(cache, key, concurrent);
+            return replay(concurrent, fingerprint, responseType);
+        } catch (RuntimeException e) {
+            evict(cache, key);
+            throw e;
+        } finally {
+            recorded = idempotencyLedger.end();
+        }
+
+        if (!recorded) {
+            idempotencyLedger.recordSeparately(scope, key, fingerprint, response);
+        }
+        publish(cache, key, IdempotencyRecord.completed(response, fingerprint));
+        return response;
+    }
+
+    private static <T> T replay(IdempotencyRecord record, String fingerprint, Class<T> responseType) {
+        if (!record.matches(fingerprint)) {
+            throw new IdempotencyKeyReusedException();
+        }
+        return responseType.cast(record.response());
+    }
+
+    /**
+     * Готовый ответ сразу кладётся в память процесса, а в Redis - в фоне, вне пути запроса.
+     */
+    private void publish(Cache cache, String key, IdempotencyRecord record) {
+        if (cache instanceof CaffeineCache) {
+            cache.put(key, record);
+            return;
+        }
+        if (cache instanceof NearCache nearCache) {
+            nearCache.putLocally(key, record);
+        }
+        fanOutExecutor.execute(() -> {
+            IdempotencyCacheWriteEvent event = new IdempotencyCacheWriteEvent();
+            event.begin();
+            event.cacheName = cache.getName();
+            try {
+                cache.put(key, record);
+                event.success = true;
+            } catch (RuntimeException e) {
+                log.warn("Idempotency record not written to cache {}: {}", cache.getName(), e.getMessage());
+            } finally {
+                event.commit();
+            }
+        });
+    }
+
+    private static Timer lookupTimer(MeterRegistry meterRegistry, String name, String result) {
+        return Timer.builder(name)
+                .description("Idempotency response lookups by result; a hit replays the stored response")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static IdempotencyRecord readCache(Cache cache, String key) {
+        try {
+            return cache.get(key, IdempotencyRecord.class);
+        } catch (RuntimeException e) {
+            log.warn("Idempotency cache {} unavailable: {}", cache.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private IdempotencyRecord claim(Cache cache, String key, String fingerprint) {
+        try {
+            Cache.ValueWrapper existing = cache.putIfAbsent(key, IdempotencyRecord.processing(nodeId, fingerprint));
+            return existing != null && existing.get() instanceof IdempotencyRecord record ? record : null;
+        } catch (RuntimeException e) {
+            // без Redis повторное выполнение отсекает уникальный ключ журнала
+            log.warn("Idempotency key not claimed in cache {}: {}", cache.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static void evict(Cache cache, String key) {
+        try {
+            cache.evict(key);
+        } catch (RuntimeException e) {
+            log.warn("Idempotency key not released in cache {}: {}", cache.getName(), e.getMessage());
+        }
+    }
+
+    private Object await(CompletableFuture<Object> running) {
+        try {
+            return running.get(inFlightWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IdempotencyRequestInProgressException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyRequestInProgressException();
+        }
+    }
+
+    private record InFlight(String fingerprint, CompletableFuture<Object> result) {
+    }
+
+    private static String cacheKey(String idempotencyKey) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return idempotencyKey;
+        }
+        String key = authentication.getName() + ':' + idempotencyKey;
+        if (key.length() <= MAX_STORED_KEY_LENGTH) {
+            return key;
+        }
+        // имя пользователя слишком длинное для столбца журнала - вместо него его SHA-256
+        return RequestFingerprint.of(authentication.getName()) + ':' + idempotencyKey;
+    }
 }
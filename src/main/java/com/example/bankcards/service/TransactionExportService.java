@@ -0,0 +1,40 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
+import com.example.bankcards.repository.TransactionEntityRepository;
+import com.example.bankcards.service.export.ExportFormat;
+import com.example.bankcards.service.export.TransactionExportWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка полной истории транзакций карты.
+ * Строки читаются однонаправленным курсором с fetch size и сразу уходят в ответ;
+ * права на карту проверяются вызывающим сервисом до начала выгрузки.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class TransactionExportService {
+
+    private final TransactionEntityRepository transactionEntityRepository;
+    private final TransactionExportWriter transactionExportWriter;
+
+    /**
+     * Транзакция только для чтения обязательна: в Postgres курсор с fetch size работает
+     * лишь при выключенном autocommit, иначе драйвер вычитывает весь результат в память.
+     */
+    @Transactional(readOnly = true)
+    public void exportCardHistory(Long cardId, ExportFormat format, OutputStream outputStream) throws IOException {
+        try (Stream<TransactionResponseDTO> transactions = transactionEntityRepository.streamHistory(cardId)) {
+            long written = transactionExportWriter.write(transactions, format, outputStream);
+            log.debug("Exported {} transactions of card {} as {}", written, cardId, format);
+        }
+    }
+}
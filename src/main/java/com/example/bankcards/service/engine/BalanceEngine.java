@@ -0,0 +1,267 @@
+package com.example.bankcards.service.engine;
+
+import com.example.bankcards.datasource.ReadFromPrimary;
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.exception.card.CardLockTimeoutException;
+import com.example.bankcards.jfr.MoneyMovementPhase;
+import com.example.bankcards.jfr.MoneyMovementProfile;
+import com.example.bankcards.repository.CardBalanceEntityRepository;
+import com.example.bankcards.service.idempotency.IdempotencyLedger;
+import com.example.bankcards.service.lock.CardRowLocker;
+import com.example.bankcards.service.lock.LockedCards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Движок балансов с одним писателем на шард - замена CardOperationExecutor для самых нагруженных карт.
+ * Карты раскладываются по шардам по id; балансы шарда живут в памяти его потока,
+ * операции идут в ограниченную очередь шарда и фиксируются пакетами (см. {@link BalanceShard}).
+ * Запрос ждёт фиксации своего пакета: ответ уходит клиенту только после записи в базу,
+ * поэтому после перезапуска состояние восстанавливается чтением card_balance - отдельного журнала нет.
+ * <p>
+ * Операция над картами разных шардов идёт в две фазы: вызывающий поток по возрастанию id карты
+ * забирает у шардов их балансы (шард откладывает свои операции над ними), проводит операцию
+ * своей транзакцией и возвращает балансы - изменёнными после фиксации или восстановленными после отката.
+ * <p>
+ * Балансы в памяти верны, только пока движок - единственный писатель card_balance,
+ * поэтому он включается на одном узле записи (card.engine.enabled) и заменяет на нём CardOperationExecutor.
+ * Запись мимо движка обнаруживается по версии строки: пакет падает, балансы перечитываются.
+ * Карты читаются заранее без блокировки только для раскладки по шардам; в транзакции операции
+ * движок берёт строки их балансов и перечитывает карты (см. {@link CardRowLocker#lockAvailable(Map)}),
+ * поэтому блокировка карты или смена лимитов не проскочат между проверкой и фиксацией.
+ * Баланс, занятый такой сменой, движок не ждёт - операция над картой получает отказ.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "card.engine.enabled", havingValue = "true")
+public class BalanceEngine {
+
+    private final List<BalanceShard> shards = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final CardRowLocker cardRowLocker;
+    private final BalanceStore balanceStore;
+    private final TransactionTemplate transactionTemplate;
+    private final IdempotencyLedger idempotencyLedger;
+    private final long timeoutMillis;
+    private final Counter crossShardCounter;
+    private final Counter rejectedCounter;
+
+    public BalanceEngine(CardRowLocker cardRowLocker,
+                         CardBalanceEntityRepository cardBalanceEntityRepository,
+                         TransactionTemplate transactionTemplate,
+                         IdempotencyLedger idempotencyLedger,
+                         MeterRegistry meterRegistry,
+                         @Value("${card.engine.shards}") int shardCount,
+                         @Value("${card.engine.queue-capacity}") int queueCapacity,
+                         @Value("${card.engine.max-batch}") int maxBatch,
+                         @Value("${card.engine.timeout-ms}") long timeoutMillis) {
+        this.cardRowLocker = cardRowLocker;
+        this.balanceStore = new BalanceStore(cardBalanceEntityRepository);
+        this.transactionTemplate = transactionTemplate;
+        this.idempotencyLedger = idempotencyLedger;
+        this.timeoutMillis = timeoutMillis;
+        this.crossShardCounter = Counter.builder("card.engine.cross.shard")
+                .description("Card operations spanning several engine shards")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("card.engine.rejected")
+                .description("Card operations rejected because an engine shard queue stayed full or did not answer in time")
+                .register(meterRegistry);
+        DistributionSummary batchSize = DistributionSummary.builder("card.engine.batch.size")
+                .description("Card operations committed by one engine shard transaction")
+                .register(meterRegistry);
+        Counter batchSplitCounter = Counter.builder("card.engine.batch.splits")
+                .description("Engine batches replayed one operation at a time after a failed commit")
+                .register(meterRegistry);
+        Counter businessRejectedCounter = Counter.builder("card.engine.batch.rejections")
+                .description("Engine batch operations rejected by a business check without failing their batch")
+                .register(meterRegistry);
+
+        for (int i = 0; i < shardCount; i++) {
+            BalanceShard shard = new BalanceShard(i, new ArrayBlockingQueue<>(queueCapacity), balanceStore,
+                    transactionTemplate, idempotencyLedger, cardRowLocker, maxBatch, batchSize, batchSplitCounter,
+                    businessRejectedCounter);
+            Thread thread = new Thread(shard, "balance-shard-" + i);
+            thread.start();
+            shards.add(shard);
+            threads.add(thread);
+        }
+        log.info("Balance engine started with {} shards", shardCount);
+    }
+
+    /**
+     * Выполняет операцию над картами так же, как CardOperationExecutor.execute:
+     * операция получает карты с их балансами, проводит изменения и возвращает ответ,
+     * который записывается в журнал идемпотентности в той же транзакции.
+     * Карты читаются из основной базы - операции нельзя отставание реплики.
+     */
+    @ReadFromPrimary
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Collection<String> cardNumbers, Function<LockedCards, T> operation) {
+        Map<String, CardEntity> cards = cardRowLocker.cards(cardNumbers);
+        List<Long> cardIds = cards.values().stream().map(CardEntity::getId).distinct().sorted().toList();
+        MoneyMovementProfile.cardIds(cardIds);
+
+        Set<BalanceShard> involved = cardIds.stream().map(this::shardOf).collect(Collectors.toSet());
+        if (involved.size() > 1) {
+            crossShardCounter.increment();
+            return executeAcrossShards(cards, cardIds, operation);
+        }
+
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        submit(involved.iterator().next(), new ShardMessage.Execute(cards, cardIds,
+                (Function<LockedCards, Object>) operation, idempotencyLedger.currentKey(),
+                MoneyMovementProfile.current(), result));
+        return (T) await(result);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        shards.forEach(BalanceShard::stop);
+        for (Thread thread : threads) {
+            thread.join(timeoutMillis);
+        }
+    }
+
+    private <T> T executeAcrossShards(Map<String, CardEntity> cards, List<Long> cardIds,
+                                      Function<LockedCards, T> operation) {
+        Map<Long, CardBalanceEntity> balances = new HashMap<>();
+        Map<Long, BalanceStore.Snapshot> before = new HashMap<>();
+        boolean evict = false;
+        long[] callbackEnd = new long[1];
+        MoneyMovementProfile.attempt();
+        try {
+            // балансы, взятые у шардов, - аналог блокировки строк в CardOperationExecutor
+            long start = System.nanoTime();
+            for (Long cardId : cardIds) {
+                CompletableFuture<CardBalanceEntity> lent = new CompletableFuture<>();
+                submit(shardOf(cardId), new ShardMessage.Lend(cardId, lent));
+                balances.put(cardId, await(lent));
+            }
+            balances.forEach((cardId, account) -> before.put(cardId, BalanceStore.Snapshot.of(account)));
+            MoneyMovementProfile.addPhase(MoneyMovementPhase.ROW_LOCK, System.nanoTime() - start);
+
+            return transactionTemplate.execute(status -> {
+                Map<String, CardEntity> available = cardRowLocker.lockAvailable(cards);
+                if (available.size() != cards.size()) {
+                    throw new CardLockTimeoutException();
+                }
+                long loaded = System.nanoTime();
+                T result = operation.apply(new LockedCards(available, balances));
+                long applied = System.nanoTime();
+                MoneyMovementProfile.addPhase(MoneyMovementPhase.BUSINESS, applied - loaded);
+                idempotencyLedger.record(result);
+                balanceStore.write(balances.values(), before);
+                callbackEnd[0] = System.nanoTime();
+                MoneyMovementProfile.addPhase(MoneyMovementPhase.LEDGER_WRITE, callbackEnd[0] - applied);
+                return result;
+            });
+        } catch (RuntimeException e) {
+            before.forEach((cardId, snapshot) -> snapshot.restore(balances.get(cardId)));
+            evict = e instanceof OptimisticLockingFailureException;
+            throw e;
+        } finally {
+            if (callbackEnd[0] != 0) {
+                MoneyMovementProfile.addPhase(MoneyMovementPhase.COMMIT, System.nanoTime() - callbackEnd[0]);
+            }
+            giveBack(balances, evict);
+        }
+    }
+
+    private void giveBack(Map<Long, CardBalanceEntity> balances, boolean evict) {
+        balances.entrySet().stream()
+                .collect(Collectors.groupingBy(entry -> shardOf(entry.getKey()),
+                        Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)))
+                .forEach((shard, accounts) -> {
+                    ShardMessage.Return returned = new ShardMessage.Return(accounts, evict);
+                    // возврат нельзя потерять: без него карты шарда останутся отданными
+                    boolean interrupted = false;
+                    while (true) {
+                        try {
+                            if (shard.offer(returned, timeoutMillis)) {
+                                break;
+                            }
+                            log.warn("Balance shard {} queue is full, retrying return of {} cards", shard.index(), accounts.size());
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+    }
+
+    private void submit(BalanceShard shard, ShardMessage message) {
+        try {
+            if (shard.offer(message, timeoutMillis)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedCounter.increment();
+        throw new CardLockTimeoutException();
+    }
+
+    /**
+     * Ждёт ответа шарда. Если не дождались, ответ отменяется; шард не выполняет отменённые операции
+     * и не отдаёт баланс по отменённому запросу. Если шард успел ответить, ответ используется.
+     * Операция, которую шард уже выполняет, может зафиксироваться и после таймаута -
+     * повтор с тем же ключом идемпотентности найдёт её в журнале.
+     */
+    private <R> R await(CompletableFuture<R> future) {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (future.cancel(false)) {
+                rejectedCounter.increment();
+                throw new CardLockTimeoutException();
+            }
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return cause instanceof RuntimeException runtimeException ? runtimeException : new IllegalStateException(cause);
+    }
+
+    private BalanceShard shardOf(Long cardId) {
+        return shards.get(Math.floorMod(Long.hashCode(cardId * 0x9E3779B97F4A7C15L), shards.size()));
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.bankcards.service.engine;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.exception.card.CardBlockedException;
+import com.example.bankcards.exception.card.CardLockTimeoutException;
+import com.example.bankcards.exception.card.InsufficientFundsException;
+import com.example.bankcards.exception.card.LimitExhaustedException;
+import com.example.bankcards.exception.customer.NoAccessToOtherDataException;
+import com.example.bankcards.jfr.MoneyMovementPhase;
+import com.example.bankcards.jfr.MoneyMovementProfile;
+import com.example.bankcards.service.idempotency.IdempotencyLedger;
+import com.example.bankcards.service.lock.CardRowLocker;
+import com.example.bankcards.service.lock.LockedCards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Шард движка балансов: один поток - единственный писатель балансов своих карт.
+ * Поток забирает из очереди до maxBatch сообщений и проводит все готовые операции
+ * одной транзакцией (групповая фиксация): проводки и записи журнала идемпотентности
+ * вставляются пакетом, каждый изменившийся баланс пишется одним UPDATE.
+ * Блокировок строк балансов и повторов нет - баланс в памяти уже актуален.
+ * Деловой отказ операции (нет средств, исчерпан лимит) случается до её первой записи:
+ * он достаётся только этой операции, остальные фиксируются тем же пакетом.
+ * Если же транзакция пакета не прошла (конфликт ключа идемпотентности, сбой базы),
+ * балансы в памяти откатываются и операции пакета проводятся по одной,
+ * так что ошибка одной операции не роняет соседей.
+ * Балансы читаются из базы при первом обращении к карте и после рассогласования с базой.
+ */
+@Slf4j
+final class BalanceShard implements Runnable {
+
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Деловые отказы, которые операции выдают до первой записи и которые не роняют пакет.
+     */
+    private static final Set<Class<? extends RuntimeException>> REJECTIONS = Set.of(
+            InsufficientFundsException.class,
+            LimitExhaustedException.class,
+            CardBlockedException.class,
+            NoAccessToOtherDataException.class);
+
+    private final int index;
+    private final BlockingQueue<ShardMessage> queue;
+    private final BalanceStore balanceStore;
+    private final TransactionTemplate transactionTemplate;
+    private final IdempotencyLedger idempotencyLedger;
+    private final CardRowLocker cardRowLocker;
+    private final int maxBatch;
+    private final DistributionSummary batchSize;
+    private final Counter batchSplitCounter;
+    private final Counter rejectedCounter;
+
+    private final Map<Long, CardBalanceEntity> accounts = new HashMap<>();
+    private final Set<Long> lent = new HashSet<>();
+    private final List<ShardMessage> parked = new ArrayList<>();
+    private final Deque<ShardMessage> ready = new ArrayDeque<>();
+    private volatile boolean running = true;
+
+    /**
+     * Отказ операции в пакете, отдаётся ей после фиксации остальных.
+     */
+    private record Rejected(RuntimeException cause) {
+    }
+
+    BalanceShard(int index,
+                 BlockingQueue<ShardMessage> queue,
+                 BalanceStore balanceStore,
+                 TransactionTemplate transactionTemplate,
+                 IdempotencyLedger idempotencyLedger,
+                 CardRowLocker cardRowLocker,
+                 int maxBatch,
+                 DistributionSummary batchSize,
+                 Counter batchSplitCounter,
+                 Counter rejectedCounter) {
+        this.index = index;
+        this.queue = queue;
+        this.balanceStore = balanceStore;
+        this.transactionTemplate = transactionTemplate;
+        this.idempotencyLedger = idempotencyLedger;
+        this.cardRowLocker = cardRowLocker;
+        this.maxBatch = maxBatch;
+        this.batchSize = batchSize;
+        this.batchSplitCounter = batchSplitCounter;
+        this.rejectedCounter = rejectedCounter;
+    }
+
+    boolean offer(ShardMessage message, long timeoutMillis) throws InterruptedException {
+        return running && queue.offer(message, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    int index() {
+        return index;
+    }
+
+    /**
+     * Останавливает приём сообщений; поток дорабатывает то, что уже в очереди.
+     */
+    void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        List<ShardMessage> messages = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty() || !ready.isEmpty()) {
+            try {
+                while (!ready.isEmpty() && messages.size() < maxBatch) {
+                    messages.add(ready.poll());
+                }
+                if (messages.isEmpty()) {
+                    ShardMessage first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    messages.add(first);
+                }
+                queue.drainTo(messages, maxBatch - messages.size());
+                process(messages);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Balance shard {} failed to process {} messages", index, messages.size(), e);
+            } finally {
+                messages.clear();
+            }
+        }
+        failRemaining();
+    }
+
+    private void process(List<ShardMessage> messages) {
+        List<ShardMessage.Execute> batch = new ArrayList<>();
+        List<ShardMessage.Lend> lends = new ArrayList<>();
+        for (ShardMessage message : messages) {
+            if (message instanceof ShardMessage.Return returned) {
+                giveBack(returned);
+            } else if (message instanceof ShardMessage.Lend lend) {
+                if (lent.contains(lend.cardId())) {
+                    parked.add(lend);
+                } else {
+                    // отдаётся после фиксации пакета: баланс мог измениться операцией из этого же пакета
+                    lent.add(lend.cardId());
+                    lends.add(lend);
+                }
+            } else if (message instanceof ShardMessage.Execute execute && !execute.result().isDone()) {
+                if (execute.cardIds().stream().anyMatch(lent::contains)) {
+                    parked.add(execute);
+                } else {
+                    batch.add(execute);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            runBatch(batch);
+        }
+        if (!lends.isEmpty()) {
+            lend(lends);
+        }
+        releaseParked();
+    }
+
+    private void runBatch(List<ShardMessage.Execute> batch) {
+        batchSize.record(batch.size());
+        Map<Long, BalanceStore.Snapshot> before = new HashMap<>();
+        List<Object> results = new ArrayList<>(batch.size());
+        long[] callbackEnd = new long[1];
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                loadMissing(batch.stream().flatMap(execute -> execute.cardIds().stream()).toList());
+                Map<String, CardEntity> cards = lockCards(batch);
+                for (ShardMessage.Execute execute : batch) {
+                    results.add(applyOrReject(execute, cards, before, status));
+                }
+                long applied = System.nanoTime();
+                balanceStore.write(before.keySet().stream().map(accounts::get).toList(), before);
+                callbackEnd[0] = System.nanoTime();
+                addPhase(batch, MoneyMovementPhase.LEDGER_WRITE, callbackEnd[0] - applied);
+            });
+        } catch (RuntimeException e) {
+            before.forEach((cardId, snapshot) -> snapshot.restore(accounts.get(cardId)));
+            if (e instanceof OptimisticLockingFailureException) {
+                log.warn("Balance shard {} reloads {} card balances changed outside the engine", index, before.size());
+                accounts.keySet().removeAll(before.keySet());
+            }
+            if (batch.size() > 1) {
+                batchSplitCounter.increment();
+                // отменённые и истёкшие операции никто не ждёт - повторять их незачем
+                batch.stream()
+                        .filter(execute -> !execute.result().isDone())
+                        .forEach(execute -> runBatch(List.of(execute)));
+            } else {
+                batch.get(0).result().completeExceptionally(e);
+            }
+            return;
+        } finally {
+            if (callbackEnd[0] != 0) {
+                addPhase(batch, MoneyMovementPhase.COMMIT, System.nanoTime() - callbackEnd[0]);
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (results.get(i) instanceof Rejected rejected) {
+                batch.get(i).result().completeExceptionally(rejected.cause());
+            } else {
+                batch.get(i).result().complete(results.get(i));
+            }
+        }
+    }
+
+    /**
+     * Выполняет операцию пакета. Деловой отказ (нет средств, исчерпан лимит, карта заблокирована)
+     * операция выдаёт до первой записи - такой отказ получает только она, пакет продолжается
+     * и фиксируется без неё. Так же отказывают операции над картой, баланс которой держит смена её статуса,
+     * лимитов или удаление: шард не ждёт такую блокировку. Любая другая ошибка, как и отказ после записи,
+     * роняет транзакцию пакета.
+     */
+    private Object applyOrReject(ShardMessage.Execute execute, Map<String, CardEntity> cards,
+                                 Map<Long, BalanceStore.Snapshot> before, TransactionStatus status) {
+        if (!cards.keySet().containsAll(execute.cards().keySet())) {
+            rejectedCounter.increment();
+            return new Rejected(new CardLockTimeoutException());
+        }
+        Map<Long, BalanceStore.Snapshot> own = new HashMap<>();
+        execute.cardIds().forEach(cardId -> own.put(cardId, BalanceStore.Snapshot.of(accounts.get(cardId))));
+        try {
+            return apply(execute, cards, before);
+        } catch (RuntimeException e) {
+            boolean untouched = own.entrySet().stream()
+                    .allMatch(entry -> accounts.get(entry.getKey()).getEntrySeq() == entry.getValue().entrySeq());
+            if (!REJECTIONS.contains(e.getClass()) || !untouched || status.isRollbackOnly()) {
+                throw e;
+            }
+            rejectedCounter.increment();
+            own.forEach((cardId, snapshot) -> snapshot.restore(accounts.get(cardId)));
+            return new Rejected(e);
+        }
+    }
+
+    /**
+     * Карты всех операций пакета, чьи балансы удалось взять без ожидания, перечитанные одним запросом.
+     */
+    private Map<String, CardEntity> lockCards(List<ShardMessage.Execute> batch) {
+        Map<String, CardEntity> cards = new HashMap<>();
+        batch.forEach(execute -> cards.putAll(execute.cards()));
+        return cardRowLocker.lockAvailable(cards);
+    }
+
+    private Object apply(ShardMessage.Execute execute, Map<String, CardEntity> lockedCards,
+                         Map<Long, BalanceStore.Snapshot> before) {
+        Map<String, CardEntity> cards = new HashMap<>();
+        execute.cards().keySet().forEach(cardNumber -> cards.put(cardNumber, lockedCards.get(cardNumber)));
+        Map<Long, CardBalanceEntity> balances = new HashMap<>();
+        for (Long cardId : execute.cardIds()) {
+            CardBalanceEntity account = accounts.get(cardId);
+            before.computeIfAbsent(cardId, id -> BalanceStore.Snapshot.of(account));
+            balances.put(cardId, account);
+        }
+        // фазы операции пишутся в профиль потока запроса, который ждёт её ответа
+        return MoneyMovementProfile.runWith(execute.profile(), () -> {
+            MoneyMovementProfile.attempt();
+            long start = System.nanoTime();
+            Object result = execute.operation().apply(new LockedCards(cards, balances));
+            long applied = System.nanoTime();
+            MoneyMovementProfile.addPhase(MoneyMovementPhase.BUSINESS, applied - start);
+            idempotencyLedger.record(execute.idempotencyKey(), result);
+            MoneyMovementProfile.addPhase(MoneyMovementPhase.LEDGER_WRITE, System.nanoTime() - applied);
+            return result;
+        });
+    }
+
+    /**
+     * Запись балансов и фиксация общие для пакета: их время входит в каждую операцию пакета.
+     */
+    private static void addPhase(List<ShardMessage.Execute> batch, MoneyMovementPhase phase, long nanos) {
+        batch.forEach(execute -> MoneyMovementProfile.addPhase(execute.profile(), phase, nanos));
+    }
+
+    private void lend(List<ShardMessage.Lend> lends) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    loadMissing(lends.stream().map(ShardMessage.Lend::cardId).toList()));
+        } catch (RuntimeException e) {
+            lends.forEach(lend -> {
+                lent.remove(lend.cardId());
+                lend.result().completeExceptionally(e);
+            });
+            return;
+        }
+        for (ShardMessage.Lend lend : lends) {
+            if (!lend.result().complete(accounts.get(lend.cardId()))) {
+                // вызывающий поток уже не ждёт - баланс остаётся у шарда
+                lent.remove(lend.cardId());
+            }
+        }
+    }
+
+    private void giveBack(ShardMessage.Return returned) {
+        if (returned.evict()) {
+            accounts.keySet().removeAll(returned.accounts().keySet());
+        } else {
+            accounts.putAll(returned.accounts());
+        }
+        lent.removeAll(returned.accounts().keySet());
+    }
+
+    private void loadMissing(List<Long> cardIds) {
+        List<Long> missing = cardIds.stream().distinct().filter(cardId -> !accounts.containsKey(cardId)).toList();
+        if (!missing.isEmpty()) {
+            accounts.putAll(balanceStore.load(missing));
+        }
+    }
+
+    /**
+     * Отложенные сообщения, карты которых вернулись шарду, встают в начало следующего пакета в порядке прихода.
+     */
+    private void releaseParked() {
+        Iterator<ShardMessage> iterator = parked.iterator();
+        while (iterator.hasNext()) {
+            ShardMessage message = iterator.next();
+            boolean blocked = message instanceof ShardMessage.Lend lend
+                    ? lent.contains(lend.cardId())
+                    : ((ShardMessage.Execute) message).cardIds().stream().anyMatch(lent::contains);
+            if (!blocked) {
+                ready.add(message);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void failRemaining() {
+        List<ShardMessage> remaining = new ArrayList<>(parked);
+        remaining.addAll(ready);
+        queue.drainTo(remaining);
+        for (ShardMessage message : remaining) {
+            if (message instanceof ShardMessage.Execute execute) {
+                execute.result().completeExceptionally(new CardLockTimeoutException());
+            } else if (message instanceof ShardMessage.Lend lend) {
+                lend.result().completeExceptionally(new CardLockTimeoutException());
+            }
+        }
+    }
+}
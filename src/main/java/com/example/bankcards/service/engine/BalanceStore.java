@@ -0,0 +1,90 @@
+package com.example.bankcards.service.engine;
+
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.repository.CardBalanceEntityRepository;
+import com.example.bankcards.repository.projection.CardBalanceStateView;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Чтение и запись балансов, которые движок держит в памяти.
+ * Балансы живут вне контекста персистентности, поэтому в базу они уходят явным UPDATE
+ * с проверкой версии: если строку изменил кто-то помимо движка, транзакция падает,
+ * а не затирает чужую проводку.
+ */
+final class BalanceStore {
+
+    private final CardBalanceEntityRepository cardBalanceEntityRepository;
+
+    BalanceStore(CardBalanceEntityRepository cardBalanceEntityRepository) {
+        this.cardBalanceEntityRepository = cardBalanceEntityRepository;
+    }
+
+    /**
+     * Читает балансы из основной базы. Вызывается в транзакции для записи, чтобы не уйти на реплику.
+     */
+    Map<Long, CardBalanceEntity> load(Collection<Long> cardIds) {
+        Map<Long, CardBalanceEntity> accounts = new HashMap<>();
+        for (CardBalanceStateView state : cardBalanceEntityRepository.findStates(cardIds)) {
+            CardBalanceEntity account = CardBalanceEntity.builder()
+                    .cardId(state.getCardId())
+                    .balance(state.getBalance())
+                    .entrySeq(state.getEntrySeq())
+                    .build();
+            account.setVersion(state.getVersion());
+            accounts.put(state.getCardId(), account);
+        }
+        cardIds.stream()
+                .filter(cardId -> !accounts.containsKey(cardId))
+                .findFirst()
+                .ifPresent(cardId -> {
+                    throw new IllegalStateException("Card " + cardId + " has no balance");
+                });
+        return accounts;
+    }
+
+    /**
+     * Записывает изменившиеся балансы по возрастанию id карты - тот же порядок блокировок строк,
+     * что у CardRowLocker, поэтому параллельные транзакции шардов не взаимоблокируются.
+     * Версия в памяти сдвигается вместе с базой.
+     * @throws OptimisticLockingFailureException если строку баланса изменили мимо движка
+     */
+    void write(Collection<CardBalanceEntity> accounts, Map<Long, Snapshot> before) {
+        LocalDateTime now = LocalDateTime.now();
+        accounts.stream()
+                .filter(account -> account.getEntrySeq() != before.get(account.getCardId()).entrySeq())
+                .sorted(Comparator.comparing(CardBalanceEntity::getCardId))
+                .forEach(account -> {
+                    Integer version = before.get(account.getCardId()).version();
+                    int updated = cardBalanceEntityRepository.updateIfVersion(account.getCardId(),
+                            account.getBalance(), account.getEntrySeq(), version, now);
+                    if (updated == 0) {
+                        throw new OptimisticLockingFailureException(
+                                "Card balance " + account.getCardId() + " changed outside the balance engine");
+                    }
+                    account.setVersion(version + 1);
+                });
+    }
+
+    /**
+     * Состояние баланса до операции - для отката в памяти, если транзакция не зафиксировалась.
+     */
+    record Snapshot(BigDecimal balance, long entrySeq, Integer version) {
+
+        static Snapshot of(CardBalanceEntity account) {
+            return new Snapshot(account.getBalance(), account.getEntrySeq(), account.getVersion());
+        }
+
+        void restore(CardBalanceEntity account) {
+            account.setBalance(balance);
+            account.setEntrySeq(entrySeq);
+            account.setVersion(version);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.bankcards.service.engine;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.jfr.MoneyMovementProfile;
+import com.example.bankcards.service.idempotency.IdempotencyLedger;
+import com.example.bankcards.service.lock.LockedCards;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Сообщения в очередь шарда BalanceShard.
+ */
+sealed interface ShardMessage {
+
+    /**
+     * Операция над картами одного шарда, выполняется потоком шарда в пакете.
+     * profile - профиль JFR потока запроса, в него шард пишет время фаз операции; null - без записи.
+     */
+    record Execute(Map<String, CardEntity> cards,
+                   List<Long> cardIds,
+                   Function<LockedCards, Object> operation,
+                   IdempotencyLedger.Pending idempotencyKey,
+                   MoneyMovementProfile profile,
+                   CompletableFuture<Object> result) implements ShardMessage {
+    }
+
+    /**
+     * Первая фаза межшардовой операции: шард отдаёт баланс карты вызывающему потоку
+     * и откладывает свои операции над ней до {@link Return}.
+     */
+    record Lend(Long cardId, CompletableFuture<CardBalanceEntity> result) implements ShardMessage {
+    }
+
+    /**
+     * Вторая фаза: балансы возвращаются шарду после фиксации или после отката с восстановленным состоянием.
+     * evict - состояние в памяти не совпало с базой, шард перечитает балансы при следующем обращении.
+     */
+    record Return(Map<Long, CardBalanceEntity> accounts, boolean evict) implements ShardMessage {
+    }
+}
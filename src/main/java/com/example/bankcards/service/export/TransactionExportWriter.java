@@ -0,0 +1,83 @@
+package com.example.bankcards.service.export;
+
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Пишет поток транзакций построчно в NDJSON или CSV.
+ * В памяти держится только текущая строка и буфер вывода, поэтому расход кучи не зависит от длины истории.
+ * Поля и формат даты те же, что у TransactionResponseDTO в обычных ответах API.
+ */
+@Component
+public class TransactionExportWriter {
+
+    private static final DateTimeFormatter CREATED_AT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String CSV_HEADER = "amount,createdAt,statusTransaction\n";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * @return количество записанных транзакций
+     */
+    public long write(Stream<TransactionResponseDTO> transactions, ExportFormat format, OutputStream outputStream)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long written = switch (format) {
+            case NDJSON -> writeNdjson(transactions.iterator(), writer);
+            case CSV -> writeCsv(transactions.iterator(), writer);
+        };
+        writer.flush();
+        return written;
+    }
+
+    private long writeNdjson(Iterator<TransactionResponseDTO> transactions, Writer writer) throws IOException {
+        JsonGenerator generator = jsonFactory.createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        long written = 0;
+        while (transactions.hasNext()) {
+            TransactionResponseDTO transaction = transactions.next();
+            generator.writeStartObject();
+            generator.writeNumberField("amount", transaction.getAmount());
+            generator.writeStringField("createdAt", formatCreatedAt(transaction));
+            generator.writeStringField("statusTransaction", transaction.getStatusTransaction());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            written++;
+        }
+        generator.flush();
+        return written;
+    }
+
+    private long writeCsv(Iterator<TransactionResponseDTO> transactions, Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        long written = 0;
+        while (transactions.hasNext()) {
+            TransactionResponseDTO transaction = transactions.next();
+            writer.write(transaction.getAmount().toPlainString());
+            writer.write(',');
+            writer.write(formatCreatedAt(transaction));
+            writer.write(',');
+            writer.write(transaction.getStatusTransaction());
+            writer.write('\n');
+            written++;
+        }
+        return written;
+    }
+
+    private static String formatCreatedAt(TransactionResponseDTO transaction) {
+        return transaction.getCreatedAt() == null ? "" : CREATED_AT_FORMAT.format(transaction.getCreatedAt());
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.bankcards.service.idempotency;
+
+import com.example.bankcards.entity.IdempotencyRecordEntity;
+import com.example.bankcards.repository.IdempotencyRecordEntityRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Журнал идемпотентности в базе - источник истины для повторов, Redis только кэширует его.
+ * IdempotencyService открывает на потоке контекст ключа (begin/end), а операция
+ * вызывает record внутри своей транзакции: запись журнала фиксируется вместе с TransactionEntity
+ * или не фиксируется вовсе. Уникальный ключ (scope, idempotency_key) не даёт второму выполнению
+ * с тем же ключом закоммитить свои изменения.
+ * Операции, которые record не вызывают, записываются после выполнения отдельной транзакцией.
+ */
+@Component
+public class IdempotencyLedger {
+
+    private static final ThreadLocal<Pending> CURRENT = new ThreadLocal<>();
+
+    private final IdempotencyRecordEntityRepository idempotencyRecordEntityRepository;
+    private final IdempotencyRecordSerializer serializer = new IdempotencyRecordSerializer();
+    private final TransactionTemplate separateTransaction;
+    private final Duration ttl;
+    private final int buckets;
+
+    public IdempotencyLedger(IdempotencyRecordEntityRepository idempotencyRecordEntityRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${idempotency.ledger.ttl-hours}") long ttlHours,
+                             @Value("${idempotency.ledger.purge.buckets}") int buckets) {
+        this.idempotencyRecordEntityRepository = idempotencyRecordEntityRepository;
+        this.separateTransaction = new TransactionTemplate(transactionManager);
+        this.separateTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.ttl = Duration.ofHours(ttlHours);
+        this.buckets = buckets;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Записывает ответ под ключом текущего идемпотентного запроса в активной транзакции.
+     * Вне идемпотентного запроса или вне транзакции ничего не делает.
+     * Запись сразу отправляется в базу: дубликат ключа из параллельной транзакции
+     * ждёт её завершения и падает с DataIntegrityViolationException до фиксации операции.
+     */
+    public void record(Object response) {
+        record(CURRENT.get(), response);
+    }
+
+    /**
+     * Ключ идемпотентного запроса текущего потока - чтобы записать ответ из потока,
+     * который выполняет операцию за него (шард BalanceEngine). null - вне идемпотентного запроса.
+     */
+    public Pending currentKey() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Как {@link #record(Object)}, но для ключа, полученного через {@link #currentKey()} в другом потоке.
+     */
+    public void record(Pending pending, Object response) {
+        if (pending == null || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+        idempotencyRecordEntityRepository.saveAndFlush(toEntity(pending.scope, pending.key, pending.fingerprint, response));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                pending.recorded = true;
+            }
+        });
+    }
+
+    /**
+     * Сохранённый ответ по ключу, если операция с этим ключом уже зафиксирована.
+     */
+    public Optional<IdempotencyRecord> find(IdempotencyScope scope, String key) {
+        return idempotencyRecordEntityRepository.findResponse(scope, key)
+                .map(bytes -> (IdempotencyRecord) serializer.deserialize(bytes));
+    }
+
+    public void begin(IdempotencyScope scope, String key, String fingerprint) {
+        CURRENT.set(new Pending(scope, key, fingerprint));
+    }
+
+    /**
+     * Закрывает контекст ключа.
+     * @return true, если ответ уже записан в журнал транзакцией операции
+     */
+    public boolean end() {
+        Pending pending = CURRENT.get();
+        CURRENT.remove();
+        return pending != null && pending.recorded;
+    }
+
+    /**
+     * Записывает ответ отдельной транзакцией для операций, которые не вызывают record сами.
+     * Если ключ уже записан параллельным выполнением, его запись остаётся.
+     */
+    public void recordSeparately(IdempotencyScope scope, String key, String fingerprint, Object response) {
+        try {
+            separateTransaction.executeWithoutResult(status ->
+                    idempotencyRecordEntityRepository.saveAndFlush(toEntity(scope, key, fingerprint, response)));
+        } catch (DataIntegrityViolationException e) {
+            // ключ уже записан другим выполнением
+        }
+    }
+
+    private IdempotencyRecordEntity toEntity(IdempotencyScope scope, String key, String fingerprint, Object response) {
+        LocalDateTime now = LocalDateTime.now();
+        return IdempotencyRecordEntity.builder()
+                .scope(scope)
+                .idempotencyKey(key)
+                .response(serializer.serialize(IdempotencyRecord.completed(response, fingerprint)))
+                .bucket((short) Math.floorMod(key.hashCode(), buckets))
+                .createdAt(now)
+                .expiresAt(now.plus(ttl))
+                .build();
+    }
+
+    public static final class Pending {
+
+        private final IdempotencyScope scope;
+        private final String key;
+        private final String fingerprint;
+        private volatile boolean recorded;
+
+        private Pending(IdempotencyScope scope, String key, String fingerprint) {
+            this.scope = scope;
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
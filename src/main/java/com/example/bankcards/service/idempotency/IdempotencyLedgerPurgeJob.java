@@ -0,0 +1,63 @@
+package com.example.bankcards.service.idempotency;
+
+import com.example.bankcards.repository.IdempotencyRecordEntityRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Удаляет просроченные записи журнала идемпотентности.
+ * Таблица обходится по частям (bucket), каждая часть чистится порциями по chunkSize строк
+ * в отдельных коротких транзакциях, чтобы не держать блокировки и не раздувать WAL одной большой операцией.
+ * Узлы начинают обход с разных частей и реже мешают друг другу.
+ */
+@Slf4j
+@Component
+public class IdempotencyLedgerPurgeJob {
+
+    private final IdempotencyRecordEntityRepository idempotencyRecordEntityRepository;
+    private final IdempotencyLedger idempotencyLedger;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public IdempotencyLedgerPurgeJob(IdempotencyRecordEntityRepository idempotencyRecordEntityRepository,
+                                     IdempotencyLedger idempotencyLedger,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${idempotency.ledger.purge.chunk-size}") int chunkSize) {
+        this.idempotencyRecordEntityRepository = idempotencyRecordEntityRepository;
+        this.idempotencyLedger = idempotencyLedger;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.ledger.purge.interval-ms}",
+            initialDelayString = "${idempotency.ledger.purge.interval-ms}")
+    public void purge() {
+        LocalDateTime now = LocalDateTime.now();
+        int buckets = idempotencyLedger.getBuckets();
+        int start = ThreadLocalRandom.current().nextInt(buckets);
+        long purged = 0;
+        for (int i = 0; i < buckets; i++) {
+            purged += purgeBucket((start + i) % buckets, now);
+        }
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency records", purged);
+        }
+    }
+
+    private long purgeBucket(int bucket, LocalDateTime now) {
+        long purged = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(status ->
+                    idempotencyRecordEntityRepository.deleteExpired(bucket, now, chunkSize));
+            purged += deleted;
+        } while (deleted == chunkSize);
+        return purged;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.bankcards.service.idempotency;
+
+import java.util.Objects;
+
+/**
+ * Запись под ключом идемпотентности.
+ * PROCESSING - ключ занят выполняющимся запросом узла owner,
+ * COMPLETED - запрос выполнен, response - его ответ (null для операций без ответа).
+ * fingerprint - отпечаток тела запроса (RequestFingerprint), занявшего ключ;
+ * null у записей, сохранённых до появления отпечатков.
+ */
+public record IdempotencyRecord(Status status, String owner, Object response, String fingerprint) {
+
+    public enum Status {
+        PROCESSING, COMPLETED
+    }
+
+    public static IdempotencyRecord processing(String owner, String fingerprint) {
+        return new IdempotencyRecord(Status.PROCESSING, owner, null, fingerprint);
+    }
+
+    public static IdempotencyRecord completed(Object response, String fingerprint) {
+        return new IdempotencyRecord(Status.COMPLETED, null, response, fingerprint);
+    }
+
+    public static IdempotencyRecord completed(Object response) {
+        return completed(response, null);
+    }
+
+    public boolean isCompleted() {
+        return status == Status.COMPLETED;
+    }
+
+    /**
+     * false, если ключ занят запросом с другим телом. Записи без отпечатка совпадают с любым запросом.
+     */
+    public boolean matches(String requestFingerprint) {
+        return fingerprint == null || requestFingerprint == null || Objects.equals(fingerprint, requestFingerprint);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.bankcards.service.idempotency;
+
+import com.example.bankcards.cache.codec.CodecRegistry;
+import com.example.bankcards.cache.codec.TypeCodec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static com.example.bankcards.cache.codec.BinaryIO.readString;
+import static com.example.bankcards.cache.codec.BinaryIO.writeString;
+
+/**
+ * Схема IdempotencyRecord: байт статуса, затем ответ с тегом его типа или владелец ключа,
+ * затем отпечаток запроса, если в байте статуса стоит FINGERPRINT.
+ * Записи без флага (сохранённые до отпечатков) читаются с fingerprint = null.
+ */
+public class IdempotencyRecordCodec implements TypeCodec<IdempotencyRecord> {
+
+    private static final byte STATUS_PROCESSING = 0;
+    private static final byte STATUS_COMPLETED = 1;
+    private static final byte STATUS_MASK = 0x0F;
+    private static final byte FINGERPRINT = 0x10;
+
+    @Override
+    public byte tag() {
+        return 5;
+    }
+
+    @Override
+    public Class<IdempotencyRecord> type() {
+        return IdempotencyRecord.class;
+    }
+
+    @Override
+    public void write(DataOutputStream out, IdempotencyRecord value, CodecRegistry registry) throws IOException {
+        byte flags = value.fingerprint() != null ? FINGERPRINT : 0;
+        if (value.isCompleted()) {
+            out.writeByte(STATUS_COMPLETED | flags);
+            registry.writeTagged(out, value.response());
+        } else {
+            out.writeByte(STATUS_PROCESSING | flags);
+            writeString(out, value.owner());
+        }
+        if (value.fingerprint() != null) {
+            writeString(out, value.fingerprint());
+        }
+    }
+
+    @Override
+    public IdempotencyRecord read(DataInputStream in, CodecRegistry registry) throws IOException {
+        byte status = in.readByte();
+        boolean completed = (status & STATUS_MASK) == STATUS_COMPLETED;
+        Object response = completed ? registry.readTagged(in) : null;
+        String owner = completed ? null : readString(in);
+        String fingerprint = (status & FINGERPRINT) != 0 ? readString(in) : null;
+        return completed
+                ? IdempotencyRecord.completed(response, fingerprint)
+                : IdempotencyRecord.processing(owner, fingerprint);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.bankcards.service.idempotency;
+
+import com.example.bankcards.cache.codec.CodecRegistry;
+import com.example.bankcards.cache.codec.DtoCodecs;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Компактное бинарное представление IdempotencyRecord для журнала идемпотентности.
+ * Вместо JSON с именами классов пишется байт версии, байт статуса, байт типа ответа
+ * и поля ответа в фиксированном порядке. Ответ TransactionResponseDTO занимает около 30 байт.
+ * Формат хранится в базе, поэтому меняется только вместе с FORMAT_VERSION.
+ */
+public class IdempotencyRecordSerializer implements RedisSerializer<Object> {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final CodecRegistry registry = DtoCodecs.registry();
+    private final IdempotencyRecordCodec recordCodec = new IdempotencyRecordCodec();
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof IdempotencyRecord record)) {
+            throw new SerializationException("Unsupported idempotency value " + value.getClass().getName());
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT_VERSION);
+            recordCodec.write(out, record, registry);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Cannot serialize idempotency record", e);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new SerializationException("Unknown idempotency record format " + version);
+            }
+            return recordCodec.read(in, registry);
+        } catch (IOException e) {
+            throw new SerializationException("Cannot deserialize idempotency record", e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.bankcards.service.idempotency;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Изменяющие операции API под ключом идемпотентности. У каждой своё имя кэша,
+ * поэтому один и тот же ключ в разных операциях не пересекается.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum IdempotencyScope {
+
+    REGISTER("key:register"),
+    TRANSFER("key:transfer"),
+    TRANSFER_BATCH("key:transfer-batch"),
+    WITHDRAWAL("key:withdrawal"),
+    REPLENISHMENT("key:replenishment"),
+    BLOCK_CARD("key:block-card"),
+    CREATE_CARD("key:create-card"),
+    UPDATE_CARD("key:update-card"),
+    DELETE_CARD("key:delete-card"),
+    ACTIVATE_CARD("key:activate-card"),
+    ADMIN_BLOCK_CARD("key:admin-block-card"),
+    SET_CARD_LIMITS("key:set-card-limits");
+
+    private final String cacheName;
+}
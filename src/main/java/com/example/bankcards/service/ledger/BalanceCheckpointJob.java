@@ -0,0 +1,97 @@
+package com.example.bankcards.service.ledger;
+
+import com.example.bankcards.entity.ledger.CardBalanceCheckpointEntity;
+import com.example.bankcards.repository.CardBalanceCheckpointEntityRepository;
+import com.example.bankcards.repository.CardBalanceEntityRepository;
+import com.example.bankcards.repository.projection.CardBalanceCheckpointCandidateView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Периодически пишет контрольные точки балансов, по которым накопилось every-entries проводок,
+ * чтобы восстановление баланса суммировало лишь хвост журнала.
+ * Перед записью точки баланс сверяется с журналом; при расхождении точка не пишется.
+ */
+@Slf4j
+@Component
+public class BalanceCheckpointJob {
+
+    private final CardBalanceEntityRepository cardBalanceEntityRepository;
+    private final CardBalanceCheckpointEntityRepository cardBalanceCheckpointEntityRepository;
+    private final LedgerService ledgerService;
+    private final TransactionTemplate transactionTemplate;
+    private final long everyEntries;
+    private final int chunkSize;
+    private final Counter mismatchCounter;
+
+    public BalanceCheckpointJob(CardBalanceEntityRepository cardBalanceEntityRepository,
+                                CardBalanceCheckpointEntityRepository cardBalanceCheckpointEntityRepository,
+                                LedgerService ledgerService,
+                                TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${ledger.checkpoint.every-entries}") long everyEntries,
+                                @Value("${ledger.checkpoint.chunk-size}") int chunkSize) {
+        this.cardBalanceEntityRepository = cardBalanceEntityRepository;
+        this.cardBalanceCheckpointEntityRepository = cardBalanceCheckpointEntityRepository;
+        this.ledgerService = ledgerService;
+        this.transactionTemplate = transactionTemplate;
+        this.everyEntries = everyEntries;
+        this.chunkSize = chunkSize;
+        this.mismatchCounter = Counter.builder("ledger.balance.mismatches")
+                .description("Card balances that do not match the sum of their ledger entries")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.checkpoint.interval-ms}")
+    public void checkpoint() {
+        long afterId = 0;
+        int written = 0;
+        List<CardBalanceCheckpointCandidateView> chunk;
+        do {
+            chunk = cardBalanceEntityRepository.findCheckpointCandidates(afterId, everyEntries, chunkSize);
+            List<CardBalanceCheckpointCandidateView> candidates = chunk;
+            try {
+                Integer chunkWritten = transactionTemplate.execute(status -> writeCheckpoints(candidates));
+                written += chunkWritten != null ? chunkWritten : 0;
+            } catch (DataIntegrityViolationException e) {
+                // ту же порцию успел записать другой узел
+                log.debug("Balance checkpoints skipped after card {}: {}", afterId, e.getMessage());
+            }
+            if (!chunk.isEmpty()) {
+                afterId = chunk.get(chunk.size() - 1).getCardId();
+            }
+        } while (chunk.size() == chunkSize);
+        if (written > 0) {
+            log.info("Balance checkpoints written for {} cards", written);
+        }
+    }
+
+    private int writeCheckpoints(List<CardBalanceCheckpointCandidateView> candidates) {
+        int written = 0;
+        for (CardBalanceCheckpointCandidateView candidate : candidates) {
+            BigDecimal rebuilt = ledgerService.rebuildBalance(candidate.getCardId(), candidate.getEntrySeq());
+            if (rebuilt.compareTo(candidate.getBalance()) != 0) {
+                mismatchCounter.increment();
+                log.error("Card {} balance {} does not match ledger balance {} at entry {}",
+                        candidate.getCardId(), candidate.getBalance(), rebuilt, candidate.getEntrySeq());
+                continue;
+            }
+            cardBalanceCheckpointEntityRepository.save(CardBalanceCheckpointEntity.builder()
+                    .cardId(candidate.getCardId())
+                    .cardSeq(candidate.getEntrySeq())
+                    .balance(candidate.getBalance())
+                    .build());
+            written++;
+        }
+        return written;
+    }
+}
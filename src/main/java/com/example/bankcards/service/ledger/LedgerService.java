@@ -0,0 +1,112 @@
+package com.example.bankcards.service.ledger;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.enums.LedgerAccount;
+import com.example.bankcards.entity.ledger.CardBalanceCheckpointEntity;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.entity.ledger.LedgerEntryEntity;
+import com.example.bankcards.entity.operations.TransactionEntity;
+import com.example.bankcards.journal.TransactionJournal;
+import com.example.bankcards.repository.CardBalanceCheckpointEntityRepository;
+import com.example.bankcards.repository.CardBalanceEntityRepository;
+import com.example.bankcards.repository.LedgerEntryEntityRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * Проводки по журналу двойной записи. Журнал - источник истины для балансов:
+ * каждая операция добавляет проводки с нулевой суммой и в той же транзакции
+ * сдвигает card_balance. Строка карты (card_entity) при этом не меняется.
+ * Балансы передаются заблокированными (или прочитанными для оптимистичного обновления)
+ * в транзакции операции; операция должна быть уже сохранена, чтобы у неё был id.
+ * Если включён журнал операций (journal.enabled), операция пишется в него до фиксации транзакции.
+ */
+@RequiredArgsConstructor
+@Service
+public class LedgerService {
+
+    private final CardBalanceEntityRepository cardBalanceEntityRepository;
+    private final LedgerEntryEntityRepository ledgerEntryEntityRepository;
+    private final CardBalanceCheckpointEntityRepository cardBalanceCheckpointEntityRepository;
+    private final Optional<TransactionJournal> transactionJournal;
+
+    /**
+     * Заводит баланс новой карты. Ненулевой начальный баланс записывается контрольной точкой 0.
+     */
+    public CardBalanceEntity openAccount(CardEntity cardEntity, BigDecimal openingBalance) {
+        CardBalanceEntity cardBalance = cardBalanceEntityRepository.save(CardBalanceEntity.builder()
+                .card(cardEntity)
+                .balance(openingBalance)
+                .entrySeq(0)
+                .build());
+        if (openingBalance.signum() != 0) {
+            cardBalanceCheckpointEntityRepository.save(CardBalanceCheckpointEntity.builder()
+                    .cardId(cardEntity.getId())
+                    .cardSeq(0L)
+                    .balance(openingBalance)
+                    .build());
+        }
+        return cardBalance;
+    }
+
+    public void transfer(TransactionEntity transaction, CardBalanceEntity from, CardBalanceEntity to, BigDecimal amount) {
+        transactionJournal.ifPresent(journal -> journal.accepted(transaction));
+        postCard(transaction, from, amount.negate());
+        postCard(transaction, to, amount);
+    }
+
+    /**
+     * Снятие с карты: карта уменьшается, встречная проводка - на счёт кассы.
+     */
+    public void debit(TransactionEntity transaction, CardBalanceEntity cardBalance, BigDecimal amount) {
+        transactionJournal.ifPresent(journal -> journal.accepted(transaction));
+        postCard(transaction, cardBalance, amount.negate());
+        postCash(transaction, amount);
+    }
+
+    /**
+     * Пополнение карты из кассы.
+     */
+    public void credit(TransactionEntity transaction, CardBalanceEntity cardBalance, BigDecimal amount) {
+        transactionJournal.ifPresent(journal -> journal.accepted(transaction));
+        postCash(transaction, amount.negate());
+        postCard(transaction, cardBalance, amount);
+    }
+
+    /**
+     * Баланс карты после проводки toSeq, восстановленный по журналу
+     * от последней контрольной точки не позже toSeq.
+     */
+    public BigDecimal rebuildBalance(Long cardId, long toSeq) {
+        CardBalanceCheckpointEntity checkpoint = cardBalanceCheckpointEntityRepository
+                .findFirstByCardIdAndCardSeqLessThanEqualOrderByCardSeqDesc(cardId, toSeq)
+                .orElse(null);
+        long fromSeq = checkpoint != null ? checkpoint.getCardSeq() : 0;
+        BigDecimal base = checkpoint != null ? checkpoint.getBalance() : BigDecimal.ZERO;
+        return base.add(ledgerEntryEntityRepository.sumCardEntries(cardId, fromSeq, toSeq));
+    }
+
+    private void postCard(TransactionEntity transaction, CardBalanceEntity cardBalance, BigDecimal amount) {
+        long cardSeq = cardBalance.getEntrySeq() + 1;
+        cardBalance.setEntrySeq(cardSeq);
+        cardBalance.setBalance(cardBalance.getBalance().add(amount));
+        ledgerEntryEntityRepository.save(LedgerEntryEntity.builder()
+                .transactionId(transaction.getId())
+                .account(LedgerAccount.CARD)
+                .cardId(cardBalance.getCardId())
+                .cardSeq(cardSeq)
+                .amount(amount)
+                .build());
+    }
+
+    private void postCash(TransactionEntity transaction, BigDecimal amount) {
+        ledgerEntryEntityRepository.save(LedgerEntryEntity.builder()
+                .transactionId(transaction.getId())
+                .account(LedgerAccount.CASH)
+                .amount(amount)
+                .build());
+    }
+}
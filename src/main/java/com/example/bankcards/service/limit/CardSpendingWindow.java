@@ -0,0 +1,65 @@
+package com.example.bankcards.service.limit;
+
+import com.example.bankcards.entity.enums.LimitType;
+import com.example.bankcards.repository.projection.CardSpendView;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Счётчики расходов одной карты по всем видам лимитов.
+ * syncedVersion - версия баланса карты, с которой счётчики совпадают;
+ * если баланс сейчас другой версии, по карте провёл операцию кто-то ещё (другой узел) и счётчики надо перечитать.
+ */
+final class CardSpendingWindow {
+
+    private final Map<LimitType, SlidingWindowCounter> counters = new EnumMap<>(LimitType.class);
+    private Integer syncedVersion;
+    private boolean loaded;
+
+    CardSpendingWindow(Collection<LimitType> limitTypes) {
+        limitTypes.forEach(limitType -> counters.put(limitType, new SlidingWindowCounter(limitType)));
+    }
+
+    synchronized boolean isSyncedWith(Integer version) {
+        return loaded && Objects.equals(syncedVersion, version);
+    }
+
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    synchronized void reload(Integer version, Collection<CardSpendView> spends, long nowMillis) {
+        counters.values().forEach(SlidingWindowCounter::clear);
+        for (CardSpendView spend : spends) {
+            long timeMillis = SpendingLimitService.toMillis(spend.getCreatedAt());
+            counters.values().forEach(counter -> counter.add(timeMillis, nowMillis, spend.getAmount()));
+        }
+        syncedVersion = version;
+        loaded = true;
+    }
+
+    /**
+     * Учитывает расход зафиксированной операции, проверенной при версии баланса startVersion.
+     * Если счётчики за это время перечитаны или изменены другой операцией, они могли уже включить
+     * этот расход из журнала - тогда ничего не прибавляется, а счётчики помечаются несвежими
+     * и перечитаются при следующей проверке.
+     */
+    synchronized void record(BigDecimal amount, long nowMillis, Integer startVersion, Integer version) {
+        if (!loaded || !Objects.equals(syncedVersion, startVersion)) {
+            syncedVersion = null;
+            return;
+        }
+        if (amount.signum() != 0) {
+            counters.values().forEach(counter -> counter.add(nowMillis, nowMillis, amount));
+        }
+        syncedVersion = version;
+    }
+
+    synchronized BigDecimal spent(LimitType limitType, long nowMillis) {
+        return counters.get(limitType).sum(nowMillis);
+    }
+}
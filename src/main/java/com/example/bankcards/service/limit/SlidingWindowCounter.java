@@ -0,0 +1,58 @@
+package com.example.bankcards.service.limit;
+
+import com.example.bankcards.entity.enums.LimitType;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Сумма списаний за скользящее окно лимита, разбитое на интервалы (LimitType.bucket).
+ * Кольцо хранит на один интервал больше, чем в окне: текущий неполный интервал и buckets предыдущих.
+ * Поэтому сумма охватывает от window до window + bucket назад - с запасом, лимит не превышается.
+ * Не потокобезопасен, синхронизация - в CardSpendingWindow.
+ */
+final class SlidingWindowCounter {
+
+    private final long bucketMillis;
+    private final int buckets;
+    private final long[] bucketIndexes;
+    private final BigDecimal[] sums;
+
+    SlidingWindowCounter(LimitType limitType) {
+        this.bucketMillis = limitType.getBucket().toMillis();
+        this.buckets = limitType.getBuckets();
+        this.bucketIndexes = new long[buckets + 1];
+        this.sums = new BigDecimal[buckets + 1];
+        clear();
+    }
+
+    void add(long timeMillis, long nowMillis, BigDecimal amount) {
+        long index = timeMillis / bucketMillis;
+        if (index < nowMillis / bucketMillis - buckets) {
+            return;
+        }
+        int slot = (int) Math.floorMod(index, (long) bucketIndexes.length);
+        if (bucketIndexes[slot] == index) {
+            sums[slot] = sums[slot].add(amount);
+        } else if (bucketIndexes[slot] < index) {
+            bucketIndexes[slot] = index;
+            sums[slot] = amount;
+        }
+    }
+
+    BigDecimal sum(long nowMillis) {
+        long oldest = nowMillis / bucketMillis - buckets;
+        BigDecimal total = BigDecimal.ZERO;
+        for (int slot = 0; slot < bucketIndexes.length; slot++) {
+            if (bucketIndexes[slot] >= oldest) {
+                total = total.add(sums[slot]);
+            }
+        }
+        return total;
+    }
+
+    void clear() {
+        Arrays.fill(bucketIndexes, Long.MIN_VALUE);
+        Arrays.fill(sums, BigDecimal.ZERO);
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.bankcards.service.limit;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.enums.LimitType;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import com.example.bankcards.entity.enums.TransactionType;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.exception.card.LimitExhaustedException;
+import com.example.bankcards.repository.TransactionEntityRepository;
+import com.example.bankcards.repository.projection.CardSpendView;
+import com.example.bankcards.repository.projection.CardVersionView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Лимиты расходов по картам на счётчиках в памяти.
+ * Проверка не агрегирует журнал: расходы за окна лимитов держатся в CardSpendingWindow
+ * и пополняются после фиксации каждой операции. Журнал перечитывается только по одной карте
+ * и только если её баланс изменился мимо счётчиков (другим узлом) - это видно по версии баланса карты,
+ * которая растёт с каждой проводкой.
+ * Счётчики заводятся лишь для карт с лимитами.
+ */
+@Component
+public class SpendingLimitService {
+
+    private static final Set<LimitType> LIMIT_TYPES = Set.of(LimitType.DAILY, LimitType.MONTHLY);
+    private static final List<TransactionType> SPEND_TYPES = List.of(TransactionType.DEBIT, TransactionType.TRANSFER);
+
+    private final TransactionEntityRepository transactionEntityRepository;
+    private final ConcurrentMap<Long, CardSpendingWindow> windows = new ConcurrentHashMap<>();
+    private final Counter reloadCounter;
+
+    public SpendingLimitService(TransactionEntityRepository transactionEntityRepository, MeterRegistry meterRegistry) {
+        this.transactionEntityRepository = transactionEntityRepository;
+        this.reloadCounter = Counter.builder("card.limit.window.reloads")
+                .description("Spending limit counters reloaded from the ledger after an out-of-band card change")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Проверяет списание amount с карты по её лимитам; после фиксации транзакции учитывает его в счётчиках.
+     * Вызывается в транзакции операции до проводки по балансу карты.
+     * @throws LimitExhaustedException если списание превышает какой-либо лимит с учётом расходов за окно
+     */
+    public void checkAndRecord(CardEntity cardEntity, CardBalanceEntity cardBalance, BigDecimal amount) {
+        if (!checkLimits(cardEntity, cardBalance, amount)) {
+            return;
+        }
+        Map<CardBalanceEntity, PendingSpend> pending = pendingSpend();
+        PendingSpend pendingSpend = pending.get(cardBalance);
+        if (pendingSpend == null) {
+            pending.put(cardBalance, new PendingSpend(cardBalance.getVersion(), amount));
+        } else {
+            pendingSpend.amount = pendingSpend.amount.add(amount);
+        }
+    }
+
+    /**
+     * Проверяет списание amount так же, как {@link #checkAndRecord}, но не учитывает его:
+     * пакет операций проверяет суммарный расход по карте до первой записи,
+     * а учитывает каждое списание уже при проводке.
+     * @throws LimitExhaustedException если списание превышает какой-либо лимит с учётом расходов за окно
+     */
+    public void check(CardEntity cardEntity, CardBalanceEntity cardBalance, BigDecimal amount) {
+        checkLimits(cardEntity, cardBalance, amount);
+    }
+
+    /**
+     * @return false, если у карты нет лимитов и учитывать расход не нужно
+     */
+    private boolean checkLimits(CardEntity cardEntity, CardBalanceEntity cardBalance, BigDecimal amount) {
+        Map<LimitType, BigDecimal> limits = limitsOf(cardEntity);
+        if (limits.isEmpty()) {
+            windows.remove(cardEntity.getId());
+            return false;
+        }
+        long now = toMillis(LocalDateTime.now());
+        CardSpendingWindow window = windows.computeIfAbsent(cardEntity.getId(), id -> new CardSpendingWindow(LIMIT_TYPES));
+        PendingSpend pendingSpend = pendingSpend().get(cardBalance);
+        if (pendingSpend == null && !window.isSyncedWith(cardBalance.getVersion())) {
+            reloadCounter.increment();
+            window.reload(cardBalance.getVersion(), findSpends(List.of(cardEntity.getId()), now), now);
+        }
+
+        BigDecimal pendingAmount = pendingSpend != null ? pendingSpend.amount : BigDecimal.ZERO;
+        for (Map.Entry<LimitType, BigDecimal> limit : limits.entrySet()) {
+            BigDecimal spent = window.spent(limit.getKey(), now).add(pendingAmount);
+            if (spent.add(amount).compareTo(limit.getValue()) > 0) {
+                throw new LimitExhaustedException(limit.getValue(), limit.getKey(),
+                        limit.getValue().subtract(spent).max(BigDecimal.ZERO));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Зачисление на карту: расходы не меняются, но меняется версия баланса карты.
+     * Если счётчики карты были актуальны, после фиксации они остаются актуальными для новой версии.
+     */
+    public void recordCredit(CardBalanceEntity cardBalance) {
+        CardSpendingWindow window = windows.get(cardBalance.getCardId());
+        if (window != null && window.isSyncedWith(cardBalance.getVersion())) {
+            pendingSpend().putIfAbsent(cardBalance, new PendingSpend(cardBalance.getVersion(), BigDecimal.ZERO));
+        }
+    }
+
+    /**
+     * Загружает счётчики карт, которые ещё не загружены, одним чтением журнала на всю порцию.
+     * Версия каждой карты прочитана раньше журнала, поэтому гонка с операцией
+     * даёт лишь лишнее перечитывание, а не пропуск расхода.
+     */
+    public void warmUp(List<CardVersionView> cards) {
+        if (cards.isEmpty()) {
+            return;
+        }
+        long now = toMillis(LocalDateTime.now());
+        Map<Long, List<CardSpendView>> spends = findSpends(cards.stream().map(CardVersionView::getId).toList(), now)
+                .stream()
+                .collect(Collectors.groupingBy(CardSpendView::getCardId));
+        for (CardVersionView card : cards) {
+            CardSpendingWindow window = windows.computeIfAbsent(card.getId(), id -> new CardSpendingWindow(LIMIT_TYPES));
+            if (!window.isLoaded()) {
+                window.reload(card.getVersion(), spends.getOrDefault(card.getId(), List.of()), now);
+            }
+        }
+    }
+
+    static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private List<CardSpendView> findSpends(List<Long> cardIds, long nowMillis) {
+        long windowMillis = LIMIT_TYPES.stream()
+                .mapToLong(limitType -> limitType.getWindow().plus(limitType.getBucket()).toMillis())
+                .max()
+                .orElse(0);
+        LocalDateTime since = LocalDateTime.ofEpochSecond((nowMillis - windowMillis) / 1000, 0, ZoneOffset.UTC);
+        return transactionEntityRepository.findSpendSince(cardIds, since, SPEND_TYPES, TransactionStatus.SUCCESS);
+    }
+
+    private static Map<LimitType, BigDecimal> limitsOf(CardEntity cardEntity) {
+        Map<LimitType, BigDecimal> limits = new EnumMap<>(LimitType.class);
+        if (cardEntity.getDailyLimit() != null) {
+            limits.put(LimitType.DAILY, cardEntity.getDailyLimit());
+        }
+        if (cardEntity.getMonthlyLimit() != null) {
+            limits.put(LimitType.MONTHLY, cardEntity.getMonthlyLimit());
+        }
+        return limits;
+    }
+
+    /**
+     * Расходы текущей транзакции по балансам карт. После фиксации переносятся в счётчики
+     * вместе с новой версией баланса; при откате отбрасываются.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<CardBalanceEntity, PendingSpend> pendingSpend() {
+        Map<CardBalanceEntity, PendingSpend> pending = (Map<CardBalanceEntity, PendingSpend>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Spending limits are checked inside a card operation transaction");
+        }
+        Map<CardBalanceEntity, PendingSpend> created = new LinkedHashMap<>();
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                long now = toMillis(LocalDateTime.now());
+                created.forEach((cardBalance, spend) -> {
+                    CardSpendingWindow window = windows.get(cardBalance.getCardId());
+                    if (window != null) {
+                        window.record(spend.amount, now, spend.startVersion, cardBalance.getVersion());
+                    }
+                });
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(SpendingLimitService.this);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Расход транзакции по одной карте и версия её баланса, при которой он проверен.
+     */
+    private static final class PendingSpend {
+
+        private final Integer startVersion;
+        private BigDecimal amount;
+
+        private PendingSpend(Integer startVersion, BigDecimal amount) {
+            this.startVersion = startVersion;
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.bankcards.service.limit;
+
+import com.example.bankcards.repository.CardEntityRepository;
+import com.example.bankcards.repository.projection.CardVersionView;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Прогревает счётчики лимитов после старта: карты с лимитами читаются порциями по id,
+ * для каждой порции - одно чтение журнала за окно лимитов.
+ * Приложение уже принимает запросы; карта, до которой прогрев ещё не дошёл,
+ * загружает свои счётчики сама при первой операции.
+ */
+@Slf4j
+@Component
+public class SpendingLimitWarmupJob {
+
+    private final CardEntityRepository cardEntityRepository;
+    private final SpendingLimitService spendingLimitService;
+    private final int chunkSize;
+
+    public SpendingLimitWarmupJob(CardEntityRepository cardEntityRepository,
+                                  SpendingLimitService spendingLimitService,
+                                  @Value("${card.limits.warmup.chunk-size}") int chunkSize) {
+        this.cardEntityRepository = cardEntityRepository;
+        this.spendingLimitService = spendingLimitService;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long afterId = 0;
+        int warmed = 0;
+        List<CardVersionView> chunk;
+        do {
+            chunk = cardEntityRepository.findLimitedCardsAfter(afterId, PageRequest.of(0, chunkSize));
+            spendingLimitService.warmUp(chunk);
+            warmed += chunk.size();
+            if (!chunk.isEmpty()) {
+                afterId = chunk.get(chunk.size() - 1).getId();
+            }
+        } while (chunk.size() == chunkSize);
+        log.info("Spending limit counters warmed up for {} cards", warmed);
+    }
+}
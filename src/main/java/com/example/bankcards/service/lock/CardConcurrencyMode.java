@@ -0,0 +1,11 @@
+package com.example.bankcards.service.lock;
+
+/**
+ * Способ защиты баланса карты от потерянных обновлений.
+ * PESSIMISTIC - блокировка строк SELECT ... FOR UPDATE,
+ * OPTIMISTIC - условный UPDATE по колонке version,
+ * ADAPTIVE - оптимистично, пока карта не стала горячей по CardContentionTracker.
+ */
+public enum CardConcurrencyMode {
+    PESSIMISTIC, OPTIMISTIC, ADAPTIVE
+}
@@ -0,0 +1,86 @@
+package com.example.bankcards.service.lock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Наблюдаемая конкуренция за карты: конфликты версий и неудачные захваты блокировок строк.
+ * Карта становится горячей, когда за окно card.concurrency.contention.window-ms
+ * набрано card.concurrency.contention.threshold конфликтов, и остаётся горячей
+ * card.concurrency.contention.cooldown-ms после последнего из них.
+ * Ключ - слепой индекс номера карты.
+ */
+@Component
+public class CardContentionTracker {
+
+    private final ConcurrentMap<String, Contention> contentionByCard = new ConcurrentHashMap<>();
+    private final int threshold;
+    private final long windowMillis;
+    private final long cooldownMillis;
+    private final int maxTrackedCards;
+
+    public CardContentionTracker(@Value("${card.concurrency.contention.threshold}") int threshold,
+                                 @Value("${card.concurrency.contention.window-ms}") long windowMillis,
+                                 @Value("${card.concurrency.contention.cooldown-ms}") long cooldownMillis,
+                                 @Value("${card.concurrency.contention.max-tracked-cards}") int maxTrackedCards) {
+        this.threshold = threshold;
+        this.windowMillis = windowMillis;
+        this.cooldownMillis = cooldownMillis;
+        this.maxTrackedCards = maxTrackedCards;
+    }
+
+    public void recordConflict(Collection<String> cardKeys) {
+        long now = System.currentTimeMillis();
+        if (contentionByCard.size() >= maxTrackedCards) {
+            evictCold(now);
+        }
+        for (String cardKey : cardKeys) {
+            contentionByCard.computeIfAbsent(cardKey, key -> new Contention()).recordConflict(now);
+        }
+    }
+
+    public boolean isAnyHot(Collection<String> cardKeys) {
+        long now = System.currentTimeMillis();
+        for (String cardKey : cardKeys) {
+            Contention contention = contentionByCard.get(cardKey);
+            if (contention != null && contention.isHot(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evictCold(long now) {
+        contentionByCard.values().removeIf(contention -> contention.isCold(now));
+    }
+
+    private final class Contention {
+
+        private long windowStart;
+        private int conflictsInWindow;
+        private long hotUntil;
+
+        synchronized void recordConflict(long now) {
+            if (now - windowStart > windowMillis) {
+                windowStart = now;
+                conflictsInWindow = 0;
+            }
+            conflictsInWindow++;
+            if (conflictsInWindow >= threshold) {
+                hotUntil = now + cooldownMillis;
+            }
+        }
+
+        synchronized boolean isHot(long now) {
+            return hotUntil > now;
+        }
+
+        synchronized boolean isCold(long now) {
+            return hotUntil <= now && now - windowStart > windowMillis;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.bankcards.service.lock;
+
+import com.example.bankcards.exception.card.CardLockTimeoutException;
+import com.example.bankcards.jfr.MoneyMovementPhase;
+import com.example.bankcards.jfr.MoneyMovementProfile;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Полосатые блокировки карт внутри JVM.
+ * Операции над одной картой выстраиваются в очередь на справедливой блокировке ещё до того,
+ * как взять соединение из пула, поэтому горячая карта стоит припаркованного потока,
+ * а не занятого соединения в ожидании блокировки строки в Postgres.
+ * Ключ карты - её слепой индекс, он известен без обращения к БД.
+ */
+@Component
+public class CardLockManager {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final long waitTimeoutNanos;
+    private final Timer acquiredTimer;
+    private final Timer timedOutTimer;
+
+    public CardLockManager(MeterRegistry meterRegistry,
+                           @Value("${card.lock.stripes}") int stripes,
+                           @Value("${card.lock.wait-timeout-ms}") long waitTimeoutMillis) {
+        int size = Integer.highestOneBit(Math.max(1, stripes));
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock(true);
+        }
+        this.mask = size - 1;
+        this.waitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(waitTimeoutMillis);
+        this.acquiredTimer = Timer.builder("card.lock.jvm.wait")
+                .description("Time spent acquiring in-JVM card lock stripes")
+                .tag("outcome", "acquired")
+                .register(meterRegistry);
+        this.timedOutTimer = Timer.builder("card.lock.jvm.wait")
+                .description("Time spent acquiring in-JVM card lock stripes")
+                .tag("outcome", "timeout")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Выполняет действие, удерживая блокировки всех переданных карт.
+     * Полосы захватываются по возрастанию номера, поэтому встречные операции не взаимоблокируются.
+     * @throws CardLockTimeoutException если блокировки не получены за card.lock.wait-timeout-ms
+     */
+    public <T> T executeWithLocks(Collection<String> lockKeys, Supplier<T> action) {
+        int[] stripeIndexes = lockKeys.stream().mapToInt(this::stripeIndex).distinct().sorted().toArray();
+        long start = System.nanoTime();
+        long deadline = start + waitTimeoutNanos;
+        int acquired = 0;
+        try {
+            for (int index : stripeIndexes) {
+                if (!stripes[index].tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    recordWait(timedOutTimer, start);
+                    throw new CardLockTimeoutException();
+                }
+                acquired++;
+            }
+            recordWait(acquiredTimer, start);
+            return action.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recordWait(timedOutTimer, start);
+            throw new CardLockTimeoutException();
+        } finally {
+            for (int i = acquired - 1; i >= 0; i--) {
+                stripes[stripeIndexes[i]].unlock();
+            }
+        }
+    }
+
+    private static void recordWait(Timer timer, long start) {
+        long waitNanos = System.nanoTime() - start;
+        timer.record(waitNanos, TimeUnit.NANOSECONDS);
+        MoneyMovementProfile.addPhase(MoneyMovementPhase.JVM_LOCK, waitNanos);
+    }
+
+    private int stripeIndex(String lockKey) {
+        int hash = lockKey.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
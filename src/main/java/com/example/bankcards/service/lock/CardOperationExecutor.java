@@ -0,0 +1,196 @@
+package com.example.bankcards.service.lock;
+
+import com.example.bankcards.exception.card.CardLockTimeoutException;
+import com.example.bankcards.jfr.MoneyMovementPhase;
+import com.example.bankcards.jfr.MoneyMovementProfile;
+import com.example.bankcards.service.idempotency.IdempotencyLedger;
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Единая точка выполнения операций над картами:
+ * блокировки в JVM, транзакция, затем пессимистичная или оптимистичная защита балансов карт (card_balance).
+ * Пессимистичный путь блокирует строки балансов в каноническом порядке и повторяет транзакцию с джиттером,
+ * если строку заблокировал кто-то другой. Оптимистичный путь читает балансы без блокировок
+ * и полагается на условный UPDATE по version; при конфликте транзакция повторяется целиком.
+ * В режиме ADAPTIVE горячие карты сразу идут пессимистичным путём,
+ * а исчерпавшие оптимистичные попытки - добиваются им же.
+ * Результат операции записывается в журнал идемпотентности в той же транзакции.
+ */
+@Slf4j
+@Component
+public class CardOperationExecutor {
+
+    private final CardLockManager cardLockManager;
+    private final CardRowLocker cardRowLocker;
+    private final CardContentionTracker cardContentionTracker;
+    private final CardNumberBlindIndexUtil cardNumberBlindIndexUtil;
+    private final TransactionTemplate transactionTemplate;
+    private final IdempotencyLedger idempotencyLedger;
+    private final CardConcurrencyMode concurrencyMode;
+    private final int maxAttempts;
+    private final int optimisticMaxAttempts;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+    private final Counter retryCounter;
+    private final Counter exhaustedCounter;
+    private final Counter optimisticConflictCounter;
+    private final Counter pessimisticOperationCounter;
+    private final Counter optimisticOperationCounter;
+    private final Counter fallbackCounter;
+
+    public CardOperationExecutor(CardLockManager cardLockManager,
+                                 CardRowLocker cardRowLocker,
+                                 CardContentionTracker cardContentionTracker,
+                                 CardNumberBlindIndexUtil cardNumberBlindIndexUtil,
+                                 TransactionTemplate transactionTemplate,
+                                 IdempotencyLedger idempotencyLedger,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${card.concurrency.mode}") CardConcurrencyMode concurrencyMode,
+                                 @Value("${card.lock.retry.max-attempts}") int maxAttempts,
+                                 @Value("${card.concurrency.optimistic.max-attempts}") int optimisticMaxAttempts,
+                                 @Value("${card.lock.retry.backoff-base-ms}") long backoffBaseMillis,
+                                 @Value("${card.lock.retry.backoff-max-ms}") long backoffMaxMillis) {
+        this.cardLockManager = cardLockManager;
+        this.cardRowLocker = cardRowLocker;
+        this.cardContentionTracker = cardContentionTracker;
+        this.cardNumberBlindIndexUtil = cardNumberBlindIndexUtil;
+        this.transactionTemplate = transactionTemplate;
+        this.idempotencyLedger = idempotencyLedger;
+        this.concurrencyMode = concurrencyMode;
+        this.maxAttempts = maxAttempts;
+        this.optimisticMaxAttempts = optimisticMaxAttempts;
+        this.backoffBaseMillis = backoffBaseMillis;
+        this.backoffMaxMillis = backoffMaxMillis;
+        this.retryCounter = Counter.builder("card.lock.retries")
+                .description("Card operations retried after a row lock conflict")
+                .register(meterRegistry);
+        this.exhaustedCounter = Counter.builder("card.lock.retries.exhausted")
+                .description("Card operations rejected after all lock retries failed")
+                .register(meterRegistry);
+        this.optimisticConflictCounter = Counter.builder("card.optimistic.conflicts")
+                .description("Optimistic card updates rejected by a concurrent version change")
+                .register(meterRegistry);
+        this.pessimisticOperationCounter = Counter.builder("card.operations")
+                .description("Card operations by concurrency control path")
+                .tag("mode", CardConcurrencyMode.PESSIMISTIC.name())
+                .register(meterRegistry);
+        this.optimisticOperationCounter = Counter.builder("card.operations")
+                .description("Card operations by concurrency control path")
+                .tag("mode", CardConcurrencyMode.OPTIMISTIC.name())
+                .register(meterRegistry);
+        this.fallbackCounter = Counter.builder("card.optimistic.fallbacks")
+                .description("Optimistic card operations finished on the pessimistic path after exhausting attempts")
+                .register(meterRegistry);
+    }
+
+    public <T> T execute(Collection<String> cardNumbers, Function<LockedCards, T> operation) {
+        List<String> lockKeys = cardNumbers.stream().map(cardNumberBlindIndexUtil::hash).toList();
+
+        return cardLockManager.executeWithLocks(lockKeys, () -> {
+            boolean pessimistic = concurrencyMode == CardConcurrencyMode.PESSIMISTIC
+                    || concurrencyMode == CardConcurrencyMode.ADAPTIVE && cardContentionTracker.isAnyHot(lockKeys);
+            // одна логическая операция - один отсчёт, по пути, которым она начата
+            if (pessimistic) {
+                pessimisticOperationCounter.increment();
+                return executePessimistic(cardNumbers, lockKeys, operation);
+            }
+            optimisticOperationCounter.increment();
+            return executeOptimistic(cardNumbers, lockKeys, operation, concurrencyMode == CardConcurrencyMode.ADAPTIVE);
+        });
+    }
+
+    private <T> T executePessimistic(Collection<String> cardNumbers, List<String> lockKeys,
+                                     Function<LockedCards, T> operation) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return executeAttempt(() -> cardRowLocker.lock(cardNumbers), operation);
+            } catch (PessimisticLockingFailureException e) {
+                cardContentionTracker.recordConflict(lockKeys);
+                if (attempt >= maxAttempts) {
+                    exhaustedCounter.increment();
+                    log.warn("Card row lock not acquired after {} attempts", attempt);
+                    throw new CardLockTimeoutException();
+                }
+                retryCounter.increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    private <T> T executeOptimistic(Collection<String> cardNumbers, List<String> lockKeys,
+                                    Function<LockedCards, T> operation, boolean fallbackToPessimistic) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return executeAttempt(() -> cardRowLocker.read(cardNumbers), operation);
+            } catch (OptimisticLockingFailureException e) {
+                optimisticConflictCounter.increment();
+                cardContentionTracker.recordConflict(lockKeys);
+                if (attempt >= optimisticMaxAttempts) {
+                    if (fallbackToPessimistic) {
+                        fallbackCounter.increment();
+                        return executePessimistic(cardNumbers, lockKeys, operation);
+                    }
+                    exhaustedCounter.increment();
+                    log.warn("Optimistic card update failed after {} attempts", attempt);
+                    throw new CardLockTimeoutException();
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Одна попытка в своей транзакции. Время фаз идёт в MoneyMovementProfile;
+     * всё, что после возврата из колбэка, - flush и фиксация транзакции.
+     */
+    private <T> T executeAttempt(Supplier<LockedCards> loadCards, Function<LockedCards, T> operation) {
+        MoneyMovementProfile.attempt();
+        long[] callbackEnd = new long[1];
+        try {
+            return transactionTemplate.execute(status -> {
+                long start = System.nanoTime();
+                LockedCards lockedCards = loadCards.get();
+                long loaded = System.nanoTime();
+                MoneyMovementProfile.addPhase(MoneyMovementPhase.ROW_LOCK, loaded - start);
+                MoneyMovementProfile.cardIds(lockedCards.cardIds());
+
+                T result = operation.apply(lockedCards);
+                long applied = System.nanoTime();
+                MoneyMovementProfile.addPhase(MoneyMovementPhase.BUSINESS, applied - loaded);
+
+                idempotencyLedger.record(result);
+                callbackEnd[0] = System.nanoTime();
+                MoneyMovementProfile.addPhase(MoneyMovementPhase.LEDGER_WRITE, callbackEnd[0] - applied);
+                return result;
+            });
+        } finally {
+            if (callbackEnd[0] != 0) {
+                MoneyMovementProfile.addPhase(MoneyMovementPhase.COMMIT, System.nanoTime() - callbackEnd[0]);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CardLockTimeoutException();
+        }
+    }
+}
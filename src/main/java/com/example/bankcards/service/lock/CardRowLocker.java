@@ -0,0 +1,180 @@
+package com.example.bankcards.service.lock;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.exception.card.CardWithNumberNoExistsException;
+import com.example.bankcards.repository.CardBalanceEntityRepository;
+import com.example.bankcards.repository.CardEntityRepository;
+import com.example.bankcards.repository.projection.CardIdView;
+import com.example.bankcards.util.CardNumberBlindIndexUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Блокирует балансы карт (card_balance) в текущей транзакции в каноническом порядке - по возрастанию id карты.
+ * Любые две операции над пересекающимися наборами карт берут блокировки в одном порядке,
+ * поэтому взаимоблокировок между ними не возникает. Широкие строки card_entity операции
+ * с деньгами не меняют и читают без блокировки - но после баланса.
+ * Смена статуса, лимитов или удаление карты сначала берут её баланс с увеличением версии
+ * ({@link #lockForCardChange(Long)}): операция, державшая баланс, успеет зафиксироваться со старым статусом,
+ * следующая прочитает новый, а оптимистичная, прочитавшая баланс раньше, упадёт на проверке версии.
+ * Для оптимистичного режима балансы читаются без блокировок, см. {@link #read(Collection)}.
+ */
+@Component
+public class CardRowLocker {
+
+    private final CardEntityRepository cardEntityRepository;
+    private final CardBalanceEntityRepository cardBalanceEntityRepository;
+    private final CardNumberBlindIndexUtil cardNumberBlindIndexUtil;
+    private final RowLockMode rowLockMode;
+    private final String rowLockTimeout;
+    private final Timer lockWaitTimer;
+
+    public CardRowLocker(CardEntityRepository cardEntityRepository,
+                         CardBalanceEntityRepository cardBalanceEntityRepository,
+                         CardNumberBlindIndexUtil cardNumberBlindIndexUtil,
+                         MeterRegistry meterRegistry,
+                         @Value("${card.lock.row-mode}") RowLockMode rowLockMode,
+                         @Value("${card.lock.row-timeout-ms}") long rowLockTimeoutMillis) {
+        this.cardEntityRepository = cardEntityRepository;
+        this.cardBalanceEntityRepository = cardBalanceEntityRepository;
+        this.cardNumberBlindIndexUtil = cardNumberBlindIndexUtil;
+        this.rowLockMode = rowLockMode;
+        this.rowLockTimeout = rowLockTimeoutMillis + "ms";
+        this.lockWaitTimer = Timer.builder("card.lock.wait")
+                .description("Time spent acquiring card balance row locks")
+                .tag("mode", rowLockMode.name())
+                .register(meterRegistry);
+    }
+
+    public LockedCards lock(Collection<String> cardNumbers) {
+        Map<String, String> numberByHash = numberByHash(cardNumbers);
+
+        List<CardIdView> cardIds = cardEntityRepository.findIdsByCardNumberHashIn(numberByHash.keySet());
+        requireAllFound(numberByHash, cardIds.stream().map(CardIdView::getCardNumberHash).collect(Collectors.toSet()));
+
+        if (rowLockMode == RowLockMode.WAIT) {
+            cardEntityRepository.setLocalLockTimeout(rowLockTimeout);
+        }
+
+        Map<Long, CardBalanceEntity> balances = new HashMap<>();
+        cardIds.stream()
+                .map(CardIdView::getId)
+                .sorted()
+                .forEach(cardId -> balances.put(cardId, lockWaitTimer.record(() -> lockRow(cardId))));
+
+        Map<String, CardEntity> cards = new HashMap<>();
+        cardEntityRepository.findAllById(balances.keySet())
+                .forEach(cardEntity -> cards.put(numberByHash.get(cardEntity.getCardNumberHash()), cardEntity));
+        return new LockedCards(cards, balances);
+    }
+
+    /**
+     * Читает карты и их балансы без блокировки строк.
+     * Конкурентное изменение баланса обнаружится при flush: UPDATE card_balance ... WHERE card_id = ? AND version = ?
+     * не найдёт строку, и транзакция упадёт с ObjectOptimisticLockingFailureException.
+     * Балансы читаются раньше карт: смена статуса или лимитов, зафиксированная между чтениями,
+     * уже видна в карте, а зафиксированная позже сдвинула версию баланса.
+     */
+    public LockedCards read(Collection<String> cardNumbers) {
+        Map<String, String> numberByHash = numberByHash(cardNumbers);
+
+        List<CardIdView> cardIds = cardEntityRepository.findIdsByCardNumberHashIn(numberByHash.keySet());
+        requireAllFound(numberByHash, cardIds.stream().map(CardIdView::getCardNumberHash).collect(Collectors.toSet()));
+
+        Map<Long, CardBalanceEntity> balances = new HashMap<>();
+        cardBalanceEntityRepository.findAllById(cardIds.stream().map(CardIdView::getId).toList())
+                .forEach(cardBalance -> balances.put(cardBalance.getCardId(), cardBalance));
+
+        Map<String, CardEntity> cards = new HashMap<>();
+        cardEntityRepository.findAllById(balances.keySet())
+                .forEach(cardEntity -> cards.put(numberByHash.get(cardEntity.getCardNumberHash()), cardEntity));
+        return new LockedCards(cards, balances);
+    }
+
+    /**
+     * Для потока шарда движка балансов: в текущей транзакции берёт балансы карт, которые никто не держит
+     * (FOR UPDATE SKIP LOCKED), и перечитывает эти карты. Баланс, который держит смена статуса, лимитов
+     * или удаление карты, пропускается без ожидания - поток шарда не стоит из-за одной карты,
+     * отказ получают только операции над ней.
+     * @param cards карты, прочитанные раньше без блокировки (см. {@link #cards(Collection)})
+     * @return свежие карты по номеру - только те, чьи балансы взяты
+     */
+    public Map<String, CardEntity> lockAvailable(Map<String, CardEntity> cards) {
+        List<Long> cardIds = cards.values().stream().map(CardEntity::getId).distinct().sorted().toList();
+        Set<Long> locked = cardBalanceEntityRepository.findAllByIdSkipLocked(cardIds).stream()
+                .map(CardBalanceEntity::getCardId)
+                .collect(Collectors.toSet());
+
+        Map<Long, CardEntity> fresh = new HashMap<>();
+        cardEntityRepository.findAllById(locked).forEach(cardEntity -> fresh.put(cardEntity.getId(), cardEntity));
+
+        Map<String, CardEntity> available = new HashMap<>();
+        cards.forEach((cardNumber, cardEntity) -> {
+            CardEntity current = fresh.get(cardEntity.getId());
+            if (current != null) {
+                available.put(cardNumber, current);
+            }
+        });
+        return available;
+    }
+
+    /**
+     * Берёт баланс карты перед сменой её статуса, лимитов или удалением: строка блокируется,
+     * версия увеличивается. Операции с деньгами над картой ждут фиксации изменения или падают на версии,
+     * а строка card_entity остаётся вне их блокировок.
+     */
+    public void lockForCardChange(Long cardId) {
+        if (rowLockMode == RowLockMode.WAIT) {
+            cardEntityRepository.setLocalLockTimeout(rowLockTimeout);
+        }
+        lockWaitTimer.record(() -> cardBalanceEntityRepository.findByIdForCardChange(cardId)
+                .orElseThrow(() -> new IllegalStateException("Card " + cardId + " has no balance")));
+    }
+
+    /**
+     * Карты по номеру без балансов и без блокировок.
+     * @throws CardWithNumberNoExistsException если какой-то карты нет
+     */
+    public Map<String, CardEntity> cards(Collection<String> cardNumbers) {
+        Map<String, String> numberByHash = numberByHash(cardNumbers);
+
+        List<CardEntity> cardEntities = cardEntityRepository.findByCardNumberHashIn(numberByHash.keySet());
+        requireAllFound(numberByHash, cardEntities.stream().map(CardEntity::getCardNumberHash).collect(Collectors.toSet()));
+
+        Map<String, CardEntity> cards = new HashMap<>();
+        cardEntities.forEach(cardEntity -> cards.put(numberByHash.get(cardEntity.getCardNumberHash()), cardEntity));
+        return cards;
+    }
+
+    private Map<String, String> numberByHash(Collection<String> cardNumbers) {
+        Set<String> distinctNumbers = new LinkedHashSet<>(cardNumbers);
+        return distinctNumbers.stream().collect(Collectors.toMap(cardNumberBlindIndexUtil::hash, number -> number));
+    }
+
+    private void requireAllFound(Map<String, String> numberByHash, Set<String> foundHashes) {
+        numberByHash.entrySet().stream()
+                .filter(entry -> !foundHashes.contains(entry.getKey()))
+                .findFirst()
+                .ifPresent(entry -> {
+                    throw new CardWithNumberNoExistsException(entry.getValue());
+                });
+    }
+
+    private CardBalanceEntity lockRow(Long cardId) {
+        return (rowLockMode == RowLockMode.NOWAIT
+                ? cardBalanceEntityRepository.findByIdWithLockNoWait(cardId)
+                : cardBalanceEntityRepository.findByIdWithLock(cardId))
+                .orElseThrow(() -> new IllegalStateException("Card " + cardId + " deleted while locking"));
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.bankcards.service.lock;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Карты операции по номеру карты вместе с их балансами: балансы заблокированы в текущей транзакции
+ * или прочитаны для оптимистичного обновления, строки карт прочитаны без блокировки.
+ */
+public class LockedCards {
+
+    private final Map<String, CardEntity> cardsByNumber;
+    private final Map<Long, CardBalanceEntity> balancesByCardId;
+
+    public LockedCards(Map<String, CardEntity> cardsByNumber, Map<Long, CardBalanceEntity> balancesByCardId) {
+        this.cardsByNumber = cardsByNumber;
+        this.balancesByCardId = balancesByCardId;
+    }
+
+    public CardEntity get(String cardNumber) {
+        CardEntity cardEntity = cardsByNumber.get(cardNumber);
+        if (cardEntity == null) {
+            throw new IllegalArgumentException("Card was not locked in this operation");
+        }
+        return cardEntity;
+    }
+
+    public CardBalanceEntity balance(String cardNumber) {
+        CardBalanceEntity cardBalance = balancesByCardId.get(get(cardNumber).getId());
+        if (cardBalance == null) {
+            throw new IllegalStateException("Card " + get(cardNumber).getId() + " has no balance");
+        }
+        return cardBalance;
+    }
+
+    public List<Long> cardIds() {
+        return cardsByNumber.values().stream().map(CardEntity::getId).toList();
+    }
+}
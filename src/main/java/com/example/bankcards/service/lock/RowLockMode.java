@@ -0,0 +1,10 @@
+package com.example.bankcards.service.lock;
+
+/**
+ * Режим захвата блокировки строки карты.
+ * NOWAIT - конфликт сразу приводит к ошибке и повтору операции,
+ * WAIT - ожидание ограничено lock_timeout транзакции.
+ */
+public enum RowLockMode {
+    NOWAIT, WAIT
+}
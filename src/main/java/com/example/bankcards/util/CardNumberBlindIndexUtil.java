@@ -0,0 +1,47 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.card.encryptor.EncryptorException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Слепой индекс номера карты: HMAC-SHA256 от номера на отдельном ключе.
+ * Значение детерминировано и не зависит от режима шифрования номера,
+ * поэтому по нему строится уникальный индекс для поиска карты.
+ */
+@Component
+public class CardNumberBlindIndexUtil {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final SecretKeySpec indexKey;
+    private final ThreadLocal<Mac> macHolder;
+
+    public CardNumberBlindIndexUtil(@Value("${card.blind-index.key}") String key) {
+        this.indexKey = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macHolder = ThreadLocal.withInitial(this::createMac);
+    }
+
+    public String hash(String cardNumber) {
+        byte[] digest = macHolder.get().doFinal(cardNumber.getBytes(StandardCharsets.US_ASCII));
+        return HEX.formatHex(digest);
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(indexKey);
+            return mac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new EncryptorException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.card.encryptor.DecryptException;
+import com.example.bankcards.exception.card.encryptor.EncryptorException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Движок шифрования номеров карт без повторной инициализации шифра.
+ * У каждого потока свои проинициализированные экземпляры Cipher и рабочие буферы:
+ * режим ECB не хранит состояния между вызовами doFinal, поэтому шифр переиспользуется как есть.
+ * Шифротекст кодируется в Base64 без промежуточных массивов: {@link Base64.Encoder#encode(byte[], byte[])}
+ * пишет прямо в буфер потока. Декодирует стандартный {@link Base64.Decoder} - строгий к длине и '='.
+ */
+public class CardNumberCipherEngine {
+
+    private static final String TRANSFORMATION = "AES/ECB/PKCS5Padding";
+    private static final int INITIAL_BUFFER_SIZE = 64;
+    private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getDecoder();
+
+    private final SecretKeySpec secretKey;
+    private final ThreadLocal<CipherContext> contexts;
+
+    public CardNumberCipherEngine(SecretKeySpec secretKey) {
+        this.secretKey = secretKey;
+        this.contexts = ThreadLocal.withInitial(this::createContext);
+    }
+
+    public String encrypt(String cardNumber) {
+        return encrypt(contexts.get(), cardNumber);
+    }
+
+    public String decrypt(String dbCardNumber) {
+        return decrypt(contexts.get(), dbCardNumber);
+    }
+
+    public List<String> encryptAll(Collection<String> cardNumbers) {
+        CipherContext context = contexts.get();
+        List<String> result = new ArrayList<>(cardNumbers.size());
+        for (String cardNumber : cardNumbers) {
+            result.add(encrypt(context, cardNumber));
+        }
+        return result;
+    }
+
+    public List<String> decryptAll(Collection<String> dbCardNumbers) {
+        CipherContext context = contexts.get();
+        List<String> result = new ArrayList<>(dbCardNumbers.size());
+        for (String dbCardNumber : dbCardNumbers) {
+            result.add(decrypt(context, dbCardNumber));
+        }
+        return result;
+    }
+
+    private String encrypt(CipherContext context, String cardNumber) {
+        try {
+            byte[] plain;
+            int plainLength;
+            if (isAscii(cardNumber)) {
+                plainLength = cardNumber.length();
+                plain = context.plain(plainLength);
+                for (int i = 0; i < plainLength; i++) {
+                    plain[i] = (byte) cardNumber.charAt(i);
+                }
+            } else {
+                plain = cardNumber.getBytes(StandardCharsets.UTF_8);
+                plainLength = plain.length;
+            }
+
+            // для ECB/PKCS5 размер шифротекста известен заранее: кодировщик берёт массив целиком
+            byte[] encrypted = context.encrypted(context.encryptor.getOutputSize(plainLength));
+            int encryptedLength = context.encryptor.doFinal(plain, 0, plainLength, encrypted, 0);
+            if (encryptedLength != encrypted.length) {
+                encrypted = Arrays.copyOf(encrypted, encryptedLength);
+            }
+
+            byte[] encoded = context.encoded(((encryptedLength + 2) / 3) * 4);
+            int encodedLength = BASE64_ENCODER.encode(encrypted, encoded);
+            return new String(encoded, 0, encodedLength, StandardCharsets.ISO_8859_1);
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            throw new EncryptorException(e.getMessage());
+        }
+    }
+
+    private String decrypt(CipherContext context, String dbCardNumber) {
+        try {
+            byte[] decoded = BASE64_DECODER.decode(dbCardNumber);
+
+            byte[] decrypted = context.plain(context.decryptor.getOutputSize(decoded.length));
+            int decryptedLength = context.decryptor.doFinal(decoded, 0, decoded.length, decrypted, 0);
+            return new String(decrypted, 0, decryptedLength, StandardCharsets.UTF_8);
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException | IllegalArgumentException e) {
+            throw new DecryptException(e.getMessage());
+        }
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CipherContext createContext() {
+        try {
+            Cipher encryptor = Cipher.getInstance(TRANSFORMATION);
+            encryptor.init(Cipher.ENCRYPT_MODE, secretKey);
+            Cipher decryptor = Cipher.getInstance(TRANSFORMATION);
+            decryptor.init(Cipher.DECRYPT_MODE, secretKey);
+            return new CipherContext(encryptor, decryptor);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
+            throw new EncryptorException(e.getMessage());
+        }
+    }
+
+    private static final class CipherContext {
+
+        private final Cipher encryptor;
+        private final Cipher decryptor;
+        private byte[] plainBuffer = new byte[INITIAL_BUFFER_SIZE];
+        private byte[] encryptedBuffer = new byte[INITIAL_BUFFER_SIZE];
+        private byte[] encodedBuffer = new byte[INITIAL_BUFFER_SIZE];
+
+        private CipherContext(Cipher encryptor, Cipher decryptor) {
+            this.encryptor = encryptor;
+            this.decryptor = decryptor;
+        }
+
+        private byte[] plain(int size) {
+            if (plainBuffer.length < size) {
+                plainBuffer = new byte[size];
+            }
+            return plainBuffer;
+        }
+
+        /**
+         * Буфер ровно заданного размера: номера карт одной длины, поэтому он пересоздаётся лишь при смене длины.
+         */
+        private byte[] encrypted(int size) {
+            if (encryptedBuffer.length != size) {
+                encryptedBuffer = new byte[size];
+            }
+            return encryptedBuffer;
+        }
+
+        private byte[] encoded(int size) {
+            if (encodedBuffer.length < size) {
+                encodedBuffer = new byte[size];
+            }
+            return encodedBuffer;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.bankcards.util;
 
+import com.example.bankcards.jfr.MoneyMovementPhase;
+import com.example.bankcards.jfr.MoneyMovementProfile;
 import jakarta.persistence.AttributeConverter;
 import jakarta.persistence.Converter;
 import lombok.RequiredArgsConstructor;
@@ -17,7 +19,10 @@ public class CardNumberEncryptorConverter implements AttributeConverter<String,
         if (cardNumber == null) {
             return null;
         }
-        return cardNumberEncryptorUtil.encryptCardNumber(cardNumber);
+        long start = System.nanoTime();
+        String encrypted = cardNumberEncryptorUtil.encryptCardNumber(cardNumber);
+        MoneyMovementProfile.addPhase(MoneyMovementPhase.CRYPTO, System.nanoTime() - start);
+        return encrypted;
     }
 
     @Override
@@ -25,6 +30,9 @@ public class CardNumberEncryptorConverter implements AttributeConverter<String,
         if (dbData == null) {
             return null;
         }
-        return cardNumberEncryptorUtil.decryptCardNumber(dbData);
+        long start = System.nanoTime();
+        String cardNumber = cardNumberEncryptorUtil.decryptCardNumber(dbData);
+        MoneyMovementProfile.addPhase(MoneyMovementPhase.CRYPTO, System.nanoTime() - start);
+        return cardNumber;
     }
 }
@@ -1,29 +1,50 @@
 package com.example.bankcards.util;
 
-import com.example.bankcards.exception.card.encryptor.DecryptException;
 import com.example.bankcards.exception.card.encryptor.EncryptorException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
 import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.beans.factory.annotation.Value;
 
 import javax.crypto.*;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
-import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 
 @Getter
 @Component
 public class CardNumberEncryptorUtil {
 
     private final SecretKeySpec secretKey;
+    private final CardNumberCipherEngine cipherEngine;
+    @Getter(AccessLevel.NONE)
+    private final Timer encryptTimer;
+    @Getter(AccessLevel.NONE)
+    private final Timer decryptTimer;
+    @Getter(AccessLevel.NONE)
+    private final Timer batchEncryptTimer;
+    @Getter(AccessLevel.NONE)
+    private final Timer batchDecryptTimer;
 
+    /**
+     * Для миграций и бенчмарков вне контекста Spring: метрики уходят в глобальный реестр.
+     */
+    public CardNumberEncryptorUtil(String password, String salt) {
+        this(password, salt, Metrics.globalRegistry);
+    }
 
+    @Autowired
     public CardNumberEncryptorUtil(@Value("${card.encryption.key}") String password,
-                                   @Value("${card.encryption.salt}") String salt) {
+                                   @Value("${card.encryption.salt}") String salt,
+                                   MeterRegistry meterRegistry) {
 
         try {
             SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
@@ -33,30 +54,38 @@ public class CardNumberEncryptorUtil {
         } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
             throw new EncryptorException(e.getMessage());
         }
+        this.cipherEngine = new CardNumberCipherEngine(secretKey);
+        this.encryptTimer = cryptoTimer(meterRegistry, "encrypt", "single");
+        this.decryptTimer = cryptoTimer(meterRegistry, "decrypt", "single");
+        this.batchEncryptTimer = cryptoTimer(meterRegistry, "encrypt", "batch");
+        this.batchDecryptTimer = cryptoTimer(meterRegistry, "decrypt", "batch");
     }
 
     public String encryptCardNumber(String cardNumber) {
-        try {
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-            byte[] encrypted = cipher.doFinal(cardNumber.getBytes());
-            return Base64.getEncoder().encodeToString(encrypted);
-        } catch (IllegalBlockSizeException | BadPaddingException | InvalidKeyException | NoSuchAlgorithmException |
-                 NoSuchPaddingException e) {
-            throw new EncryptorException(e.getMessage());
-        }
+        return encryptTimer.record(() -> cipherEngine.encrypt(cardNumber));
     }
 
     public String decryptCardNumber(String dbCardNumber) {
-        try {
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, secretKey);
-            byte[] decoded = Base64.getDecoder().decode(dbCardNumber);
-            byte[] decrypted = cipher.doFinal(decoded);
-            return new String(decrypted);
-        } catch (IllegalBlockSizeException | BadPaddingException | InvalidKeyException | NoSuchAlgorithmException |
-                 NoSuchPaddingException e) {
-            throw new DecryptException(e.getMessage());
-        }
+        return decryptTimer.record(() -> cipherEngine.decrypt(dbCardNumber));
+    }
+
+    public List<String> encryptCardNumbers(Collection<String> cardNumbers) {
+        return batchEncryptTimer.record(() -> cipherEngine.encryptAll(cardNumbers));
+    }
+
+    public List<String> decryptCardNumbers(Collection<String> dbCardNumbers) {
+        return batchDecryptTimer.record(() -> cipherEngine.decryptAll(dbCardNumbers));
+    }
+
+    /**
+     * mode=single - один номер за вызов, mode=batch - вся пачка за вызов:
+     * время пачки не смешивается со временем одного номера.
+     */
+    private static Timer cryptoTimer(MeterRegistry meterRegistry, String operation, String mode) {
+        return Timer.builder("card.number.crypto")
+                .description("Time spent encrypting or decrypting card numbers, per call")
+                .tag("operation", operation)
+                .tag("mode", mode)
+                .register(meterRegistry);
     }
 }
@@ -0,0 +1,22 @@
+package com.example.bankcards.util;
+
+/**
+ * Маска номера карты для отображения: видны только последние четыре цифры.
+ */
+public final class CardNumberMaskUtil {
+
+    private static final String MASK_PREFIX = "**** **** **** ";
+
+    private CardNumberMaskUtil() {
+    }
+
+    public static String lastFour(String cardNumber) {
+        if (cardNumber == null || cardNumber.length() < 4) return cardNumber;
+        return cardNumber.substring(cardNumber.length() - 4);
+    }
+
+    public static String mask(String cardNumber) {
+        if (cardNumber == null || cardNumber.length() < 4) return cardNumber;
+        return MASK_PREFIX + lastFour(cardNumber);
+    }
+}
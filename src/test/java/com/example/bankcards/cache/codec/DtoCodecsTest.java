@@ -0,0 +1,43 @@
+package com.example.bankcards.cache.codec;
+
+import com.example.bankcards.dto.card.BatchTransferResponseDTO;
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DtoCodecsTest {
+
+    private final BinaryRedisSerializer serializer = new BinaryRedisSerializer(DtoCodecs.registry());
+
+    @Test
+    void roundTripsBatchTransfer() {
+        TransactionResponseDTO transfer = new TransactionResponseDTO(new BigDecimal("99.99"),
+                LocalDateTime.of(2024, 5, 1, 10, 15, 30), TransactionStatus.SUCCESS);
+
+        BatchTransferResponseDTO read = (BatchTransferResponseDTO) serializer.deserialize(
+                serializer.serialize(new BatchTransferResponseDTO(List.of(transfer, transfer, transfer))));
+
+        assertEquals(3, read.getTransfers().size());
+        assertEquals(transfer.getAmount(), read.getTransfers().get(2).getAmount());
+        assertEquals(transfer.getCreatedAt(), read.getTransfers().get(2).getCreatedAt());
+    }
+
+    @Test
+    void rejectsBatchLargerThanSchemaInsteadOfWrappingCount() {
+        TransactionResponseDTO transfer = new TransactionResponseDTO(BigDecimal.ONE,
+                LocalDateTime.of(2024, 5, 1, 10, 15, 30), TransactionStatus.SUCCESS);
+        BatchTransferResponseDTO batch = new BatchTransferResponseDTO(
+                Collections.nCopies(DtoCodecs.MAX_BATCH_TRANSFERS + 1, transfer));
+
+        assertThrows(SerializationException.class, () -> serializer.serialize(batch));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.bankcards.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MoneyMovementProfileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void phasesRecordedOnAnotherThreadGoToCallerEvent() throws Exception {
+        ExecutorService shard = Executors.newSingleThreadExecutor();
+        Path dump = directory.resolve("money.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(MoneyMovementEvent.NAME).withThreshold(Duration.ZERO);
+            recording.start();
+
+            MoneyMovementProfile.record("TRANSFER", () -> {
+                MoneyMovementProfile profile = MoneyMovementProfile.current();
+                return CompletableFuture.supplyAsync(() -> MoneyMovementProfile.runWith(profile, () -> {
+                    MoneyMovementProfile.attempt();
+                    MoneyMovementProfile.addPhase(MoneyMovementPhase.BUSINESS, 1_000);
+                    return null;
+                }), shard).thenRun(() -> MoneyMovementProfile.addPhase(profile, MoneyMovementPhase.COMMIT, 500)).join();
+            });
+
+            recording.stop();
+            recording.dump(dump);
+        } finally {
+            shard.shutdown();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> event.getEventType().getName().equals(MoneyMovementEvent.NAME))
+                .toList();
+        assertEquals(1, events.size());
+        assertEquals(1, events.get(0).getInt("attempts"));
+        assertEquals(1_000, events.get(0).getLong("businessTime"));
+        assertEquals(500, events.get(0).getLong("commitTime"));
+    }
+
+    @Test
+    void runWithoutProfileLeavesThreadUnbound() {
+        assertEquals("done", MoneyMovementProfile.runWith(null, () -> "done"));
+        assertNull(MoneyMovementProfile.current());
+    }
+}
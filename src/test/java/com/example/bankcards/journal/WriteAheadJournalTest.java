@@ -0,0 +1,190 @@
+package com.example.bankcards.journal;
+
+import com.example.bankcards.entity.enums.Currency;
+import com.example.bankcards.entity.enums.TransactionType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadJournalTest {
+
+    private static final int SEGMENT_BYTES = 256;
+    private static final int PAYLOAD_BYTES = 32;
+    private static final int RECORD_BYTES = JournalSegment.RECORD_HEADER_BYTES + JournalSegment.BODY_HEADER_BYTES + PAYLOAD_BYTES;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void intentCodecRoundTrips() {
+        TransactionIntent transfer = new TransactionIntent(42L, TransactionType.TRANSFER, 1L, 2L,
+                new BigDecimal("1234.50"), Currency.RUB);
+        TransactionIntent credit = new TransactionIntent(43L, TransactionType.CREDIT, 1L, null,
+                new BigDecimal("0.01"), null);
+
+        assertEquals(transfer, TransactionIntent.decode(transfer.encode()));
+        assertEquals(credit, TransactionIntent.decode(credit.encode()));
+    }
+
+    @Test
+    void reopenReturnsOpenIntentsAndContinuesSequence() throws IOException {
+        long committed;
+        long open;
+        try (WriteAheadJournal journal = open()) {
+            committed = journal.appendIntent(payload(1));
+            open = journal.appendIntent(payload(2));
+            journal.commit(committed);
+        }
+
+        try (WriteAheadJournal journal = open()) {
+            assertEquals(List.of(open), journal.recoveredIntents().stream().map(JournalRecord::sequence).toList());
+            assertEquals(1, journal.openIntentCount());
+            assertEquals(4, journal.appendIntent(payload(3)));
+        }
+    }
+
+    @Test
+    void rollsToNewSegmentWhenRecordDoesNotFit() throws IOException {
+        try (WriteAheadJournal journal = open()) {
+            for (int i = 0; i < 12; i++) {
+                journal.commit(journal.appendIntent(payload(i)));
+            }
+            assertTrue(journal.segmentCount() > 1);
+        }
+
+        List<JournalRecord> records = WriteAheadJournal.read(directory);
+        assertEquals(24, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).sequence());
+        }
+    }
+
+    @Test
+    void compactionKeepsSegmentsWithOpenIntents() throws IOException {
+        try (WriteAheadJournal journal = open()) {
+            long pinned = journal.appendIntent(payload(0));
+            for (int i = 0; i < 12; i++) {
+                journal.commit(journal.appendIntent(payload(i)));
+            }
+            int segments = journal.segmentCount();
+
+            assertEquals(0, journal.compact());
+            assertEquals(segments, journal.segmentCount());
+
+            journal.commit(pinned);
+            assertEquals(segments - 1, journal.compact());
+            assertEquals(1, journal.segmentCount());
+        }
+    }
+
+    @Test
+    void dropsTornTailOfNewestSegment() throws IOException {
+        try (WriteAheadJournal journal = open()) {
+            journal.appendIntent(payload(1));
+            journal.appendIntent(payload(2));
+            journal.appendIntent(payload(3));
+        }
+        Path segment = segments().get(0);
+        corrupt(segment, 2 * RECORD_BYTES + JournalSegment.RECORD_HEADER_BYTES);
+
+        try (WriteAheadJournal journal = open()) {
+            assertEquals(List.of(1L, 2L), journal.recoveredIntents().stream().map(JournalRecord::sequence).toList());
+            assertEquals(3, journal.appendIntent(payload(3)));
+        }
+        // хвост обнулён: сегмент больше не последний, но читается целым
+        try (WriteAheadJournal journal = open()) {
+            assertEquals(List.of(1L, 2L, 3L), journal.recoveredIntents().stream().map(JournalRecord::sequence).toList());
+        }
+    }
+
+    @Test
+    void deletesNewestSegmentWithoutWholeRecords() throws IOException {
+        try (WriteAheadJournal journal = open()) {
+            journal.appendIntent(payload(1));
+        }
+        corrupt(segments().get(0), JournalSegment.RECORD_HEADER_BYTES);
+
+        try (WriteAheadJournal journal = open()) {
+            assertTrue(journal.recoveredIntents().isEmpty());
+            assertEquals(1, journal.appendIntent(payload(1)));
+        }
+    }
+
+    @Test
+    void refusesToOpenWithCrcMismatchInOlderSegment() throws IOException {
+        try (WriteAheadJournal journal = open()) {
+            for (int i = 0; i < 12; i++) {
+                journal.appendIntent(payload(i));
+            }
+        }
+        List<Path> before = segments();
+        assertTrue(before.size() > 1);
+        corrupt(before.get(0), RECORD_BYTES + JournalSegment.RECORD_HEADER_BYTES);
+
+        assertThrows(IOException.class, this::open);
+        assertEquals(before, segments());
+    }
+
+    @Test
+    void refusesToOpenWithMissingSegmentInTheMiddle() throws IOException {
+        try (WriteAheadJournal journal = open()) {
+            for (int i = 0; i < 20; i++) {
+                journal.appendIntent(payload(i));
+            }
+        }
+        List<Path> before = segments();
+        assertTrue(before.size() > 2);
+        Files.delete(before.get(1));
+
+        assertThrows(IOException.class, this::open);
+    }
+
+    @Test
+    void preallocatesSegmentFile() throws IOException {
+        try (WriteAheadJournal journal = open()) {
+            journal.appendIntent(payload(1));
+            assertEquals(SEGMENT_BYTES, Files.size(segments().get(0)));
+        }
+    }
+
+    private WriteAheadJournal open() throws IOException {
+        return WriteAheadJournal.open(directory, SEGMENT_BYTES, FsyncPolicy.PER_OP, 0, nanos -> {
+        });
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(JournalSegment::isSegment).sorted().toList();
+        }
+    }
+
+    private static byte[] payload(int value) {
+        return ByteBuffer.allocate(PAYLOAD_BYTES).putInt(value).array();
+    }
+
+    /**
+     * Портит байт тела записи, как недописанная страница после сбоя питания: CRC записи перестаёт сходиться.
+     */
+    private static void corrupt(Path segment, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, offset);
+            one.flip();
+            byte value = one.get();
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) (value ^ 0x5A)}), offset);
+        }
+    }
+}
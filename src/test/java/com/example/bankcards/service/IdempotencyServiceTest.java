@@ -0,0 +1,178 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.cache.CacheMode;
+import com.example.bankcards.cache.CacheSpecProperties;
+import com.example.bankcards.cache.TieredCacheManager;
+import com.example.bankcards.dto.card.ActivateCardRequestDTO;
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import com.example.bankcards.exception.ErrorValueIdempotencyKeyException;
+import com.example.bankcards.exception.idempotency.IdempotencyKeyReusedException;
+import com.example.bankcards.exception.idempotency.IdempotencyRequestInProgressException;
+import com.example.bankcards.service.idempotency.IdempotencyLedger;
+import com.example.bankcards.service.idempotency.IdempotencyRecord;
+import com.example.bankcards.service.idempotency.IdempotencyScope;
+import com.example.bankcards.service.idempotency.RequestFingerprint;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.CacheManager;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTest {
+
+    private static final Duration CLAIM_TTL = Duration.ofMillis(100);
+    private static final ActivateCardRequestDTO REQUEST = new ActivateCardRequestDTO("4000000000000002");
+
+    private IdempotencyLedger idempotencyLedger;
+    private CacheManager cacheManager;
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        CacheSpecProperties cacheSpecProperties = new CacheSpecProperties();
+        cacheSpecProperties.getDefaults().setMode(CacheMode.LOCAL);
+        cacheManager = new TieredCacheManager(cacheSpecProperties, null, value -> true,
+                value -> value instanceof IdempotencyRecord record && !record.isCompleted() ? CLAIM_TTL : null);
+        idempotencyLedger = mock(IdempotencyLedger.class);
+        when(idempotencyLedger.find(any(), anyString())).thenReturn(Optional.empty());
+        idempotencyService = new IdempotencyService(cacheManager, idempotencyLedger, new SimpleMeterRegistry(),
+                1000, 1, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        idempotencyService.shutdown();
+    }
+
+    @Test
+    void replaysStoredResponseForSameKeyAndBody() {
+        AtomicInteger executions = new AtomicInteger();
+
+        TransactionResponseDTO first = transfer("key-1", REQUEST, executions);
+        TransactionResponseDTO second = transfer("key-1", new ActivateCardRequestDTO("4000000000000002"), executions);
+
+        assertSame(first, second);
+        assertEquals(1, executions.get());
+        verify(idempotencyLedger).recordSeparately(eq(IdempotencyScope.TRANSFER), eq("key-1"),
+                eq(RequestFingerprint.of(REQUEST)), eq(first));
+    }
+
+    @Test
+    void rejectsSameKeyWithDifferentBody() {
+        AtomicInteger executions = new AtomicInteger();
+        transfer("key-1", REQUEST, executions);
+
+        assertThrows(IdempotencyKeyReusedException.class,
+                () -> transfer("key-1", new ActivateCardRequestDTO("4000000000000010"), executions));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void rejectsLedgerRecordWithDifferentBody() {
+        TransactionResponseDTO committed = response();
+        when(idempotencyLedger.find(IdempotencyScope.TRANSFER, "key-1")).thenReturn(Optional.of(
+                IdempotencyRecord.completed(committed, RequestFingerprint.of(new ActivateCardRequestDTO("4000000000000010")))));
+        AtomicInteger executions = new AtomicInteger();
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> transfer("key-1", REQUEST, executions));
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void replaysLedgerRecordWithoutFingerprint() {
+        TransactionResponseDTO committed = response();
+        when(idempotencyLedger.find(IdempotencyScope.TRANSFER, "key-1"))
+                .thenReturn(Optional.of(IdempotencyRecord.completed(committed)));
+        AtomicInteger executions = new AtomicInteger();
+
+        assertSame(committed, transfer("key-1", REQUEST, executions));
+        assertEquals(0, executions.get());
+        verify(idempotencyLedger, never()).begin(any(), anyString(), any());
+    }
+
+    @Test
+    void releasesCrashedClaimAfterClaimTtl() throws InterruptedException {
+        cacheManager.getCache(IdempotencyScope.TRANSFER.getCacheName())
+                .put("key-1", IdempotencyRecord.processing("crashed-node", RequestFingerprint.of(REQUEST)));
+        AtomicInteger executions = new AtomicInteger();
+
+        assertThrows(IdempotencyRequestInProgressException.class, () -> transfer("key-1", REQUEST, executions));
+
+        Thread.sleep(CLAIM_TTL.toMillis() * 3);
+        transfer("key-1", REQUEST, executions);
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void releasesKeyWhenOperationFails() {
+        AtomicInteger executions = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute(IdempotencyScope.TRANSFER, "key-1",
+                REQUEST, TransactionResponseDTO.class, () -> {
+                    executions.incrementAndGet();
+                    throw new IllegalStateException("declined");
+                }));
+        transfer("key-1", REQUEST, executions);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void rejectsOverLongKeyBeforeOperation() {
+        AtomicInteger executions = new AtomicInteger();
+        String key = "k".repeat(IdempotencyService.MAX_KEY_LENGTH + 1);
+
+        assertThrows(ErrorValueIdempotencyKeyException.class, () -> transfer(key, REQUEST, executions));
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void storedKeyFitsLedgerColumnForLongUserNames() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new TestingAuthenticationToken("u".repeat(300) + "@example.com", null, "ROLE_USER"));
+        try {
+            String key = "k".repeat(IdempotencyService.MAX_KEY_LENGTH);
+            transfer(key, REQUEST, new AtomicInteger());
+
+            ArgumentCaptor<String> storedKey = ArgumentCaptor.forClass(String.class);
+            verify(idempotencyLedger).recordSeparately(eq(IdempotencyScope.TRANSFER), storedKey.capture(), any(), any());
+            assertTrue(storedKey.getValue().length() <= 320);
+            assertTrue(storedKey.getValue().endsWith(':' + key));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private TransactionResponseDTO transfer(String key, Object request, AtomicInteger executions) {
+        return idempotencyService.execute(IdempotencyScope.TRANSFER, key, request, TransactionResponseDTO.class, () -> {
+            executions.incrementAndGet();
+            return response();
+        });
+    }
+
+    private static TransactionResponseDTO response() {
+        return new TransactionResponseDTO(new BigDecimal("10.00"), LocalDateTime.now(), TransactionStatus.SUCCESS);
+    }
+}
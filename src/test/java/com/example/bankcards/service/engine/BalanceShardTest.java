@@ -0,0 +1,290 @@
+package com.example.bankcards.service.engine;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.exception.card.CardLockTimeoutException;
+import com.example.bankcards.exception.card.InsufficientFundsException;
+import com.example.bankcards.repository.CardBalanceEntityRepository;
+import com.example.bankcards.repository.projection.CardBalanceStateView;
+import com.example.bankcards.service.idempotency.IdempotencyLedger;
+import com.example.bankcards.service.lock.CardRowLocker;
+import com.example.bankcards.service.lock.LockedCards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BalanceShardTest {
+
+    private static final long CARD_ID = 1L;
+    private static final String CARD_NUMBER = "4000000000000002";
+    private static final String CHANGED_CARD_NUMBER = "4000000000000010";
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private CardBalanceEntityRepository cardBalanceEntityRepository;
+    private CardRowLocker cardRowLocker;
+    private Counter batchSplitCounter;
+    private Counter rejectedCounter;
+    private BalanceShard shard;
+    private Thread thread;
+
+    @BeforeEach
+    void setUp() {
+        cardBalanceEntityRepository = mock(CardBalanceEntityRepository.class);
+        when(cardBalanceEntityRepository.findStates(anyCollection())).thenReturn(List.of(state("100", 0, 0)));
+        when(cardBalanceEntityRepository.updateIfVersion(any(), any(), anyLong(), any(), any())).thenReturn(1);
+        cardRowLocker = mock(CardRowLocker.class);
+        when(cardRowLocker.lockAvailable(any())).thenAnswer(call -> call.getArgument(0));
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        batchSplitCounter = meterRegistry.counter("splits");
+        rejectedCounter = meterRegistry.counter("rejections");
+        shard = new BalanceShard(0, new ArrayBlockingQueue<>(16), new BalanceStore(cardBalanceEntityRepository),
+                new TransactionTemplate(new NoOpTransactionManager()), mock(IdempotencyLedger.class), cardRowLocker,
+                16, meterRegistry.summary("batch"), batchSplitCounter, rejectedCounter);
+        thread = new Thread(shard, "balance-shard-test");
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        shard.stop();
+        thread.join(TIMEOUT_MILLIS);
+    }
+
+    @Test
+    void rejectedOperationFailsAloneAndBatchCommitsOnce() throws Exception {
+        // все три операции в очереди до старта потока - шард заберёт их одним пакетом
+        CompletableFuture<Object> first = submit(debit("30"));
+        CompletableFuture<Object> rejected = submit(debit("500"));
+        CompletableFuture<Object> third = submit(debit("50"));
+        thread.start();
+
+        assertEquals("70", result(first));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result(rejected));
+        assertInstanceOf(InsufficientFundsException.class, failure.getCause());
+        assertEquals("20", result(third));
+
+        verify(cardBalanceEntityRepository, times(1))
+                .updateIfVersion(eq(CARD_ID), eq(new BigDecimal("20")), eq(2L), eq(0), any());
+        assertEquals(0, batchSplitCounter.count());
+        assertEquals(1, rejectedCounter.count());
+    }
+
+    @Test
+    void infrastructureFailureSplitsBatch() throws Exception {
+        CompletableFuture<Object> broken = submit(lockedCards -> {
+            throw new IllegalStateException("ledger unavailable");
+        });
+        CompletableFuture<Object> healthy = submit(debit("30"));
+        thread.start();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result(broken));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals("70", result(healthy));
+        assertEquals(1, batchSplitCounter.count());
+    }
+
+    @Test
+    void finishedOperationIsNotReplayedAfterSplit() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<Object> timedOut = new CompletableFuture<>();
+        submit(CARD_NUMBER, lockedCards -> {
+            runs.incrementAndGet();
+            // вызывающий поток перестал ждать, пока пакет ещё выполняется
+            timedOut.cancel(false);
+            return debit("10").apply(lockedCards);
+        }, timedOut);
+        CompletableFuture<Object> broken = submit(lockedCards -> {
+            throw new IllegalStateException("ledger unavailable");
+        });
+        CompletableFuture<Object> healthy = submit(debit("30"));
+        thread.start();
+
+        assertEquals("70", result(healthy));
+        assertThrows(ExecutionException.class, () -> result(broken));
+        assertEquals(1, runs.get());
+        assertEquals(1, batchSplitCounter.count());
+    }
+
+    @Test
+    void operationOnCardBeingChangedFailsAloneWithoutWaiting() throws Exception {
+        // баланс карты держит смена статуса: SKIP LOCKED её не вернул
+        when(cardRowLocker.lockAvailable(any())).thenAnswer(call -> {
+            Map<String, CardEntity> available = new HashMap<>(call.<Map<String, CardEntity>>getArgument(0));
+            available.remove(CHANGED_CARD_NUMBER);
+            return available;
+        });
+        CompletableFuture<Object> skipped = submit(CHANGED_CARD_NUMBER, debit("10"), new CompletableFuture<>());
+        CompletableFuture<Object> healthy = submit(debit("30"));
+        thread.start();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result(skipped));
+        assertInstanceOf(CardLockTimeoutException.class, failure.getCause());
+        assertEquals("70", result(healthy));
+        assertEquals(0, batchSplitCounter.count());
+        assertEquals(1, rejectedCounter.count());
+    }
+
+    @Test
+    void reloadsBalanceChangedOutsideEngine() throws Exception {
+        when(cardBalanceEntityRepository.updateIfVersion(any(), any(), anyLong(), any(), any())).thenReturn(0, 1);
+        thread.start();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result(submit(debit("30"))));
+        assertInstanceOf(OptimisticLockingFailureException.class, failure.getCause());
+
+        // запись мимо движка: в базе уже 60 при версии 3
+        when(cardBalanceEntityRepository.findStates(anyCollection())).thenReturn(List.of(state("60", 4, 3)));
+        assertEquals("50", result(submit(debit("10"))));
+        verify(cardBalanceEntityRepository, times(2)).findStates(anyCollection());
+        verify(cardBalanceEntityRepository).updateIfVersion(eq(CARD_ID), eq(new BigDecimal("50")), eq(5L), eq(3), any());
+    }
+
+    @Test
+    void parksOperationsWhileBalanceIsLentAndUsesReturnedBalance() throws Exception {
+        thread.start();
+        CompletableFuture<CardBalanceEntity> lent = new CompletableFuture<>();
+        assertTrue(shard.offer(new ShardMessage.Lend(CARD_ID, lent), TIMEOUT_MILLIS));
+        CardBalanceEntity account = lent.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<Object> parked = submit(debit("10"));
+        Thread.sleep(200);
+        assertFalse(parked.isDone());
+
+        // межшардовая операция списала 40 и зафиксировалась
+        account.setBalance(new BigDecimal("60"));
+        account.setEntrySeq(1);
+        account.setVersion(1);
+        assertTrue(shard.offer(new ShardMessage.Return(Map.of(CARD_ID, account), false), TIMEOUT_MILLIS));
+
+        assertEquals("50", result(parked));
+        verify(cardBalanceEntityRepository, times(1)).findStates(anyCollection());
+        verify(cardBalanceEntityRepository).updateIfVersion(eq(CARD_ID), eq(new BigDecimal("50")), eq(2L), eq(1), any());
+    }
+
+    @Test
+    void evictingReturnReloadsBalance() throws Exception {
+        thread.start();
+        CompletableFuture<CardBalanceEntity> lent = new CompletableFuture<>();
+        assertTrue(shard.offer(new ShardMessage.Lend(CARD_ID, lent), TIMEOUT_MILLIS));
+        CardBalanceEntity account = lent.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        when(cardBalanceEntityRepository.findStates(anyCollection())).thenReturn(List.of(state("80", 1, 1)));
+        assertTrue(shard.offer(new ShardMessage.Return(Map.of(CARD_ID, account), true), TIMEOUT_MILLIS));
+
+        assertEquals("70", result(submit(debit("10"))));
+        verify(cardBalanceEntityRepository, times(2)).findStates(anyCollection());
+        verify(cardBalanceEntityRepository).updateIfVersion(eq(CARD_ID), eq(new BigDecimal("70")), eq(2L), eq(1), any());
+    }
+
+    private CompletableFuture<Object> submit(Function<LockedCards, Object> operation) throws InterruptedException {
+        return submit(CARD_NUMBER, operation, new CompletableFuture<>());
+    }
+
+    private CompletableFuture<Object> submit(String cardNumber, Function<LockedCards, Object> operation,
+                                             CompletableFuture<Object> result) throws InterruptedException {
+        CardEntity card = new CardEntity();
+        card.setId(CARD_ID);
+        assertTrue(shard.offer(new ShardMessage.Execute(Map.of(cardNumber, card), List.of(CARD_ID), operation,
+                null, null, result), TIMEOUT_MILLIS));
+        return result;
+    }
+
+    private static Object result(CompletableFuture<Object> result) throws Exception {
+        return result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Списание как у LedgerService: проверка средств до записи, затем проводка со сдвигом entrySeq.
+     */
+    private static Function<LockedCards, Object> debit(String amount) {
+        BigDecimal value = new BigDecimal(amount);
+        return lockedCards -> {
+            CardBalanceEntity balance = lockedCards.balance(CARD_NUMBER);
+            if (balance.getBalance().compareTo(value) < 0) {
+                throw new InsufficientFundsException();
+            }
+            balance.setBalance(balance.getBalance().subtract(value));
+            balance.setEntrySeq(balance.getEntrySeq() + 1);
+            return balance.getBalance().toPlainString();
+        };
+    }
+
+    private static CardBalanceStateView state(String balance, long entrySeq, int version) {
+        return new CardBalanceStateView() {
+            @Override
+            public Long getCardId() {
+                return CARD_ID;
+            }
+
+            @Override
+            public BigDecimal getBalance() {
+                return new BigDecimal(balance);
+            }
+
+            @Override
+            public Long getEntrySeq() {
+                return entrySeq;
+            }
+
+            @Override
+            public Integer getVersion() {
+                return version;
+            }
+        };
+    }
+
+    /**
+     * Транзакции без базы: шарду нужны только границы транзакции и её синхронизации.
+     */
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bankcards.service.idempotency;
+
+import com.example.bankcards.dto.transaction.TransactionResponseDTO;
+import com.example.bankcards.entity.enums.TransactionStatus;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyRecordSerializerTest {
+
+    private final IdempotencyRecordSerializer serializer = new IdempotencyRecordSerializer();
+
+    @Test
+    void roundTripsCompletedRecordWithFingerprint() {
+        TransactionResponseDTO response = new TransactionResponseDTO(new BigDecimal("12.50"),
+                LocalDateTime.of(2024, 5, 1, 10, 15, 30), TransactionStatus.SUCCESS);
+        String fingerprint = RequestFingerprint.of(new BigDecimal("12.50"));
+
+        IdempotencyRecord read = (IdempotencyRecord) serializer.deserialize(
+                serializer.serialize(IdempotencyRecord.completed(response, fingerprint)));
+
+        assertTrue(read.isCompleted());
+        assertEquals(fingerprint, read.fingerprint());
+        TransactionResponseDTO replayed = (TransactionResponseDTO) read.response();
+        assertEquals(response.getAmount(), replayed.getAmount());
+        assertEquals(response.getCreatedAt(), replayed.getCreatedAt());
+        assertEquals(response.getStatusTransaction(), replayed.getStatusTransaction());
+    }
+
+    @Test
+    void roundTripsProcessingRecordWithFingerprint() {
+        IdempotencyRecord read = (IdempotencyRecord) serializer.deserialize(
+                serializer.serialize(IdempotencyRecord.processing("node-1", "abc")));
+
+        assertFalse(read.isCompleted());
+        assertEquals("node-1", read.owner());
+        assertEquals("abc", read.fingerprint());
+    }
+
+    @Test
+    void readsRecordsStoredWithoutFingerprint() {
+        // версия формата, статус COMPLETED, ответ null - так писались записи до отпечатков
+        byte[] legacy = serializer.serialize(IdempotencyRecord.completed(null));
+        assertEquals(3, legacy.length);
+
+        IdempotencyRecord read = (IdempotencyRecord) serializer.deserialize(legacy);
+
+        assertTrue(read.isCompleted());
+        assertNull(read.fingerprint());
+        assertTrue(read.matches("any"));
+    }
+
+    @Test
+    void fingerprintDependsOnRequestBody() {
+        assertEquals(RequestFingerprint.of(new BigDecimal("1.00")), RequestFingerprint.of(new BigDecimal("1.00")));
+        assertFalse(IdempotencyRecord.completed(null, RequestFingerprint.of(new BigDecimal("1.00")))
+                .matches(RequestFingerprint.of(new BigDecimal("2.00"))));
+        assertNull(RequestFingerprint.of(null));
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.bankcards.service.ledger;
+
+import com.example.bankcards.entity.enums.LedgerAccount;
+import com.example.bankcards.entity.ledger.CardBalanceCheckpointEntity;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.entity.ledger.LedgerEntryEntity;
+import com.example.bankcards.entity.operations.TransactionEntity;
+import com.example.bankcards.repository.CardBalanceCheckpointEntityRepository;
+import com.example.bankcards.repository.CardBalanceEntityRepository;
+import com.example.bankcards.repository.LedgerEntryEntityRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LedgerServiceTest {
+
+    private static final long FROM_CARD = 1L;
+    private static final long TO_CARD = 2L;
+
+    private final List<LedgerEntryEntity> entries = new ArrayList<>();
+    private CardBalanceCheckpointEntityRepository checkpointRepository;
+    private LedgerService ledgerService;
+    private long transactionIds;
+
+    @BeforeEach
+    void setUp() {
+        LedgerEntryEntityRepository ledgerEntryEntityRepository = mock(LedgerEntryEntityRepository.class);
+        when(ledgerEntryEntityRepository.save(any())).thenAnswer(call -> {
+            entries.add(call.getArgument(0));
+            return call.getArgument(0);
+        });
+        when(ledgerEntryEntityRepository.sumCardEntries(anyLong(), anyLong(), anyLong())).thenAnswer(call ->
+                cardEntries(call.getArgument(0)).stream()
+                        .filter(entry -> entry.getCardSeq() > call.<Long>getArgument(1)
+                                && entry.getCardSeq() <= call.<Long>getArgument(2))
+                        .map(LedgerEntryEntity::getAmount)
+                        .reduce(BigDecimal.ZERO, BigDecimal::add));
+        checkpointRepository = mock(CardBalanceCheckpointEntityRepository.class);
+        when(checkpointRepository.findFirstByCardIdAndCardSeqLessThanEqualOrderByCardSeqDesc(anyLong(), anyLong()))
+                .thenReturn(Optional.empty());
+        ledgerService = new LedgerService(mock(CardBalanceEntityRepository.class), ledgerEntryEntityRepository,
+                checkpointRepository, Optional.empty());
+    }
+
+    @Test
+    void everyOperationPostsEntriesSummingToZero() {
+        CardBalanceEntity from = balance(FROM_CARD, "500.00");
+        CardBalanceEntity to = balance(TO_CARD, "0.00");
+
+        ledgerService.transfer(transaction(), from, to, new BigDecimal("120.50"));
+        ledgerService.debit(transaction(), from, new BigDecimal("30.00"));
+        ledgerService.credit(transaction(), to, new BigDecimal("10.25"));
+
+        Map<Long, BigDecimal> byTransaction = entries.stream().collect(Collectors.groupingBy(
+                LedgerEntryEntity::getTransactionId,
+                Collectors.reducing(BigDecimal.ZERO, LedgerEntryEntity::getAmount, BigDecimal::add)));
+        assertEquals(3, byTransaction.size());
+        byTransaction.values().forEach(sum -> assertEquals(0, sum.signum()));
+    }
+
+    @Test
+    void balanceEqualsOpeningPlusCardEntries() {
+        CardBalanceEntity from = balance(FROM_CARD, "500.00");
+        CardBalanceEntity to = balance(TO_CARD, "0.00");
+
+        ledgerService.transfer(transaction(), from, to, new BigDecimal("120.50"));
+        ledgerService.debit(transaction(), from, new BigDecimal("30.00"));
+        ledgerService.credit(transaction(), to, new BigDecimal("10.25"));
+        ledgerService.transfer(transaction(), to, from, new BigDecimal("5.75"));
+
+        assertEquals(new BigDecimal("355.25"), from.getBalance());
+        assertEquals(new BigDecimal("125.00"), to.getBalance());
+        assertEquals(new BigDecimal("355.25"), new BigDecimal("500.00").add(sum(cardEntries(FROM_CARD))));
+        assertEquals(new BigDecimal("125.00"), sum(cardEntries(TO_CARD)));
+        // деньги не появляются и не исчезают: карты вместе с кассой сохраняют начальную сумму
+        BigDecimal cash = sum(entries.stream().filter(entry -> entry.getAccount() == LedgerAccount.CASH).toList());
+        assertEquals(0, new BigDecimal("500.00").compareTo(from.getBalance().add(to.getBalance()).add(cash)));
+    }
+
+    @Test
+    void cardSequenceIsContiguousPerCard() {
+        CardBalanceEntity from = balance(FROM_CARD, "100.00");
+        CardBalanceEntity to = balance(TO_CARD, "0.00");
+
+        ledgerService.transfer(transaction(), from, to, BigDecimal.ONE);
+        ledgerService.debit(transaction(), from, BigDecimal.ONE);
+        ledgerService.transfer(transaction(), from, to, BigDecimal.ONE);
+
+        assertEquals(List.of(1L, 2L, 3L), cardEntries(FROM_CARD).stream().map(LedgerEntryEntity::getCardSeq).toList());
+        assertEquals(List.of(1L, 2L), cardEntries(TO_CARD).stream().map(LedgerEntryEntity::getCardSeq).toList());
+        assertEquals(3, from.getEntrySeq());
+        assertEquals(2, to.getEntrySeq());
+    }
+
+    @Test
+    void rebuildsBalanceFromCheckpointAndEntries() {
+        CardBalanceEntity from = balance(FROM_CARD, "500.00");
+        CardBalanceEntity to = balance(TO_CARD, "0.00");
+        ledgerService.transfer(transaction(), from, to, new BigDecimal("100.00"));
+        ledgerService.debit(transaction(), from, new BigDecimal("50.00"));
+        when(checkpointRepository.findFirstByCardIdAndCardSeqLessThanEqualOrderByCardSeqDesc(FROM_CARD, 2L))
+                .thenReturn(Optional.of(CardBalanceCheckpointEntity.builder()
+                        .cardId(FROM_CARD).cardSeq(0L).balance(new BigDecimal("500.00")).build()));
+
+        assertEquals(0, from.getBalance().compareTo(ledgerService.rebuildBalance(FROM_CARD, 2)));
+        assertEquals(0, to.getBalance().compareTo(ledgerService.rebuildBalance(TO_CARD, 1)));
+    }
+
+    private List<LedgerEntryEntity> cardEntries(Long cardId) {
+        return entries.stream()
+                .filter(entry -> entry.getAccount() == LedgerAccount.CARD && cardId.equals(entry.getCardId()))
+                .toList();
+    }
+
+    private static BigDecimal sum(List<LedgerEntryEntity> entries) {
+        return entries.stream().map(LedgerEntryEntity::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private TransactionEntity transaction() {
+        return TransactionEntity.builder().id(++transactionIds).build();
+    }
+
+    private static CardBalanceEntity balance(long cardId, String amount) {
+        CardBalanceEntity cardBalance = new CardBalanceEntity();
+        cardBalance.setCardId(cardId);
+        cardBalance.setBalance(new BigDecimal(amount));
+        return cardBalance;
+    }
+}
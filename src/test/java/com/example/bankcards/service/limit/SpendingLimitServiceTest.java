@@ -0,0 +1,166 @@
+package com.example.bankcards.service.limit;
+
+import com.example.bankcards.entity.CardEntity;
+import com.example.bankcards.entity.enums.LimitType;
+import com.example.bankcards.entity.ledger.CardBalanceEntity;
+import com.example.bankcards.exception.card.LimitExhaustedException;
+import com.example.bankcards.repository.TransactionEntityRepository;
+import com.example.bankcards.repository.projection.CardSpendView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SpendingLimitServiceTest {
+
+    private static final long CARD_ID = 7L;
+
+    private final List<CardSpendView> ledger = new ArrayList<>();
+    private TransactionEntityRepository transactionEntityRepository;
+    private SpendingLimitService spendingLimitService;
+    private CardEntity card;
+    private CardBalanceEntity balance;
+
+    @BeforeEach
+    void setUp() {
+        transactionEntityRepository = mock(TransactionEntityRepository.class);
+        when(transactionEntityRepository.findSpendSince(any(), any(), any(), any())).thenAnswer(call -> List.copyOf(ledger));
+        spendingLimitService = new SpendingLimitService(transactionEntityRepository, new SimpleMeterRegistry());
+
+        card = new CardEntity();
+        card.setId(CARD_ID);
+        card.setDailyLimit(new BigDecimal("250"));
+        balance = new CardBalanceEntity();
+        balance.setCardId(CARD_ID);
+        balance.setVersion(5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void countsCommittedSpendWithoutRereadingLedger() {
+        List<TransactionSynchronization> first = inTransaction(() -> spend(new BigDecimal("100")));
+        commit(first, new BigDecimal("100"));
+
+        inTransaction(() -> spend(new BigDecimal("100")));
+
+        // перечитан журнал только при первой проверке, дальше счётчики совпадают с версией баланса
+        verify(transactionEntityRepository, times(1)).findSpendSince(any(), any(), any(), any());
+        assertThrows(LimitExhaustedException.class, () -> inTransaction(() -> spend(new BigDecimal("200"))));
+    }
+
+    @Test
+    void doesNotCountSpendTwiceWhenWindowReloadedBeforeAfterCommit() {
+        List<TransactionSynchronization> first = inTransaction(() -> spend(new BigDecimal("100")));
+        // T1 зафиксирована: строка в журнале и новая версия баланса, но afterCommit ещё не выполнен
+        ledger.add(spendRow(new BigDecimal("100")));
+        balance.setVersion(6);
+
+        // T2 видит чужую версию и перечитывает журнал - в нём уже есть расход T1
+        inTransaction(() -> spend(new BigDecimal("100")));
+        first.forEach(TransactionSynchronization::afterCommit);
+
+        // 100 (T1) + 150 <= 250; при двойном счёте T1 было бы 350
+        assertDoesNotThrow(() -> inTransaction(() -> spend(new BigDecimal("150"))));
+    }
+
+    @Test
+    void staleRecordMarksWindowUnsynced() {
+        CardSpendingWindow window = new CardSpendingWindow(List.of(LimitType.DAILY, LimitType.MONTHLY));
+        long now = SpendingLimitService.toMillis(LocalDateTime.now());
+        window.reload(6, List.of(spendRow(new BigDecimal("100"))), now);
+
+        window.record(new BigDecimal("100"), now, 5, 6);
+
+        assertFalse(window.isSyncedWith(6));
+        assertEquals(0, new BigDecimal("100").compareTo(window.spent(LimitType.DAILY, now)));
+    }
+
+    @Test
+    void recordFromSyncedVersionAdvancesWindow() {
+        CardSpendingWindow window = new CardSpendingWindow(List.of(LimitType.DAILY, LimitType.MONTHLY));
+        long now = SpendingLimitService.toMillis(LocalDateTime.now());
+        window.reload(5, List.of(), now);
+
+        window.record(new BigDecimal("40"), now, 5, 6);
+
+        assertTrue(window.isSyncedWith(6));
+        assertEquals(0, new BigDecimal("40").compareTo(window.spent(LimitType.MONTHLY, now)));
+    }
+
+    @Test
+    void rollbackDiscardsPendingSpend() {
+        inTransaction(() -> spend(new BigDecimal("200")));
+
+        assertDoesNotThrow(() -> inTransaction(() -> spend(new BigDecimal("200"))));
+    }
+
+    private void spend(BigDecimal amount) {
+        spendingLimitService.checkAndRecord(card, balance, amount);
+    }
+
+    /**
+     * Выполняет проверку как в транзакции операции и возвращает её синхронизации, не вызывая afterCommit:
+     * без commit операция считается откатившейся.
+     */
+    private static List<TransactionSynchronization> inTransaction(Runnable operation) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            operation.run();
+            return TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_UNKNOWN));
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void commit(List<TransactionSynchronization> synchronizations, BigDecimal amount) {
+        ledger.add(spendRow(amount));
+        balance.setVersion(balance.getVersion() + 1);
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+    }
+
+    private static CardSpendView spendRow(BigDecimal amount) {
+        LocalDateTime createdAt = LocalDateTime.now();
+        return new CardSpendView() {
+            @Override
+            public Long getCardId() {
+                return CARD_ID;
+            }
+
+            @Override
+            public BigDecimal getAmount() {
+                return amount;
+            }
+
+            @Override
+            public LocalDateTime getCreatedAt() {
+                return createdAt;
+            }
+        };
+    }
+}
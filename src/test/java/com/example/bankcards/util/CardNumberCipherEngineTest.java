@@ -0,0 +1,60 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.card.encryptor.DecryptException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CardNumberCipherEngineTest {
+
+    private static final SecretKeySpec KEY = new SecretKeySpec("0123456789abcdef".getBytes(StandardCharsets.US_ASCII), "AES");
+
+    private final CardNumberCipherEngine engine = new CardNumberCipherEngine(KEY);
+
+    @Test
+    void encryptMatchesJdkCipherAndBase64() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, KEY);
+        StringBuilder cardNumber = new StringBuilder();
+        for (int length = 0; length <= 40; length++) {
+            byte[] encrypted = cipher.doFinal(cardNumber.toString().getBytes(StandardCharsets.UTF_8));
+
+            assertEquals(Base64.getEncoder().encodeToString(encrypted), engine.encrypt(cardNumber.toString()));
+            cardNumber.append(length % 10);
+        }
+    }
+
+    @Test
+    void decryptReversesEncryptForAllLengths() {
+        StringBuilder value = new StringBuilder();
+        for (int length = 0; length <= 40; length++) {
+            assertEquals(value.toString(), engine.decrypt(engine.encrypt(value.toString())));
+            value.append(length % 10);
+        }
+        assertEquals(List.of("4111111111111111", "5500000000000004"),
+                engine.decryptAll(engine.encryptAll(List.of("4111111111111111", "5500000000000004"))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"QQ=A", "QQ==QUJD", "QUI=QUJD", "Q===", "QUJD=", "QU=D", "QUJ*", "QUJDРУ=="})
+    void decryptRejectsMalformedBase64(String malformed) {
+        assertThrows(DecryptException.class, () -> engine.decrypt(malformed));
+    }
+
+    @Test
+    void decryptRejectsCiphertextWithPaddingInTheMiddle() {
+        String encrypted = engine.encrypt("4111111111111111");
+        String malformed = encrypted.substring(0, 8) + "====" + encrypted.substring(12);
+
+        assertThrows(DecryptException.class, () -> engine.decrypt(malformed));
+    }
+}